@@ -0,0 +1,377 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Extracts the PDF files of a ZIP or TAR archive (.zip, .tar, .tar.gz, .tgz) without unpacking it.
+ *
+ * The archive is read once, sequentially. Each PDF entry is read into memory and handed to a pool of
+ * extractors, so the entries are extracted concurrently while the next ones are read. The reader waits
+ * while 2 entries per thread are in flight and while the memory governor does not admit the entry, before
+ * the entry is read when the archive tells its size.
+ * Like the files of a directory, the entries that exceed their budget or crash the extraction are added to
+ * the quarantine, and the quarantined entries are skipped.
+ *
+ * The output mirrors the entry names: a/b.pdf gives a/b.info (and .csv, .idx) in the output directory,
+ * or as entries of the output ZIP archive when the output name ends with .zip.
+ */
+public class ArchiveBatch
+{
+    private static final Log LOG = LogFactory.getLog(ArchiveBatch.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File _archive;
+    private final File _output;
+    private final int _threads;
+    private final Extractor _extractor;
+    private MemoryGovernor _governor = null;
+
+    private ZipOutputStream _zip = null;
+    private final AtomicInteger _documents = new AtomicInteger();
+    private final AtomicInteger _failed = new AtomicInteger();
+
+    public ArchiveBatch(File archive, File output, int threads, ExtractionOptions options)
+    {
+        _archive = archive;
+        _output = output;
+        _threads = threads;
+        _extractor = new Extractor(options);
+    }
+
+    public static boolean isArchive(String name)
+    {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".zip") || lower.endsWith(".tar") || lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+    }
+
+    /**
+     * archive.zip gives archive.txtpos.zip next to it.
+     */
+    public static File defaultOutput(File archive)
+    {
+        String name = archive.getName();
+        String lower = name.toLowerCase();
+        int ext = lower.endsWith(".tar.gz") ? name.length() - 7 : name.lastIndexOf('.');
+        return new File(archive.getAbsoluteFile().getParentFile(), name.substring(0, ext) + ".txtpos.zip");
+    }
+
+    public void setGovernor(MemoryGovernor governor)
+    {
+        _governor = governor;
+    }
+
+    public int getDocuments()
+    {
+        return _documents.get();
+    }
+
+    public int getFailed()
+    {
+        return _failed.get();
+    }
+
+    /**
+     * The counters of the pages extracted so far.
+     */
+    public ExtractionStats getStats()
+    {
+        return _extractor.getStats();
+    }
+
+    public void run() throws IOException, InterruptedException
+    {
+        if (_output.getName().toLowerCase().endsWith(".zip")) {
+            _zip = new ZipOutputStream(Files.newOutputStream(_output.toPath()));
+        }
+        else {
+            Files.createDirectories(_output.toPath());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+            private final AtomicInteger _count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "pdf2txtpos-archive-" + _count.getAndIncrement());
+            }
+        });
+        // the entries read ahead of the extractors
+        Semaphore inFlight = new Semaphore(2 * _threads);
+        InputStream in = new BufferedInputStream(new FileInputStream(_archive), 256 * 1024);
+        try {
+            String lower = _archive.getName().toLowerCase();
+            if (lower.endsWith(".zip")) {
+                ZipInputStream zip = new ZipInputStream(in);
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (entry.isDirectory() == false) {
+                        // -1 for an entry whose size only follows its data
+                        submit(entry.getName(), entry.getSize(), zip, pool, inFlight);
+                    }
+                }
+            }
+            else {
+                if (lower.endsWith(".gz") || lower.endsWith(".tgz")) {
+                    in = new GZIPInputStream(in, 64 * 1024);
+                }
+                TarInputStream tar = new TarInputStream(in);
+                String name;
+                while ((name = tar.getNextEntry()) != null) {
+                    submit(name, tar.getSize(), tar, pool, inFlight);
+                }
+            }
+        }
+        finally {
+            in.close();
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (_zip != null) {
+                _zip.close();
+            }
+        }
+        LOG.info(_documents + " documents extracted from " + _archive + " into " + _output + ", " + _failed + " failed");
+    }
+
+    /**
+     * @param size size of the entry, -1 when unknown
+     */
+    private void submit(final String name, long size, InputStream entry, ExecutorService pool, final Semaphore inFlight)
+        throws IOException, InterruptedException
+    {
+        if (name.toLowerCase().endsWith(".pdf") == false) {
+            return;
+        }
+        final String base = outputName(name);
+        if (base == null) {
+            LOG.warn("Skipped " + name + " of " + _archive + ", the name leaves the output");
+            return;
+        }
+        inFlight.acquire();
+        // heap reserved in the governor, -1 when nothing is reserved
+        long reserved = -1;
+        boolean submitted = false;
+        try {
+            if (_governor != null && size >= 0) {
+                reserved = admit(size);
+            }
+            final byte[] pdf = readAll(entry);
+            if (_governor != null && size < 0) {
+                reserved = admit(pdf.length);
+            }
+            Quarantine quarantine = _extractor.getOptions().getQuarantine();
+            if (quarantine != null && quarantine.contains(pdf)) {
+                LOG.warn("Skipped quarantined entry " + name + " of " + _archive);
+                return;
+            }
+            final long cost = reserved;
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        extract(name, base, pdf);
+                    }
+                    finally {
+                        if (cost >= 0) {
+                            _governor.release(cost);
+                        }
+                        inFlight.release();
+                    }
+                }
+            });
+            submitted = true;
+        }
+        finally {
+            // the reader failed, was interrupted or skipped the entry
+            if (submitted == false) {
+                if (reserved >= 0) {
+                    _governor.release(reserved);
+                }
+                inFlight.release();
+            }
+        }
+    }
+
+    private void extract(String name, String base, byte[] pdf)
+    {
+        ProgressReporter progress = _extractor.getOptions().getProgress();
+        PDDocument document = null;
+        try {
+            LOG.info("Processing entry " + name + " of " + _archive);
+            if (progress != null) {
+                progress.beginDocument(name);
+            }
+            document = Extractor.load(new ByteArrayInputStream(pdf), _extractor.getOptions().isMmap());
+            if (_zip != null) {
+                extractToZip(document, name, base);
+            }
+            else {
+                extractToDirectory(document, name, base);
+            }
+            _documents.incrementAndGet();
+        }
+        catch (Exception e) {
+            failed(name, pdf, e);
+        }
+        catch (StackOverflowError e) {
+            failed(name, pdf, e);
+        }
+        finally {
+            if (document != null) {
+                try {
+                    document.close();
+                }
+                catch (IOException e) {
+                    LOG.warn("Cannot close " + name, e);
+                }
+            }
+            if (progress != null) {
+                progress.endDocument(name, pdf.length);
+            }
+        }
+    }
+
+    /**
+     * Wait until the governor admits a PDF of the given size, returns the reserved heap.
+     */
+    private long admit(long size) throws InterruptedException
+    {
+        long cost = MemoryGovernor.estimate(size, -1, _extractor.getOptions().isMmap());
+        _governor.acquire(cost);
+        return cost;
+    }
+
+    /**
+     * Count an entry that could not be extracted, and quarantine it when it exceeded its budget or crashed.
+     */
+    private void failed(String name, byte[] pdf, Throwable error)
+    {
+        _failed.incrementAndGet();
+        LOG.error("Failed to process " + name + " of " + _archive, error);
+        Quarantine quarantine = _extractor.getOptions().getQuarantine();
+        if (quarantine != null) {
+            quarantine.failed(_archive + "!" + name, pdf, error);
+        }
+    }
+
+    /**
+     * The files are written next to their targets and renamed by close, see AsyncFileWriter.
+     */
+    private void extractToDirectory(PDDocument document, String name, String base) throws IOException
+    {
+        File target = new File(_output, base);
+        Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+        AsyncFileWriter txtposWriter = new AsyncFileWriter(new File(target.getPath() + ".info"));
+        AsyncFileWriter gridWriter = null;
+        boolean complete = false;
+        try {
+            if (_extractor.getOptions().isVerticalLines()) {
+                gridWriter = new AsyncFileWriter(new File(target.getPath() + ".csv"));
+            }
+            List<WordIndex> indexes = _extractor.getOptions().isIndex() ? new ArrayList<WordIndex>() : null;
+            _extractor.extract(document, _archive + "!" + name, new WriterSink(txtposWriter, gridWriter, indexes));
+            if (indexes != null) {
+                WordIndex.writeAll(new File(target.getPath() + ".idx"), indexes);
+            }
+            txtposWriter.close();
+            if (gridWriter != null) {
+                gridWriter.close();
+            }
+            complete = true;
+        }
+        finally {
+            if (complete == false) {
+                txtposWriter.abort();
+                if (gridWriter != null) {
+                    gridWriter.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * The output of a document is kept in memory and written as consecutive entries, the entries of the
+     * documents are not interleaved.
+     */
+    private void extractToZip(PDDocument document, String name, String base) throws IOException
+    {
+        ByteArrayOutputStream info = new ByteArrayOutputStream();
+        ByteArrayOutputStream grid = _extractor.getOptions().isVerticalLines() ? new ByteArrayOutputStream() : null;
+        Writer txtposWriter = new OutputStreamWriter(info, UTF8);
+        Writer gridWriter = grid != null ? new OutputStreamWriter(grid, UTF8) : null;
+        List<WordIndex> indexes = _extractor.getOptions().isIndex() ? new ArrayList<WordIndex>() : null;
+        _extractor.extract(document, _archive + "!" + name, new WriterSink(txtposWriter, gridWriter, indexes));
+        txtposWriter.close();
+        if (gridWriter != null) {
+            gridWriter.close();
+        }
+        ByteArrayOutputStream idx = null;
+        if (indexes != null) {
+            idx = new ByteArrayOutputStream();
+            WordIndex.writeAll(idx, indexes);
+        }
+        synchronized (_zip) {
+            putEntry(base + ".info", info);
+            if (grid != null) {
+                putEntry(base + ".csv", grid);
+            }
+            if (idx != null) {
+                putEntry(base + ".idx", idx);
+            }
+        }
+    }
+
+    private void putEntry(String name, ByteArrayOutputStream content) throws IOException
+    {
+        _zip.putNextEntry(new ZipEntry(name));
+        content.writeTo(_zip);
+        _zip.closeEntry();
+    }
+
+    /**
+     * Entry name without .pdf, null when it is absolute or goes up out of the output (zip slip).
+     */
+    private static String outputName(String name)
+    {
+        Path path = Paths.get(name.replace('\\', '/')).normalize();
+        if (path.isAbsolute() || path.toString().startsWith("..") || path.toString().isEmpty()) {
+            return null;
+        }
+        String normalized = path.toString().replace(File.separatorChar, '/');
+        return normalized.substring(0, normalized.length() - 4);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,343 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writer that encodes the text in UTF-8 into a few large reusable buffers, and writes the full buffers
+ * to the file from a separate thread with large sequential FileChannel writes.
+ *
+ * The extraction thread only blocks when all the buffers are waiting to be written (backpressure).
+ * Each file has its own writer thread, so the .info and the .csv file of a document are written concurrently.
+ * flush() does not wait for the disk: the content is complete once close() returns.
+ * Write errors of the writer thread are thrown by the next write or by close().
+ *
+ * The content is written to a .part file that is renamed to the target by close(), so the target is either
+ * the previous file or the complete new one. abort() removes the .part file.
+ * The SHA-256 of the content is only computed when it is requested by the constructor.
+ *
+ * The direct buffers are shared by all the writers of the process: a writer takes a buffer from the pool when
+ * it fills its previous one, at most BUFFERS at a time, and returns them when it is closed. The pool keeps at
+ * most POOL idle buffers, a small file only ever uses one.
+ */
+public class AsyncFileWriter extends Writer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BUFFERS = 4;
+    private static final int POOL = 16;
+    private static final BlockingQueue<ByteBuffer> IDLE = new ArrayBlockingQueue<ByteBuffer>(POOL);
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pdf2txtpos-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private File _file;
+    private File _partFile;
+    private FileChannel _channel;
+    private MessageDigest _digest;
+    private CharsetEncoder _encoder;
+    private CharBuffer _chars;
+    private ByteBuffer _current;
+    private BlockingQueue<ByteBuffer> _free;
+    private BlockingQueue<ByteBuffer> _full;
+    // buffers taken from the pool
+    private int _buffers = 0;
+    private Future<?> _drain;
+    private volatile IOException _error = null;
+    private boolean _closed = false;
+
+    public AsyncFileWriter(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * @param digest compute the SHA-256 of the written bytes, see getDigest()
+     */
+    public AsyncFileWriter(File file, boolean digest) throws IOException {
+        _file = file;
+        _partFile = new File(file.getPath() + ".part");
+        if (digest) {
+            try {
+                _digest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+        _channel = new FileOutputStream(_partFile).getChannel();
+        _encoder = UTF8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(8 * 1024);
+        _free = new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+        _full = new ArrayBlockingQueue<ByteBuffer>(BUFFERS + 1);
+        _current = acquire();
+        _drain = WRITERS.submit(new Runnable() {
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _chars.remaining());
+            _chars.put(cbuf, off, n);
+            off += n;
+            len -= n;
+            if (_chars.hasRemaining() == false) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _chars.remaining());
+            _chars.put(str, off, off + n);
+            off += n;
+            len -= n;
+            if (_chars.hasRemaining() == false) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (_chars.hasRemaining() == false) {
+            encode(false);
+        }
+        _chars.put((char)c);
+    }
+
+    /**
+     * Encodes the pending characters, the buffers are only handed to the writer thread when they are full.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkError();
+        encode(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        boolean complete = false;
+        try {
+            try {
+                encode(true);
+                if (_current.position() > 0) {
+                    // the last buffer, it comes back in the free buffers
+                    ((Buffer)_current).flip();
+                    put(_current);
+                    _current = null;
+                }
+            }
+            finally {
+                // the writer thread always stops, also when the last buffer could not be encoded
+                put(END);
+                _drain.get();
+            }
+            release();
+            _channel.close();
+            checkError();
+            Files.move(_partFile.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + _file);
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            if (complete == false) {
+                _channel.close();
+                _partFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Stop writing and remove the .part file, the target file is left as it was.
+     */
+    public void abort() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            put(END);
+            _drain.get();
+            release();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // the file is removed anyway
+        }
+        finally {
+            _channel.close();
+            _partFile.delete();
+        }
+    }
+
+    /**
+     * SHA-256 of the written bytes, in hex. Only available after close(), and null when the writer
+     * was created without digest.
+     */
+    public String getDigest() {
+        return _digest != null ? Manifest.hex(_digest.digest()) : null;
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        checkError();
+        // the Buffer methods, ByteBuffer and CharBuffer override them from Java 9 on
+        ((Buffer)_chars).flip();
+        while (true) {
+            CoderResult result = _encoder.encode(_chars, _current, endOfInput);
+            if (result.isOverflow()) {
+                handOff();
+            }
+            else if (result.isError()) {
+                result.throwException();
+            }
+            else {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (_encoder.flush(_current).isOverflow()) {
+                handOff();
+            }
+        }
+        // a high surrogate without its low surrogate stays for the next write
+        _chars.compact();
+    }
+
+    private void handOff() throws IOException {
+        checkError();
+        ((Buffer)_current).flip();
+        put(_current);
+        _current = null;
+        try {
+            _current = _free.poll();
+            if (_current == null && _buffers < BUFFERS) {
+                _current = acquire();
+            }
+            else if (_current == null) {
+                _current = _free.take();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + _file);
+        }
+    }
+
+    private void put(ByteBuffer buffer) throws IOException {
+        try {
+            _full.put(buffer);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + _file);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            ByteBuffer buffer;
+            try {
+                buffer = _full.take();
+            }
+            catch (InterruptedException e) {
+                _error = new InterruptedIOException("Interrupted while writing " + _file);
+                return;
+            }
+            if (buffer == END) {
+                return;
+            }
+            if (_error == null) {
+                try {
+                    if (_digest != null) {
+                        _digest.update(buffer.duplicate());
+                    }
+                    while (buffer.hasRemaining()) {
+                        _channel.write(buffer);
+                    }
+                }
+                catch (IOException e) {
+                    // keep returning the buffers, so that the extraction thread does not wait forever
+                    _error = e;
+                }
+            }
+            ((Buffer)buffer).clear();
+            _free.add(buffer);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        _buffers++;
+        ByteBuffer buffer = IDLE.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Return the buffers to the pool, once the writer thread stopped.
+     */
+    private void release() {
+        if (_current != null) {
+            ((Buffer)_current).clear();
+            IDLE.offer(_current);
+            _current = null;
+        }
+        ByteBuffer buffer;
+        while ((buffer = _free.poll()) != null) {
+            IDLE.offer(buffer);
+        }
+    }
+
+    private void checkError() throws IOException {
+        IOException error = _error;
+        if (error != null) {
+            throw new IOException("Cannot write " + _file, error);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of the documents of a batch whose output is completely written, so that an interrupted
+ * batch can be resumed.
+ *
+ * Each line is size;mtime;options;outputs;path where options is the SHA-256 of the options the document was
+ * extracted with (see ExtractionOptions.cacheKey) and outputs lists the SHA-256 of each output file (info=..,csv=..).
+ * The line of a document is appended after all its output files are renamed in place, so a document without
+ * a line, with a changed PDF, extracted with other options or with an output that does not match its digest
+ * is processed again.
+ * A later line of the same document replaces the earlier ones.
+ */
+public class BatchJournal
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final String JOURNAL_NAME = ".pdf2txtpos.journal";
+
+    private static class Entry
+    {
+        final long size;
+        final long mtime;
+        final String options;
+        final Map<String, String> outputs;
+
+        Entry(long size, long mtime, String options, Map<String, String> outputs)
+        {
+            this.size = size;
+            this.mtime = mtime;
+            this.options = options;
+            this.outputs = outputs;
+        }
+    }
+
+    protected Path _file;
+    protected Map<String, Entry> _entries;
+    private FileOutputStream _out;
+
+    public BatchJournal(Path file) throws IOException
+    {
+        _file = file;
+        _entries = new HashMap<String, Entry>();
+        if (Files.exists(file)) {
+            BufferedReader reader = Files.newBufferedReader(file, UTF8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parse(line);
+                }
+            }
+            finally {
+                reader.close();
+            }
+            // a line cut by a crash must not swallow the next one
+            RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+            try {
+                if (raf.length() > 0) {
+                    raf.seek(raf.length() - 1);
+                    if (raf.read() != '\n') {
+                        _out = new FileOutputStream(file.toFile(), true);
+                        _out.write('\n');
+                    }
+                }
+            }
+            finally {
+                raf.close();
+            }
+        }
+        if (_out == null) {
+            _out = new FileOutputStream(file.toFile(), true);
+        }
+    }
+
+    private void parse(String line)
+    {
+        String[] fields = line.split(";", 5);
+        if (fields.length != 5) {
+            return;
+        }
+        try {
+            Map<String, String> outputs = new LinkedHashMap<String, String>();
+            for (String output : fields[3].split(",")) {
+                int eq = output.indexOf('=');
+                if (eq > 0) {
+                    outputs.put(output.substring(0, eq), output.substring(eq + 1));
+                }
+            }
+            _entries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], outputs));
+        }
+        catch (NumberFormatException e) {
+            // incomplete line
+        }
+    }
+
+    /**
+     * true when the PDF did not change since its line was written, it was extracted with the same options
+     * and the expected output files (name -> file) are exactly the recorded ones with the recorded content.
+     * @param options the ExtractionOptions.cacheKey of the current run
+     */
+    public boolean isComplete(Path pdf, String options, Map<String, Path> outputs) throws IOException
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(key(pdf));
+        }
+        if (entry == null) {
+            return false;
+        }
+        if (Files.size(pdf) != entry.size || Files.getLastModifiedTime(pdf).toMillis() != entry.mtime) {
+            return false;
+        }
+        if (entry.options.equals(digest(options)) == false) {
+            return false;
+        }
+        if (entry.outputs.keySet().equals(outputs.keySet()) == false) {
+            return false;
+        }
+        for (Map.Entry<String, Path> kv : outputs.entrySet()) {
+            Path output = kv.getValue();
+            if (Files.isRegularFile(output) == false || entry.outputs.get(kv.getKey()).equals(Manifest.digest(output)) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record that all the output files of the PDF are written.
+     * @param options the ExtractionOptions.cacheKey the PDF was extracted with
+     * @param outputs name of each output file -> SHA-256 of its content
+     */
+    public synchronized void completed(Path pdf, String options, Map<String, String> outputs) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Files.size(pdf)).append(';');
+        sb.append(Files.getLastModifiedTime(pdf).toMillis()).append(';');
+        sb.append(digest(options)).append(';');
+        boolean first = true;
+        for (Map.Entry<String, String> kv : outputs.entrySet()) {
+            if (first == false) {
+                sb.append(',');
+            }
+            sb.append(kv.getKey()).append('=').append(kv.getValue());
+            first = false;
+        }
+        sb.append(';').append(key(pdf)).append('\n');
+        String line = sb.toString();
+        _out.write(line.getBytes(UTF8));
+        _out.getFD().sync();
+        parse(line.substring(0, line.length() - 1));
+    }
+
+    public synchronized void close() throws IOException
+    {
+        _out.close();
+    }
+
+    private static String key(Path pdf)
+    {
+        return pdf.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * The options are recorded by their digest, the key contains the separators of the line.
+     */
+    private static String digest(String options) throws IOException
+    {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Manifest.hex(md.digest(options.getBytes(UTF8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+
+/**
+ * Thrown from the operator loop of the engines when a page or a document runs out of its budget.
+ * A page that exceeds its budget is skipped, a document that exceeds its budget is aborted.
+ */
+public class BudgetExceededException extends IOException
+{
+    private final boolean _document;
+
+    public BudgetExceededException(String message, boolean document)
+    {
+        super(message);
+        _document = document;
+    }
+
+    /**
+     * true when the whole document is over its budget (or the thread is interrupted), false when only the page is.
+     */
+    public boolean isDocument()
+    {
+        return _document;
+    }
+}
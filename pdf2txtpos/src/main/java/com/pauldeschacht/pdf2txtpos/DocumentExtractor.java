@@ -0,0 +1,462 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Extracts the words (.info) and the grids (.csv) of a loaded document page by page.
+ *
+ * The text engines are created once and reused for every page and every document, so an extractor
+ * that is kept alive (for instance in the pool of the extraction server) does not load the operator
+ * tables again. An extractor is not thread safe, each thread needs its own instance (see Extractor for a pool).
+ * The settings are passed with each document, the same extractor can serve documents with different options.
+ */
+public class DocumentExtractor {
+
+    private static final Log LOG = LogFactory.getLog(DocumentExtractor.class);
+
+    private PDFWordPositionStripper _stripper = null;
+    private WordPositionStreamEngine _streamEngine = null;
+    private PageGridDrawer _gridDrawer = null;
+    private Watchdog _watchdog = null;
+    // glyphs of the last call of extractWords
+    private int _glyphs = 0;
+
+    public DocumentExtractor() {
+    }
+
+    /**
+     * Budget of the current document, set for each document. null is unlimited.
+     */
+    public void setWatchdog(Watchdog watchdog) {
+        _watchdog = watchdog;
+    }
+
+    /**
+     * Extract the words and their positions from a single page with the given text engine.
+     * When regions is not null, only the glyphs inside the regions are extracted.
+     */
+    public List<WordPosition> extractWords(PDDocument document, PDPage page, int pageNb, String textEngine, List<Region> regions) throws IOException {
+        if (ExtractionOptions.ENGINE_LEAN.equals(textEngine)) {
+            if (_streamEngine == null) {
+                _streamEngine = new WordPositionStreamEngine();
+            }
+            _streamEngine.setRegions(regions);
+            _streamEngine.setWatchdog(_watchdog);
+            _streamEngine.processPage(page);
+            _glyphs = _streamEngine.getGlyphCount();
+            return _streamEngine.getWordPositions();
+        }
+        if (_stripper == null) {
+            _stripper = new PDFWordPositionStripper();
+        }
+        _stripper.setRegions(regions);
+        _stripper.setWatchdog(_watchdog);
+        _stripper.setStartPage(pageNb);
+        _stripper.setEndPage(pageNb);
+        _stripper.getText(document);
+        _glyphs = _stripper.getGlyphCount();
+        return _stripper.getWordPositions();
+    }
+
+    /**
+     * Pass the words and, with vertical lines, the content of the grids of each page to the sink.
+     * When the options have a page cache, pages whose content, resources and options were seen before
+     * are passed from the cache without running the text engine or the grid drawer.
+     * Pages that exceed their budget are skipped, a document that exceeds its budget throws a BudgetExceededException.
+     * @param name the file of the document in the profiling events, null when unknown
+     * @return the counters of the pages of the document
+     */
+    public ExtractionStats extract(PDDocument document, String name, ExtractionOptions options, ExtractionSink sink) throws IOException {
+        ExtractionStats documentStats = new ExtractionStats();
+        FlightEvents.Document event = FlightEvents.beginDocument(name);
+        PageCache cache = options.getPageCache();
+        PageCache.PageDigest pageDigest = (cache != null) ? new PageCache.PageDigest() : null;
+        setWatchdog(options.newWatchdog());
+        try {
+            List<?> pages = document.getDocumentCatalog().getAllPages();
+            for (int pageNb : pageNumbers(document, options)) {
+                PDPage page = (PDPage)pages.get(pageNb-1);
+                List<Region> regions = options.regions(pageNb);
+
+                PageCache.Entry output = null;
+                String key = null;
+                if (cache != null) {
+                    key = pageDigest.digest(page, options.cacheKey(regions));
+                    output = cache.get(key, pageNb);
+                }
+                PageStats stats = new PageStats();
+                boolean cached = (output != null);
+                if (output == null) {
+                    output = extractPage(document, page, pageNb, regions, options, stats);
+                    SlowPageCapture.captureIfSlow(page, name, pageNb, stats, options);
+                }
+                documentStats.add(stats);
+                FlightEvents.page(name, pageNb, stats, cached, options);
+                if (options.getProgress() != null) {
+                    options.getProgress().page(stats, cached);
+                }
+                if (event != null) {
+                    event.add(stats);
+                }
+                if (output == null) {
+                    // over budget
+                    continue;
+                }
+                if (cache != null && cached == false) {
+                    cache.put(key, output);
+                }
+                sink.page(pageNb, output.info, output.grid, output.index);
+            }
+            if (event != null) {
+                event.commit();
+            }
+            return documentStats;
+        }
+        finally {
+            addProfile(name, _watchdog, documentStats);
+            endDocument();
+        }
+    }
+
+    /**
+     * Add the operator profile of a document, if any, to the stats.
+     */
+    protected static void addProfile(String name, Watchdog watchdog, ExtractionStats stats) {
+        if (watchdog == null || watchdog.getProfile() == null) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Operators of " + (name != null ? name : "stdin") + "\n" + watchdog.getProfile().top(10));
+        }
+        stats.add(watchdog.getProfile());
+    }
+
+    /**
+     * Release what the engines keep for the current document. Called after each document.
+     */
+    public void endDocument() {
+        _watchdog = null;
+        // the cached space widths refer to the fonts of this document
+        if (_stripper != null) {
+            _stripper.clearFontCache();
+        }
+        if (_streamEngine != null) {
+            _streamEngine.clearFontCache();
+        }
+    }
+
+    /**
+     * The numbers of the pages to extract: the page range of the options, without the pages that have no region in the template.
+     */
+    protected static List<Integer> pageNumbers(PDDocument document, ExtractionOptions options) {
+        int nbPages = document.getNumberOfPages();
+        int firstPage = Math.max(options.getStartPage(),1);
+        int lastPage = options.getEndPage();
+        if(lastPage==-1) {
+            lastPage = nbPages;
+        }
+        lastPage = Math.min(lastPage,nbPages);
+
+        List<Integer> pageNumbers = new ArrayList<Integer>();
+        for (int pageNb = firstPage; pageNb <= lastPage; pageNb++) {
+            List<Region> regions = options.regions(pageNb);
+            if (regions != null && regions.isEmpty()) {
+                continue;
+            }
+            pageNumbers.add(pageNb);
+        }
+        return pageNumbers;
+    }
+
+    /**
+     * The words of a page, between the text pass and the grid pass.
+     */
+    protected static class PageText {
+        // .info lines without the page number
+        final String info;
+        final List<WordPosition> words;
+        final boolean hasPaths;
+        final PageStats stats;
+
+        PageText(String info, List<WordPosition> words, boolean hasPaths, PageStats stats) {
+            this.info = info;
+            this.words = words;
+            this.hasPaths = hasPaths;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Extract the words and the grids of a single page.
+     * The info lines of the result do not start with the page number.
+     * Returns null when the page exceeded its budget.
+     */
+    protected PageCache.Entry extractPage(PDDocument document, PDPage page, int pageNb, List<Region> regions, ExtractionOptions options, PageStats stats) throws IOException {
+        PageText text = extractText(document, page, pageNb, regions, options, stats);
+        if (text == null) {
+            return null;
+        }
+        String grid = "";
+        if (options.isVerticalLines() == true) {
+            grid = extractGrids(page, pageNb, regions, text, options, _watchdog);
+            if (grid == null) {
+                return null;
+            }
+        }
+        return new PageCache.Entry(text.info, grid, index(pageNb, text.words, options));
+    }
+
+    /**
+     * The index of the words of a page, null when the options neither write nor cache it.
+     */
+    protected static WordIndex index(int pageNb, List<WordPosition> words, ExtractionOptions options) {
+        if (options.isIndex() == false && options.getPageCache() == null) {
+            return null;
+        }
+        return WordIndex.build(pageNb, words);
+    }
+
+    /**
+     * Extract the words of a single page, sort them in lines and format the info lines.
+     * The counts and the duration of the pass are added to stats, the grid pass adds its own.
+     * Returns null when the page exceeded its budget.
+     */
+    protected PageText extractText(PDDocument document, PDPage page, int pageNb, List<Region> regions, ExtractionOptions options, PageStats stats) throws IOException {
+        if (_watchdog != null) {
+            _watchdog.startPage();
+        }
+        long start = System.nanoTime();
+        long allocated = PageStats.threadAllocatedBytes();
+        try {
+            PageText text = extractLines(document, page, pageNb, regions, options, stats);
+            if (_watchdog != null) {
+                _watchdog.endPage();
+            }
+            stats.words = text.words.size();
+            return text;
+        }
+        catch (BudgetExceededException e) {
+            if (e.isDocument()) {
+                throw e;
+            }
+            overBudget(pageNb, e, stats);
+            return null;
+        }
+        finally {
+            stats.textNanos += System.nanoTime() - start;
+            stats.allocatedBytes += PageStats.threadAllocatedBytes() - allocated;
+            if (_watchdog != null) {
+                stats.textOperators += _watchdog.getOperators();
+            }
+        }
+    }
+
+    private PageText extractLines(PDDocument document, PDPage page, int pageNb, List<Region> regions, ExtractionOptions options, PageStats stats) throws IOException {
+        // without prescan, the grid drawer runs on every page with words
+        boolean hasPaths = true;
+        if (options.isPrescan()) {
+            PagePrescan prescan = PagePrescan.scan(page, _watchdog);
+            if (prescan.hasText() == false) {
+                // a page without words is not written, not even its grids
+                stats.withoutText = true;
+                return new PageText("", new ArrayList<WordPosition>(), false, stats);
+            }
+            hasPaths = prescan.hasPaths();
+        }
+        // extract the words and their positions from the page
+        List<WordPosition> words = extractWords(document, page, pageNb, options.getEngine(), regions);
+        stats.glyphs = _glyphs;
+        if (options.isCrossCheck()) {
+            String other = ExtractionOptions.ENGINE_LEAN.equals(options.getEngine()) ? ExtractionOptions.ENGINE_STRIPPER : ExtractionOptions.ENGINE_LEAN;
+            stats.crossCheckDifferences = EngineCrossCheck.compare(pageNb, words, extractWords(document, page, pageNb, other, regions), options.getDelta());
+        }
+        if (regions != null) {
+            for (WordPosition word : words) {
+                Region region = RegionTemplate.find(regions, word);
+                if (region != null) {
+                    word.setRegion(region.name());
+                }
+            }
+        }
+        //sort on bottom line of each bounding box
+        //and assign a line number based on that bottom line
+        Collections.sort(words, new WordPositionComparator(options.getDelta()));
+        if (words.size() == 0) {
+            return new PageText("", words, false, stats);
+        }
+        float lineY = words.get(0).y1();
+        int lineNb = 0;
+        for (WordPosition word : words) {
+            float y = word.y1();
+            if (Math.abs(lineY - y) > options.getLineMargin()) {
+                lineNb++;
+                lineY = y;
+            }
+            //to gradually slide the line position: lineY = y;
+            word.setLineNb(lineNb);
+        }
+        //sort the words according line number
+        Collections.sort(words, new WordPositionLineComparator());
+        // build a map so that all the word in a single line can be accessed.
+        // csv file: page, line, x1,y1,x2,y2, word
+        Map<Integer, List<WordPosition>> lines = new HashMap<Integer, List<WordPosition>>();
+        for (WordPosition word : words) {
+            Integer line = word.getLineNb();
+            if (lines.containsKey(line) == true) {
+                lines.get(line).add(word);
+            } else {
+                lines.put(line, new ArrayList<WordPosition>());
+                lines.get(line).add(word);
+            }
+        }
+        //Sometimes a space is used as thousand separator.
+        //Collapse the 2 words together in a single word
+        for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
+            List<WordPosition> line = kv.getValue();
+
+            int i=0;
+            while(i<line.size()-1) {
+                WordPosition w1 = line.get(i);
+                WordPosition w2 = line.get(i+1);
+                if(w1.isNumber() && w2.isNumber() && (w1.x2() + (1.5f * w1.getSpaceWidth()) > w2.x1())) {
+                    //if both words are numbers and the space between the words is small (bit more than space width) --> merge the 2 words
+                    w1.merge(w2);
+                    line.remove(i+1);
+                }
+                else {
+                    i++;
+                }
+            }
+        }
+        final String infoSep=";";
+        StringBuilder info = new StringBuilder(words.size() * 64);
+        for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
+            List<WordPosition> line = kv.getValue();
+
+            for (WordPosition word : line) {
+                info.append(word.getLineNb()).append(infoSep);
+                word.appendTo(info, infoSep, options.getPrecision());
+                info.append('\n');
+            }
+        }
+
+        List<WordPosition> ll = new ArrayList<WordPosition>();
+        for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
+            List<WordPosition> line = kv.getValue();
+            for(WordPosition wp: line) {
+                ll.add(wp);
+            }
+        }
+
+        return new PageText(info.toString(), ll, hasPaths, stats);
+    }
+
+    private static void overBudget(int pageNb, BudgetExceededException e, PageStats stats) {
+        LOG.warn("Page " + pageNb + " skipped: " + e.getMessage());
+        stats.overBudget = e.getMessage();
+    }
+
+    /**
+     * Detect the grids of a page and format their rows with the words of the page.
+     * Returns an empty string for a page without words or without rulings, null when the page exceeded its budget.
+     */
+    protected String extractGrids(PDPage page, int pageNb, List<Region> regions, PageText text, ExtractionOptions options, Watchdog watchdog) throws IOException {
+        if (watchdog != null) {
+            watchdog.startPage();
+        }
+        long start = System.nanoTime();
+        long allocated = PageStats.threadAllocatedBytes();
+        try {
+            String grid = detectGrids(page, regions, text, options, watchdog);
+            if (watchdog != null) {
+                watchdog.endPage();
+            }
+            return grid;
+        }
+        catch (BudgetExceededException e) {
+            if (e.isDocument()) {
+                throw e;
+            }
+            overBudget(pageNb, e, text.stats);
+            return null;
+        }
+        finally {
+            text.stats.gridNanos += System.nanoTime() - start;
+            text.stats.allocatedBytes += PageStats.threadAllocatedBytes() - allocated;
+            if (watchdog != null) {
+                text.stats.gridOperators += watchdog.getOperators();
+            }
+        }
+    }
+
+    private String detectGrids(PDPage page, List<Region> regions, PageText text, ExtractionOptions options, Watchdog watchdog) throws IOException {
+        StringWriter grid = new StringWriter();
+        List<WordPosition> ll = text.words;
+        if (ll.isEmpty()) {
+            return "";
+        }
+        if (text.hasPaths == false) {
+            text.stats.gridWithoutRulings = true;
+            return "";
+        }
+        // GRID approach
+        // one drawer for all the pages of the extractor
+        if (_gridDrawer == null) {
+            _gridDrawer = new PageGridDrawer();
+        }
+        PageGridDrawer gridDrawer = _gridDrawer;
+        gridDrawer.reset();
+        gridDrawer.setOptions(options);
+        gridDrawer.setRegions(regions);
+        gridDrawer.setWatchdog(watchdog);
+        gridDrawer.drawPage(page);
+        text.stats.segments = gridDrawer.getSegmentCount();
+
+        if (regions == null) {
+            List<Grid> grids = gridDrawer.getGrids();
+            text.stats.grids += grids.size();
+            writeGrids(grid, grids, ll, null, true, options.getSeparator());
+        }
+        else {
+            // grids are only searched inside each region, each row starts with the region name
+            for (Region region : regions) {
+                List<WordPosition> regionWords = new ArrayList<WordPosition>();
+                for (WordPosition wp : ll) {
+                    if (region.name().equals(wp.getRegion())) {
+                        regionWords.add(wp);
+                    }
+                }
+                List<Grid> grids = gridDrawer.getGrids(region);
+                text.stats.grids += grids.size();
+                writeGrids(grid, grids, regionWords, region.name(), true, options.getSeparator());
+            }
+        }
+        return grid.toString();
+    }
+
+    protected static void writeGrids(Writer gridWriter, List<Grid> grids, List<WordPosition> words, String regionName, boolean bVerticalLines, String sep) throws IOException {
+        for(Grid g : grids) {
+            String[][] csv = g.csv(words,bVerticalLines);
+            for (String[] row : csv) {
+                if (regionName != null) {
+                    gridWriter.write(regionName + sep);
+                }
+                for (String s : row) {
+                    gridWriter.write(s + sep);
+                }
+                gridWriter.write("\n");
+            }
+        }
+    }
+}
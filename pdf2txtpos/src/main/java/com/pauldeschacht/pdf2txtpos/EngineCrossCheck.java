@@ -0,0 +1,59 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Compares the words of the same page extracted by two different text engines.
+ * Both lists are sorted on their bottom line, the words must have the same text and (almost) the same bounding box.
+ */
+public class EngineCrossCheck {
+
+    private static final Log LOG = LogFactory.getLog(EngineCrossCheck.class);
+
+    public static float TOLERANCE = 0.01f;
+
+    private EngineCrossCheck() {
+    }
+
+    /**
+     * @param delta see WordPositionComparator
+     * @return the number of differences, 0 when both engines produce the same words
+     */
+    public static int compare(int pageNb, List<WordPosition> expected, List<WordPosition> actual, float delta) {
+        List<WordPosition> e = new ArrayList<WordPosition>(expected);
+        List<WordPosition> a = new ArrayList<WordPosition>(actual);
+        WordPositionComparator comparator = new WordPositionComparator(delta);
+        Collections.sort(e, comparator);
+        Collections.sort(a, comparator);
+
+        int differences = 0;
+        int n = Math.min(e.size(), a.size());
+        for (int i = 0; i < n; i++) {
+            WordPosition w1 = e.get(i);
+            WordPosition w2 = a.get(i);
+            if (same(w1, w2) == false) {
+                differences++;
+                LOG.warn("Page " + pageNb + ": word " + i + " differs [" + w1.toString(";") + "] <> [" + w2.toString(";") + "]");
+            }
+        }
+        if (e.size() != a.size()) {
+            differences += Math.abs(e.size() - a.size());
+            LOG.warn("Page " + pageNb + ": " + e.size() + " words <> " + a.size() + " words");
+        }
+        return differences;
+    }
+
+    private static boolean same(WordPosition w1, WordPosition w2) {
+        if (w1.word().equals(w2.word()) == false) {
+            return false;
+        }
+        return Math.abs(w1.x1() - w2.x1()) < TOLERANCE &&
+            Math.abs(w1.x2() - w2.x2()) < TOLERANCE &&
+            Math.abs(w1.y1() - w2.y1()) < TOLERANCE &&
+            Math.abs(w1.y2() - w2.y2()) < TOLERANCE;
+    }
+}
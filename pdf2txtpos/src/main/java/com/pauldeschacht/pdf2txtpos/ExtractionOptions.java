@@ -0,0 +1,431 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The settings of an extraction: page range, text engine, line grouping, grid detection, output format
+ * and budget. Immutable, one instance can be shared by any number of threads and extractors.
+ *
+ *   ExtractionOptions options = ExtractionOptions.builder().engine(ExtractionOptions.ENGINE_LEAN).verticalLines(true).build();
+ *
+ * The page cache, the grid cache, the progress reporter and the quarantine are the only mutable parts, they are
+ * thread safe.
+ */
+public class ExtractionOptions
+{
+    public static final String ENGINE_STRIPPER = "stripper";
+    public static final String ENGINE_LEAN = "lean";
+
+    /** the defaults of the command line */
+    public static final ExtractionOptions DEFAULTS = new Builder().build();
+
+    private final int _startPage;
+    private final int _endPage;
+    private final float _lineMargin;
+    private final float _delta;
+    private final double _collapseX;
+    private final double _collapseY;
+    private final double _rulingMargin;
+    private final String _engine;
+    private final boolean _crossCheck;
+    private final RegionTemplate _template;
+    private final int _precision;
+    private final boolean _verticalLines;
+    private final String _separator;
+    private final boolean _index;
+    private final PageCache _pageCache;
+    private final GridCache _gridCache;
+    private final long _documentTimeout;
+    private final long _pageTimeout;
+    private final long _maxOperators;
+    private final boolean _mmap;
+    private final boolean _prescan;
+    private final long _slowPageMillis;
+    private final long _slowPageBytes;
+    private final File _captureDir;
+    private final ProgressReporter _progress;
+    private final Quarantine _quarantine;
+    private final boolean _profileOperators;
+
+    private ExtractionOptions(Builder builder)
+    {
+        _startPage = builder._startPage;
+        _endPage = builder._endPage;
+        _lineMargin = builder._lineMargin;
+        _delta = builder._delta;
+        _collapseX = builder._collapseX;
+        _collapseY = builder._collapseY;
+        _rulingMargin = builder._rulingMargin;
+        _engine = builder._engine;
+        _crossCheck = builder._crossCheck;
+        _template = builder._template;
+        _precision = builder._precision;
+        _verticalLines = builder._verticalLines;
+        _separator = builder._separator;
+        _index = builder._index;
+        _pageCache = builder._pageCache;
+        _gridCache = builder._gridCache;
+        _documentTimeout = builder._documentTimeout;
+        _pageTimeout = builder._pageTimeout;
+        _maxOperators = builder._maxOperators;
+        _mmap = builder._mmap;
+        _prescan = builder._prescan;
+        _slowPageMillis = builder._slowPageMillis;
+        _slowPageBytes = builder._slowPageBytes;
+        _captureDir = builder._captureDir;
+        _progress = builder._progress;
+        _quarantine = builder._quarantine;
+        _profileOperators = builder._profileOperators;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * A builder that starts from these options, to change some of them.
+     */
+    public Builder toBuilder()
+    {
+        return new Builder(this);
+    }
+
+    /** first page, 1 is the first page of the document */
+    public int getStartPage() { return _startPage; }
+    /** last page, -1 is the last page of the document */
+    public int getEndPage() { return _endPage; }
+    /** words whose bottom lines are closer than this are on the same line */
+    public float getLineMargin() { return _lineMargin; }
+    /** words whose bottom lines are closer than this are sorted on x */
+    public float getDelta() { return _delta; }
+    /** rulings closer than this are one column of a grid */
+    public double getCollapseX() { return _collapseX; }
+    /** rulings closer than this are one row of a grid */
+    public double getCollapseY() { return _collapseY; }
+    /** a line is a ruling when it is straight within this margin */
+    public double getRulingMargin() { return _rulingMargin; }
+    public String getEngine() { return _engine; }
+    public boolean isCrossCheck() { return _crossCheck; }
+    /** null extracts the whole page */
+    public RegionTemplate getTemplate() { return _template; }
+    /** decimals of the numbers of the .info lines, -1 is the shortest representation */
+    public int getPrecision() { return _precision; }
+    /** detect the grids and write their rows (.csv) */
+    public boolean isVerticalLines() { return _verticalLines; }
+    /** separator of the cells of the .csv rows */
+    public String getSeparator() { return _separator; }
+    /** write the spatial index of the words (.idx) */
+    public boolean isIndex() { return _index; }
+    /** null extracts every page */
+    public PageCache getPageCache() { return _pageCache; }
+    /** null builds the grids of every page */
+    public GridCache getGridCache() { return _gridCache; }
+    /** seconds, 0 is unlimited */
+    public long getDocumentTimeout() { return _documentTimeout; }
+    /** seconds of each pass over a page, 0 is unlimited */
+    public long getPageTimeout() { return _pageTimeout; }
+    /** operators of each pass over a page, 0 is unlimited */
+    public long getMaxOperators() { return _maxOperators; }
+    /** memory-map the input and the scratch data of PDFBox, see MappedFile */
+    public boolean isMmap() { return _mmap; }
+    /** scan the operators of each page first, to skip the passes that cannot produce output (see PagePrescan) */
+    public boolean isPrescan() { return _prescan; }
+    /** pages whose passes take longer are slow, 0 is no time threshold */
+    public long getSlowPageMillis() { return _slowPageMillis; }
+    /** pages whose passes allocate more are slow, 0 is no allocation threshold */
+    public long getSlowPageBytes() { return _slowPageBytes; }
+    /** directory of the slow pages written as PDF files, null writes none (see SlowPageCapture) */
+    public File getCaptureDir() { return _captureDir; }
+    /** null reports nothing */
+    public ProgressReporter getProgress() { return _progress; }
+    /** documents to skip and to add the failed documents to, null skips none */
+    public Quarantine getQuarantine() { return _quarantine; }
+    /** count and time the operators of each document, see OperatorProfile */
+    public boolean isProfileOperators() { return _profileOperators; }
+
+    /**
+     * A page is slow when its passes exceed the time or the allocation threshold, or when it was skipped over budget.
+     */
+    public boolean isSlow(PageStats stats)
+    {
+        if (stats.overBudget != null) {
+            return true;
+        }
+        if (_slowPageMillis > 0 && stats.textNanos + stats.gridNanos > _slowPageMillis * 1000000L) {
+            return true;
+        }
+        return _slowPageBytes > 0 && stats.allocatedBytes > _slowPageBytes;
+    }
+
+    /**
+     * Budget of a document, see Watchdog. With profileOperators it keeps the profile of the document.
+     */
+    public Watchdog newWatchdog()
+    {
+        Watchdog watchdog = new Watchdog(_documentTimeout * 1000, _pageTimeout * 1000, _maxOperators);
+        if (_profileOperators) {
+            watchdog.setProfile(new OperatorProfile());
+        }
+        return watchdog;
+    }
+
+    /**
+     * The regions of the template on the page, null without template.
+     */
+    public List<Region> regions(int pageNb)
+    {
+        if (_template == null) {
+            return null;
+        }
+        return _template.regions(pageNb);
+    }
+
+    /**
+     * Everything that changes the output of a page besides its content and resources, see PageCache.
+     */
+    public String cacheKey(List<Region> regions)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(_engine).append(';');
+        sb.append(_lineMargin).append(';');
+        sb.append(_precision).append(';');
+        sb.append(_delta).append(';');
+        sb.append(_collapseX).append(';').append(_collapseY).append(';');
+        sb.append(_rulingMargin).append(';');
+        sb.append(_verticalLines).append(';').append(_separator).append(';');
+        if (regions != null) {
+            for (Region region : regions) {
+                sb.append(region.name()).append('[')
+                  .append(region.x1()).append(' ').append(region.y1()).append(' ')
+                  .append(region.x2()).append(' ').append(region.y2()).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class Builder
+    {
+        private int _startPage = -1;
+        private int _endPage = -1;
+        private float _lineMargin = 1.5f; //should be based on the height of the font
+        private float _delta = WordPositionComparator.DELTA;
+        private double _collapseX = Grid.COLLAPSE_X;
+        private double _collapseY = Grid.COLLAPSE_Y;
+        private double _rulingMargin = Line.LINE_MARGIN;
+        private String _engine = ENGINE_STRIPPER;
+        private boolean _crossCheck = false;
+        private RegionTemplate _template = null;
+        private int _precision = -1;
+        private boolean _verticalLines = false;
+        private String _separator = ";";
+        private boolean _index = false;
+        private PageCache _pageCache = null;
+        private GridCache _gridCache = null;
+        private long _documentTimeout = 0;
+        private long _pageTimeout = 0;
+        private long _maxOperators = 0;
+        private boolean _mmap = false;
+        private boolean _prescan = true;
+        private long _slowPageMillis = 1000;
+        private long _slowPageBytes = 0;
+        private File _captureDir = null;
+        private ProgressReporter _progress = null;
+        private Quarantine _quarantine = null;
+        private boolean _profileOperators = false;
+
+        public Builder()
+        {
+        }
+
+        private Builder(ExtractionOptions options)
+        {
+            _startPage = options._startPage;
+            _endPage = options._endPage;
+            _lineMargin = options._lineMargin;
+            _delta = options._delta;
+            _collapseX = options._collapseX;
+            _collapseY = options._collapseY;
+            _rulingMargin = options._rulingMargin;
+            _engine = options._engine;
+            _crossCheck = options._crossCheck;
+            _template = options._template;
+            _precision = options._precision;
+            _verticalLines = options._verticalLines;
+            _separator = options._separator;
+            _index = options._index;
+            _pageCache = options._pageCache;
+            _gridCache = options._gridCache;
+            _documentTimeout = options._documentTimeout;
+            _pageTimeout = options._pageTimeout;
+            _maxOperators = options._maxOperators;
+            _mmap = options._mmap;
+            _prescan = options._prescan;
+            _slowPageMillis = options._slowPageMillis;
+            _slowPageBytes = options._slowPageBytes;
+            _captureDir = options._captureDir;
+            _progress = options._progress;
+            _quarantine = options._quarantine;
+            _profileOperators = options._profileOperators;
+        }
+
+        /**
+         * Pages startPage to endPage, -1 is the first or the last page of the document.
+         */
+        public Builder pages(int startPage, int endPage)
+        {
+            _startPage = startPage;
+            _endPage = endPage;
+            return this;
+        }
+
+        public Builder lineMargin(float lineMargin)
+        {
+            _lineMargin = lineMargin;
+            return this;
+        }
+
+        public Builder delta(float delta)
+        {
+            _delta = delta;
+            return this;
+        }
+
+        public Builder collapse(double collapseX, double collapseY)
+        {
+            _collapseX = collapseX;
+            _collapseY = collapseY;
+            return this;
+        }
+
+        public Builder rulingMargin(double rulingMargin)
+        {
+            _rulingMargin = rulingMargin;
+            return this;
+        }
+
+        public Builder engine(String engine)
+        {
+            if (ENGINE_STRIPPER.equals(engine) == false && ENGINE_LEAN.equals(engine) == false) {
+                throw new IllegalArgumentException("Unknown text engine " + engine);
+            }
+            _engine = engine;
+            return this;
+        }
+
+        public Builder crossCheck(boolean crossCheck)
+        {
+            _crossCheck = crossCheck;
+            return this;
+        }
+
+        public Builder template(RegionTemplate template)
+        {
+            _template = template;
+            return this;
+        }
+
+        public Builder precision(int precision)
+        {
+            if (precision < -1 || precision > FixedPrecision.MAX_PRECISION) {
+                throw new IllegalArgumentException("Precision " + precision + " is not between 0 and " + FixedPrecision.MAX_PRECISION);
+            }
+            _precision = precision;
+            return this;
+        }
+
+        public Builder verticalLines(boolean verticalLines)
+        {
+            _verticalLines = verticalLines;
+            return this;
+        }
+
+        public Builder separator(String separator)
+        {
+            _separator = separator;
+            return this;
+        }
+
+        public Builder index(boolean index)
+        {
+            _index = index;
+            return this;
+        }
+
+        public Builder pageCache(PageCache pageCache)
+        {
+            _pageCache = pageCache;
+            return this;
+        }
+
+        public Builder gridCache(GridCache gridCache)
+        {
+            _gridCache = gridCache;
+            return this;
+        }
+
+        /**
+         * Budget of a document: seconds of the document and of each pass over a page, operators of each pass.
+         * 0 is unlimited.
+         */
+        public Builder budget(long documentTimeout, long pageTimeout, long maxOperators)
+        {
+            _documentTimeout = documentTimeout;
+            _pageTimeout = pageTimeout;
+            _maxOperators = maxOperators;
+            return this;
+        }
+
+        public Builder mmap(boolean mmap)
+        {
+            _mmap = mmap;
+            return this;
+        }
+
+        public Builder prescan(boolean prescan)
+        {
+            _prescan = prescan;
+            return this;
+        }
+
+        /**
+         * Thresholds of the slow pages: milliseconds of the passes and bytes they allocate, 0 is no threshold.
+         */
+        public Builder slowPage(long millis, long bytes)
+        {
+            _slowPageMillis = millis;
+            _slowPageBytes = bytes;
+            return this;
+        }
+
+        public Builder capture(File dir)
+        {
+            _captureDir = dir;
+            return this;
+        }
+
+        public Builder progress(ProgressReporter progress)
+        {
+            _progress = progress;
+            return this;
+        }
+
+        public Builder quarantine(Quarantine quarantine)
+        {
+            _quarantine = quarantine;
+            return this;
+        }
+
+        public Builder profileOperators(boolean profileOperators)
+        {
+            _profileOperators = profileOperators;
+            return this;
+        }
+
+        public ExtractionOptions build()
+        {
+            return new ExtractionOptions(this);
+        }
+    }
+}
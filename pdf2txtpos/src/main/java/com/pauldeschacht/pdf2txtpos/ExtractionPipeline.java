@@ -0,0 +1,529 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Processes a list of PDF files in four stages, each with its own threads:
+ *
+ * load     reads and parses the PDF (I/O)
+ * extract  extracts the words of every page (CPU)
+ * grid     detects the grids of every page and closes the document (CPU)
+ * write    writes the .info, .csv and .idx files (I/O)
+ *
+ * A document is handed from stage to stage through bounded queues, so while a document is extracted the next
+ * ones are already loaded, and a stage that falls behind blocks the stages before it instead of filling the heap.
+ * A document is only used by one thread at a time.
+ * Documents that fail in any stage are logged by the write stage and no output is written for them.
+ * With a journal, each completed document is recorded with the digests of its output files, and with resume
+ * the documents that the journal records as complete are not loaded again.
+ * Quarantined documents are not loaded, documents that exceed their budget or crash are added to the quarantine.
+ */
+public class ExtractionPipeline
+{
+    private static final Log LOG = LogFactory.getLog(ExtractionPipeline.class);
+
+    private static final Job END = new Job(null);
+
+    private static class PageTask
+    {
+        int pageNb;
+        List<Region> regions;
+        String cacheKey;
+        DocumentExtractor.PageText text;
+        PageCache.Entry output;
+        PageStats stats = new PageStats();
+        boolean cached;
+    }
+
+    private static class Job
+    {
+        final File pdf;
+        PDDocument document;
+        Watchdog watchdog;
+        List<PageTask> pages = new ArrayList<PageTask>();
+        Throwable error;
+        boolean skipped;
+        // heap reserved in the governor until the output is written
+        long cost = 0;
+        boolean claimed;
+        // from the load stage to the write stage, null when not recorded
+        FlightEvents.Document event;
+
+        Job(File pdf)
+        {
+            this.pdf = pdf;
+        }
+
+        void closeDocument()
+        {
+            if (document != null) {
+                try {
+                    document.close();
+                }
+                catch (IOException e) {
+                    LOG.warn("Cannot close " + pdf, e);
+                }
+                document = null;
+            }
+        }
+    }
+
+    private abstract class Stage
+    {
+        final String _name;
+        final int _threads;
+        final BlockingQueue<Job> _in;
+        final AtomicInteger _alive;
+        Stage _next;
+
+        Stage(String name, int threads, BlockingQueue<Job> in)
+        {
+            _name = name;
+            _threads = threads;
+            _in = in;
+            _alive = new AtomicInteger(threads);
+        }
+
+        abstract void process(Job job, DocumentExtractor extractor) throws Exception;
+
+        void start(List<Thread> threads)
+        {
+            for (int i = 0; i < _threads; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        work();
+                    }
+                }, "pdf2txtpos-" + _name + "-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+        }
+
+        private void work()
+        {
+            DocumentExtractor extractor = new DocumentExtractor();
+            try {
+                while (true) {
+                    Job job = _in.take();
+                    if (job == END) {
+                        break;
+                    }
+                    if (job.error == null && job.skipped == false) {
+                        try {
+                            process(job, extractor);
+                        }
+                        catch (Throwable e) {
+                            // errors too, a dead stage thread would stop the pipeline
+                            job.error = e;
+                            job.closeDocument();
+                        }
+                    }
+                    if (_next != null) {
+                        _next._in.put(job);
+                        continue;
+                    }
+                    if (job.error != null) {
+                        LOG.error("Failed to process " + job.pdf, job.error);
+                        if (_options.getQuarantine() != null) {
+                            _options.getQuarantine().failed(job.pdf.toPath(), job.error);
+                        }
+                    }
+                    if (job.cost > 0) {
+                        _governor.release(job.cost);
+                        job.cost = 0;
+                    }
+                    if (job.claimed) {
+                        release(job);
+                    }
+                    DocumentExtractor.addProfile(job.pdf.getPath(), job.watchdog, _stats);
+                    if (_options.getProgress() != null) {
+                        _options.getProgress().endDocument(job.pdf.getPath(), job.pdf.length());
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                // the last thread of the stage stops the next stage, also when it dies
+                if (_alive.decrementAndGet() == 0 && _next != null) {
+                    stopNext();
+                }
+            }
+        }
+
+        private void stopNext()
+        {
+            boolean interrupted = Thread.interrupted();
+            for (int i = 0; i < _next._threads; i++) {
+                while (true) {
+                    try {
+                        _next._in.put(END);
+                        break;
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final ExtractionOptions _options;
+    private final Stage _load;
+    private final Stage _extract;
+    private final Stage _grid;
+    private final Stage _write;
+    private BatchJournal _journal = null;
+    private MemoryGovernor _governor = null;
+    private WorkClaims _claims = null;
+    private boolean _resume = false;
+    private final AtomicInteger _resumed = new AtomicInteger();
+    private final ExtractionStats _stats = new ExtractionStats();
+
+    /**
+     * @param threads number of threads of the load, extract, grid and write stage
+     * @param prefetch number of documents that can wait in front of each stage
+     */
+    public ExtractionPipeline(int[] threads, int prefetch, ExtractionOptions options)
+    {
+        _options = options;
+        _load = new Stage("load", threads[0], new LinkedBlockingQueue<Job>()) {
+            void process(Job job, DocumentExtractor extractor) throws Exception {
+                load(job);
+            }
+        };
+        _extract = new Stage("extract", threads[1], new ArrayBlockingQueue<Job>(prefetch)) {
+            void process(Job job, DocumentExtractor extractor) throws Exception {
+                extract(job, extractor);
+            }
+        };
+        _grid = new Stage("grid", threads[2], new ArrayBlockingQueue<Job>(prefetch)) {
+            void process(Job job, DocumentExtractor extractor) throws Exception {
+                grid(job, extractor);
+            }
+        };
+        _write = new Stage("write", threads[3], new ArrayBlockingQueue<Job>(prefetch)) {
+            void process(Job job, DocumentExtractor extractor) throws Exception {
+                write(job);
+            }
+        };
+        _load._next = _extract;
+        _extract._next = _grid;
+        _grid._next = _write;
+    }
+
+    /**
+     * Record the completed documents in the journal. With resume, the documents recorded as complete are skipped.
+     */
+    public void setJournal(BatchJournal journal, boolean resume)
+    {
+        _journal = journal;
+        _resume = resume;
+    }
+
+    /**
+     * Admit the documents against the heap budget of the governor, see MemoryGovernor.
+     */
+    public void setGovernor(MemoryGovernor governor)
+    {
+        _governor = governor;
+    }
+
+    /**
+     * Share the files with the other processes that use the same claims, see WorkClaims.
+     */
+    public void setClaims(WorkClaims claims)
+    {
+        _claims = claims;
+    }
+
+    /**
+     * Number of documents skipped because the journal records them as complete.
+     */
+    public int getResumed()
+    {
+        return _resumed.get();
+    }
+
+    /**
+     * The counters of the pages extracted so far.
+     */
+    public ExtractionStats getStats()
+    {
+        return _stats;
+    }
+
+    /**
+     * Process the files and wait until all the output is written.
+     * The smallest files are processed first, so that most documents are done early.
+     */
+    public void run(List<File> pdfs) throws InterruptedException
+    {
+        pdfs = new ArrayList<File>(pdfs);
+        Collections.sort(pdfs, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long l1 = f1.length();
+                long l2 = f2.length();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        List<Thread> threads = new ArrayList<Thread>();
+        for (Stage stage : new Stage[] { _load, _extract, _grid, _write }) {
+            stage.start(threads);
+        }
+        Timer timer = new Timer("pdf2txtpos-pipeline-status", true);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                LOG.info("Pipeline queues: " + queueDepths());
+            }
+        }, 10000, 10000);
+        try {
+            for (File pdf : pdfs) {
+                _load._in.put(new Job(pdf));
+            }
+            for (int i = 0; i < _load._threads; i++) {
+                _load._in.put(END);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        finally {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Number of documents waiting in front of each stage.
+     */
+    public String queueDepths()
+    {
+        return "load=" + _load._in.size() + " extract=" + _extract._in.size() +
+               " grid=" + _grid._in.size() + " write=" + _write._in.size();
+    }
+
+    private void load(Job job) throws IOException, InterruptedException
+    {
+        if (_claims != null) {
+            if (_claims.claim(job.pdf) == false) {
+                LOG.debug("Claimed by another worker " + job.pdf);
+                job.skipped = true;
+                return;
+            }
+            job.claimed = true;
+        }
+        if (_options.getQuarantine() != null && _options.getQuarantine().contains(job.pdf.toPath())) {
+            LOG.warn("Skipped quarantined file " + job.pdf);
+            job.skipped = true;
+            return;
+        }
+        if (_resume && _journal != null && _journal.isComplete(job.pdf.toPath(), _options.cacheKey(null), outputs(job.pdf))) {
+            LOG.debug("Already complete " + job.pdf);
+            _resumed.incrementAndGet();
+            job.skipped = true;
+            return;
+        }
+        if (_governor != null) {
+            long cost = MemoryGovernor.estimate(job.pdf, _options.isMmap());
+            _governor.acquire(cost);
+            job.cost = cost;
+        }
+        LOG.info("Processing file " + job.pdf);
+        if (_options.getProgress() != null) {
+            _options.getProgress().beginDocument(job.pdf.getPath());
+        }
+        job.event = FlightEvents.beginDocument(job.pdf.getPath());
+        long start = System.nanoTime();
+        job.document = Extractor.load(job.pdf, _options.isMmap());
+        if (job.event != null) {
+            job.event.loadDuration = System.nanoTime() - start;
+        }
+    }
+
+    private void extract(Job job, DocumentExtractor extractor) throws IOException
+    {
+        PageCache cache = _options.getPageCache();
+        PageCache.PageDigest pageDigest = (cache != null) ? new PageCache.PageDigest() : null;
+        List<?> pages = job.document.getDocumentCatalog().getAllPages();
+        job.watchdog = _options.newWatchdog();
+        extractor.setWatchdog(job.watchdog);
+        try {
+            for (int pageNb : DocumentExtractor.pageNumbers(job.document, _options)) {
+                PDPage page = (PDPage)pages.get(pageNb-1);
+                PageTask task = new PageTask();
+                task.pageNb = pageNb;
+                task.regions = _options.regions(pageNb);
+                if (cache != null) {
+                    task.cacheKey = pageDigest.digest(page, _options.cacheKey(task.regions));
+                    task.output = cache.get(task.cacheKey, pageNb);
+                    task.cached = (task.output != null);
+                }
+                if (task.output == null) {
+                    task.text = extractor.extractText(job.document, page, pageNb, task.regions, _options, task.stats);
+                }
+                job.pages.add(task);
+            }
+        }
+        finally {
+            extractor.endDocument();
+            // the time in the queue of the grid stage is not part of the budget of the document
+            job.watchdog.pause();
+        }
+    }
+
+    private void grid(Job job, DocumentExtractor extractor) throws IOException
+    {
+        List<?> pages = job.document.getDocumentCatalog().getAllPages();
+        job.watchdog.resume();
+        try {
+            for (PageTask task : job.pages) {
+                PDPage page = (PDPage)pages.get(task.pageNb-1);
+                if (task.output == null && task.text != null) {
+                    // not from the cache, and not over budget
+                    String grid = "";
+                    if (_options.isVerticalLines()) {
+                        grid = extractor.extractGrids(page, task.pageNb, task.regions, task.text, _options, job.watchdog);
+                    }
+                    if (grid != null) {
+                        task.output = new PageCache.Entry(task.text.info, grid, DocumentExtractor.index(task.pageNb, task.text.words, _options));
+                        if (_options.getPageCache() != null) {
+                            _options.getPageCache().put(task.cacheKey, task.output);
+                        }
+                    }
+                    task.text = null;
+                }
+                if (task.cached == false) {
+                    SlowPageCapture.captureIfSlow(page, job.pdf.getPath(), task.pageNb, task.stats, _options);
+                }
+                _stats.add(task.stats);
+                FlightEvents.page(job.pdf.getPath(), task.pageNb, task.stats, task.cached, _options);
+                if (_options.getProgress() != null) {
+                    _options.getProgress().page(task.stats, task.cached);
+                }
+                if (job.event != null) {
+                    job.event.add(task.stats);
+                }
+            }
+        }
+        finally {
+            // the write stage does not need the document
+            job.closeDocument();
+        }
+    }
+
+    /**
+     * The output files of a PDF for the current options: info, csv (with vlines) and idx (with index).
+     */
+    private Map<String, Path> outputs(File pdf)
+    {
+        String path = pdf.getAbsolutePath();
+        String baseFilename = path.substring(0, path.lastIndexOf('.'));
+        Map<String, Path> outputs = new LinkedHashMap<String, Path>();
+        outputs.put("info", Paths.get(baseFilename + ".info"));
+        if (_options.isVerticalLines()) {
+            outputs.put("csv", Paths.get(baseFilename + ".csv"));
+        }
+        if (_options.isIndex()) {
+            outputs.put("idx", Paths.get(baseFilename + ".idx"));
+        }
+        return outputs;
+    }
+
+    /**
+     * Finish the claim of the document, an interrupted document is left to another worker.
+     */
+    private void release(Job job)
+    {
+        boolean interrupted = job.error instanceof InterruptedException || job.error instanceof InterruptedIOException;
+        try {
+            _claims.release(job.pdf, interrupted == false);
+        }
+        catch (IOException e) {
+            LOG.error("Cannot release the claim of " + job.pdf, e);
+        }
+        job.claimed = false;
+    }
+
+    private void write(Job job) throws IOException
+    {
+        long start = System.nanoTime();
+        Map<String, Path> outputs = outputs(job.pdf);
+        // the journal records the digests of the outputs
+        AsyncFileWriter txtposWriter = new AsyncFileWriter(outputs.get("info").toFile(), _journal != null);
+        AsyncFileWriter gridWriter = null;
+        boolean complete = false;
+        try {
+            if (_options.isVerticalLines()) {
+                gridWriter = new AsyncFileWriter(outputs.get("csv").toFile(), _journal != null);
+            }
+            List<WordIndex> indexes = _options.isIndex() ? new ArrayList<WordIndex>() : null;
+            WriterSink sink = new WriterSink(txtposWriter, gridWriter, indexes);
+            for (PageTask task : job.pages) {
+                if (task.output == null) {
+                    // over budget
+                    continue;
+                }
+                sink.page(task.pageNb, task.output.info, task.output.grid, task.output.index);
+            }
+            if (_claims != null && _claims.owns(job.pdf) == false) {
+                throw new IOException("The claim of " + job.pdf + " was taken over by another worker");
+            }
+            if (indexes != null) {
+                WordIndex.writeAll(outputs.get("idx").toFile(), indexes);
+            }
+            // each file is written next to its target and renamed by close
+            txtposWriter.close();
+            if (gridWriter != null) {
+                gridWriter.close();
+            }
+            complete = true;
+        }
+        finally {
+            if (complete == false) {
+                txtposWriter.abort();
+                if (gridWriter != null) {
+                    gridWriter.abort();
+                }
+            }
+        }
+        if (_journal != null) {
+            Map<String, String> digests = new LinkedHashMap<String, String>();
+            digests.put("info", txtposWriter.getDigest());
+            if (gridWriter != null) {
+                digests.put("csv", gridWriter.getDigest());
+            }
+            if (outputs.containsKey("idx")) {
+                digests.put("idx", Manifest.digest(outputs.get("idx")));
+            }
+            _journal.completed(job.pdf.toPath(), _options.cacheKey(null), digests);
+        }
+        if (job.event != null) {
+            job.event.writeDuration = System.nanoTime() - start;
+            job.event.commit();
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Long running extraction server, so that the JVM startup, the loading of PDFBox and of the operator tables
+ * and the JIT warm up are paid once instead of once per document.
+ *
+ * POST /extract         the body of the request is the PDF, at most maxBody bytes (413 beyond)
+ * GET  /extract?path=.. the PDF is read from the local file system, only below the root of the server
+ *                       (see setRoot), without root the requests with a path are refused with 403
+ * Parameters: output=info (default) or csv, sep=separator of the csv cells.
+ * The other settings are the options of the server.
+ * The response is the content of the .info or the .csv file, streamed page by page.
+ *
+ * GET  /status returns the counters of the server.
+ *
+ * The server listens on the loopback interface unless it is given another address: anyone who can reach
+ * the port can have documents extracted.
+ *
+ * A request takes, in this order, an admission slot, the heap of its document in the governor and an
+ * extractor. At most 'threads' documents are extracted at the same time, each with its own warm
+ * DocumentExtractor. At most 'queue' requests wait, for the heap or for a free extractor, requests beyond
+ * that are rejected with 503. A request that waits for the heap holds its admission slot but no extractor,
+ * so a large document that waits for the documents in memory to finish only takes one place in the queue
+ * and does not stop the extractors; the governor admits any smaller request that fits in the meantime.
+ */
+public class ExtractionServer {
+
+    private static final Log LOG = LogFactory.getLog(ExtractionServer.class);
+
+    public static final long DEFAULT_MAX_BODY = 256L * 1024 * 1024;
+
+    private HttpServer _server;
+    private ExecutorService _executor;
+    private BlockingQueue<DocumentExtractor> _extractors;
+    private Semaphore _admission;
+    private MemoryGovernor _governor = null;
+    private Path _root = null;
+    private long _maxBody = DEFAULT_MAX_BODY;
+    private final ExtractionOptions _options;
+
+    private AtomicInteger _running = new AtomicInteger();
+    private AtomicInteger _waiting = new AtomicInteger();
+    private AtomicInteger _served = new AtomicInteger();
+    private AtomicInteger _failed = new AtomicInteger();
+    private AtomicInteger _shed = new AtomicInteger();
+
+    /**
+     * A server on the loopback interface.
+     */
+    public ExtractionServer(int port, int threads, int queue, ExtractionOptions options) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), threads, queue, options);
+    }
+
+    public ExtractionServer(InetSocketAddress address, int threads, int queue, ExtractionOptions options) throws IOException {
+        _options = options;
+        _extractors = new ArrayBlockingQueue<DocumentExtractor>(threads);
+        for (int i = 0; i < threads; i++) {
+            DocumentExtractor extractor = new DocumentExtractor();
+            warmUp(extractor);
+            _extractors.add(extractor);
+        }
+        _admission = new Semaphore(threads + queue);
+
+        _server = HttpServer.create(address, threads + queue);
+        _server.createContext("/extract", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                extract(exchange);
+            }
+        });
+        _server.createContext("/status", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                status(exchange);
+            }
+        });
+        // the handlers wait for an extractor, the pool of extractors limits the concurrency
+        _executor = Executors.newCachedThreadPool();
+        _server.setExecutor(_executor);
+        LOG.info("Extraction server on " + address + " with " + threads + " extractors and a queue of " + queue);
+    }
+
+    /**
+     * Admit the documents against the heap budget of the governor, a large document waits until
+     * the documents in memory are done.
+     */
+    public void setGovernor(MemoryGovernor governor) {
+        _governor = governor;
+    }
+
+    /**
+     * Directory of the files that can be extracted with ?path=, null refuses every path.
+     */
+    public void setRoot(Path root) throws IOException {
+        _root = root != null ? root.toRealPath() : null;
+    }
+
+    /**
+     * Maximum size of the PDF of a POST request.
+     */
+    public void setMaxBody(long maxBody) {
+        _maxBody = maxBody;
+    }
+
+    /**
+     * The address the server listens on, with the port chosen by the system for port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return _server.getAddress();
+    }
+
+    public void start() {
+        _server.start();
+    }
+
+    public void stop() {
+        _server.stop(1);
+        _executor.shutdown();
+    }
+
+    /**
+     * Extract a small generated document, so that the classes and the operator tables are loaded
+     * before the first request.
+     */
+    private static void warmUp(DocumentExtractor extractor) throws IOException {
+        PDDocument document = new PDDocument();
+        try {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream content = new PDPageContentStream(document, page);
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 10);
+            content.moveTextPositionByAmount(100, 700);
+            content.drawString("warm up 1 234");
+            content.endText();
+            content.addRect(90, 690, 200, 20);
+            content.stroke();
+            content.close();
+            extractor.extract(document, null, ExtractionOptions.builder().verticalLines(true).build(),
+                              new WriterSink(new StringWriter(), new StringWriter(), null));
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    private void extract(HttpExchange exchange) throws IOException {
+        String path = parameters(exchange.getRequestURI().getRawQuery()).get("path");
+        File file = null;
+        if (path != null) {
+            file = resolve(path);
+            if (file == null) {
+                reply(exchange, 403, "path not allowed: " + path + "\n");
+                return;
+            }
+            if (file.isFile() == false) {
+                reply(exchange, 404, "file not found: " + path + "\n");
+                return;
+            }
+            if (_options.getQuarantine() != null && _options.getQuarantine().contains(file.toPath())) {
+                reply(exchange, 422, "quarantined: " + path + "\n");
+                return;
+            }
+        }
+        else if (contentLength(exchange) > _maxBody) {
+            reply(exchange, 413, "the PDF is larger than " + _maxBody + " bytes\n");
+            return;
+        }
+        if (_admission.tryAcquire() == false) {
+            // load shedding: the queue is full
+            _shed.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            reply(exchange, 503, "server busy\n");
+            return;
+        }
+        long cost = 0;
+        try {
+            DocumentExtractor extractor;
+            _waiting.incrementAndGet();
+            try {
+                if (_governor != null) {
+                    long estimate = estimate(exchange, file);
+                    _governor.acquire(estimate);
+                    cost = estimate;
+                }
+                extractor = _extractors.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reply(exchange, 503, "interrupted\n");
+                return;
+            }
+            finally {
+                _waiting.decrementAndGet();
+            }
+            _running.incrementAndGet();
+            try {
+                extract(exchange, extractor, file);
+            }
+            finally {
+                _running.decrementAndGet();
+                _extractors.add(extractor);
+            }
+        }
+        finally {
+            if (cost > 0) {
+                _governor.release(cost);
+            }
+            _admission.release();
+        }
+    }
+
+    /**
+     * The file of a ?path= below the root, null when there is no root or the path leaves it,
+     * through .. or a symbolic link.
+     */
+    protected File resolve(String path) throws IOException {
+        if (_root == null) {
+            return null;
+        }
+        Path resolved = _root.resolve(path).normalize();
+        if (resolved.startsWith(_root) == false) {
+            return null;
+        }
+        if (resolved.toFile().exists()) {
+            resolved = resolved.toRealPath();
+            if (resolved.startsWith(_root) == false) {
+                return null;
+            }
+        }
+        return resolved.toFile();
+    }
+
+    /**
+     * The Content-Length of the request, 0 when unknown.
+     */
+    private static long contentLength(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                return Long.parseLong(length.trim());
+            }
+            catch (NumberFormatException e) {
+                // unknown size
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Heap cost of the requested document, from the file or from the Content-Length of the upload.
+     */
+    private long estimate(HttpExchange exchange, File file) throws IOException {
+        if (file != null) {
+            return MemoryGovernor.estimate(file, _options.isMmap());
+        }
+        return MemoryGovernor.estimate(contentLength(exchange), -1, _options.isMmap());
+    }
+
+    /**
+     * @param file the PDF of ?path=, null reads the body of the request
+     */
+    private void extract(HttpExchange exchange, DocumentExtractor extractor, File file) throws IOException {
+        Map<String,String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        boolean csv = "csv".equals(parameters.get("output"));
+        ExtractionOptions.Builder options = _options.toBuilder().verticalLines(csv);
+        if (parameters.containsKey("sep")) {
+            options.separator(parameters.get("sep"));
+        }
+        String path = file != null ? file.getPath() : null;
+
+        PDDocument document = null;
+        try {
+            if (file != null) {
+                document = Extractor.load(file, _options.isMmap());
+            }
+            else if ("POST".equals(exchange.getRequestMethod())) {
+                // the Content-Length can be missing (chunked) or wrong
+                InputStream body = new LimitedInputStream(exchange.getRequestBody(), _maxBody);
+                document = Extractor.load(body, _options.isMmap());
+            }
+            else {
+                reply(exchange, 400, "POST a PDF or use ?path=\n");
+                return;
+            }
+        }
+        catch (BodyTooLargeException e) {
+            _failed.incrementAndGet();
+            reply(exchange, 413, e.getMessage() + "\n");
+            return;
+        }
+        catch (IOException e) {
+            _failed.incrementAndGet();
+            reply(exchange, 400, "cannot load the PDF: " + e.getMessage() + "\n");
+            return;
+        }
+        catch (RuntimeException e) {
+            // PDFBox fails on some damaged files with runtime exceptions
+            failed(file, e);
+            reply(exchange, 400, "cannot load the PDF: " + e + "\n");
+            return;
+        }
+        catch (StackOverflowError e) {
+            failed(file, e);
+            reply(exchange, 400, "cannot load the PDF: " + e + "\n");
+            return;
+        }
+
+        ResponseWriter out = new ResponseWriter(exchange);
+        try {
+            if (csv) {
+                extractor.extract(document, path, options.build(), new WriterSink(null, out, null, true));
+            }
+            else {
+                extractor.extract(document, path, options.build(), new WriterSink(out, null, null, true));
+            }
+            out.close();
+            _served.incrementAndGet();
+        }
+        catch (BudgetExceededException e) {
+            failed(file, e);
+            error(exchange, out, e);
+        }
+        catch (IOException e) {
+            _failed.incrementAndGet();
+            LOG.error(e);
+            error(exchange, out, e);
+        }
+        catch (RuntimeException e) {
+            failed(file, e);
+            error(exchange, out, e);
+        }
+        catch (StackOverflowError e) {
+            failed(file, e);
+            error(exchange, out, e);
+        }
+        finally {
+            document.close();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Count a document that exceeded its budget or crashed the extraction, and quarantine its file.
+     * @param file null for a PDF in the body of the request
+     */
+    private void failed(File file, Throwable error) {
+        _failed.incrementAndGet();
+        LOG.error("Failed to process " + (file != null ? file : "an uploaded PDF"), error);
+        if (file != null && _options.getQuarantine() != null) {
+            _options.getQuarantine().failed(file.toPath(), error);
+        }
+    }
+
+    /**
+     * Answer 500 when nothing is sent yet, otherwise the client sees a truncated response.
+     */
+    private static void error(HttpExchange exchange, ResponseWriter out, Throwable error) throws IOException {
+        if (out.isStarted() == false) {
+            reply(exchange, 500, "extraction failed: " + error + "\n");
+        }
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        reply(exchange, 200,
+              "running=" + _running.get() + "\n" +
+              "waiting=" + _waiting.get() + "\n" +
+              "served=" + _served.get() + "\n" +
+              "failed=" + _failed.get() + "\n" +
+              "shed=" + _shed.get() + "\n");
+    }
+
+    private static void reply(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+        exchange.close();
+    }
+
+    private static Map<String,String> parameters(String query) throws IOException {
+        Map<String,String> parameters = new HashMap<String,String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq+1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Sends the status 200 and the headers with the first output, so that a document that fails before
+     * its first page is still answered with an error.
+     */
+    private static class ResponseWriter extends Writer {
+        private final HttpExchange _exchange;
+        private Writer _out = null;
+
+        ResponseWriter(HttpExchange exchange) {
+            _exchange = exchange;
+        }
+
+        boolean isStarted() {
+            return _out != null;
+        }
+
+        private Writer out() throws IOException {
+            if (_out == null) {
+                _exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                _exchange.sendResponseHeaders(200, 0);
+                _out = new BufferedWriter(new OutputStreamWriter(_exchange.getResponseBody(), "UTF-8"));
+            }
+            return _out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out().write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out().write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_out != null) {
+                _out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // an empty extraction is a complete answer too
+            out().close();
+        }
+    }
+
+    private static class BodyTooLargeException extends IOException {
+        BodyTooLargeException(long max) {
+            super("the PDF is larger than " + max + " bytes");
+        }
+    }
+
+    /**
+     * Fails once more than max bytes are read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long _max;
+        private long _read = 0;
+
+        LimitedInputStream(InputStream in, long max) {
+            super(in);
+            _max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            _read += n;
+            if (_read > _max) {
+                throw new BodyTooLargeException(_max);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+
+/**
+ * Receives the output of an extraction page by page, in page order.
+ * Pages without output (over budget, outside the template) are not passed.
+ */
+public interface ExtractionSink
+{
+    /**
+     * @param info the .info lines of the page without the page number column, each ends with '\n'
+     * @param grid the .csv rows of the grids of the page, empty without grids or without vertical lines
+     * @param index the spatial index of the words of the page, null unless the options have index or a page cache
+     */
+    void page(int pageNb, String info, String grid, WordIndex index) throws IOException;
+}
@@ -0,0 +1,71 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters of the pages of a document, or of all the documents of an Extractor, a pipeline or a run,
+ * added up from the PageStats of each page. Thread safe.
+ */
+public class ExtractionStats
+{
+    private final AtomicInteger _pagesScanned = new AtomicInteger();
+    private final AtomicInteger _pagesWithoutText = new AtomicInteger();
+    private final AtomicInteger _gridsWithoutRulings = new AtomicInteger();
+    private final AtomicInteger _pagesOverBudget = new AtomicInteger();
+    private final AtomicInteger _pagesCaptured = new AtomicInteger();
+    private final AtomicInteger _crossCheckDifferences = new AtomicInteger();
+    private final OperatorProfile _operators = new OperatorProfile();
+
+    /**
+     * Count a page that went through the extraction, from the cache or not.
+     */
+    public void add(PageStats page)
+    {
+        _pagesScanned.incrementAndGet();
+        if (page.withoutText) {
+            _pagesWithoutText.incrementAndGet();
+        }
+        if (page.gridWithoutRulings) {
+            _gridsWithoutRulings.incrementAndGet();
+        }
+        if (page.overBudget != null) {
+            _pagesOverBudget.incrementAndGet();
+        }
+        if (page.captured) {
+            _pagesCaptured.incrementAndGet();
+        }
+        _crossCheckDifferences.addAndGet(page.crossCheckDifferences);
+    }
+
+    public void add(ExtractionStats stats)
+    {
+        _pagesScanned.addAndGet(stats.getPagesScanned());
+        _pagesWithoutText.addAndGet(stats.getPagesWithoutText());
+        _gridsWithoutRulings.addAndGet(stats.getGridsWithoutRulings());
+        _pagesOverBudget.addAndGet(stats.getPagesOverBudget());
+        _pagesCaptured.addAndGet(stats.getPagesCaptured());
+        _crossCheckDifferences.addAndGet(stats.getCrossCheckDifferences());
+        _operators.add(stats._operators);
+    }
+
+    /**
+     * Add the operator profile of a document, see OperatorProfile.
+     */
+    public void add(OperatorProfile profile)
+    {
+        _operators.add(profile);
+    }
+
+    public int getPagesScanned() { return _pagesScanned.get(); }
+    /** pages whose content shows no text, they are not written */
+    public int getPagesWithoutText() { return _pagesWithoutText.get(); }
+    /** pages with words whose grid pass was skipped because they paint no path */
+    public int getGridsWithoutRulings() { return _gridsWithoutRulings.get(); }
+    public int getPagesOverBudget() { return _pagesOverBudget.get(); }
+    /** slow pages written by SlowPageCapture */
+    public int getPagesCaptured() { return _pagesCaptured.get(); }
+    /** differences between the text engines, with cross-check */
+    public int getCrossCheckDifferences() { return _crossCheckDifferences.get(); }
+    /** the operators of the documents, empty unless they are profiled */
+    public OperatorProfile getOperators() { return _operators; }
+}
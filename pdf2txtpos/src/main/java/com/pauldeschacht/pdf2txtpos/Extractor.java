@@ -0,0 +1,140 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Extracts documents with one set of options, from any number of threads at the same time.
+ *
+ *   Extractor extractor = new Extractor(ExtractionOptions.builder().verticalLines(true).build());
+ *   extractor.extract(Paths.get("report.pdf"), new WriterSink(info, csv, null));
+ *
+ * Each call borrows a DocumentExtractor from a pool and returns it when the document is done, so the
+ * engines stay warm and the pool grows to the number of threads that extract at the same time.
+ * Each call returns the counters of its document, getStats() adds up the counters of all the calls.
+ */
+public class Extractor
+{
+    private final ExtractionOptions _options;
+    private final ConcurrentLinkedQueue<DocumentExtractor> _idle = new ConcurrentLinkedQueue<DocumentExtractor>();
+    private final ExtractionStats _stats = new ExtractionStats();
+
+    public Extractor(ExtractionOptions options)
+    {
+        _options = options;
+    }
+
+    public ExtractionOptions getOptions()
+    {
+        return _options;
+    }
+
+    /**
+     * The counters of the documents extracted so far.
+     */
+    public ExtractionStats getStats()
+    {
+        return _stats;
+    }
+
+    /**
+     * Extract a PDF file, memory-mapped when the options say so.
+     */
+    public ExtractionStats extract(Path pdf, ExtractionSink sink) throws IOException
+    {
+        PDDocument document = load(pdf.toFile(), _options.isMmap());
+        try {
+            return extract(document, pdf.toString(), sink);
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    /**
+     * Extract a PDF read sequentially from the stream, the stream is not closed.
+     */
+    public ExtractionStats extract(InputStream pdf, ExtractionSink sink) throws IOException
+    {
+        PDDocument document = load(pdf, _options.isMmap());
+        try {
+            return extract(document, null, sink);
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    /**
+     * Extract a loaded document, the caller closes it.
+     */
+    public ExtractionStats extract(PDDocument document, ExtractionSink sink) throws IOException
+    {
+        return extract(document, null, sink);
+    }
+
+    /**
+     * Extract a loaded document, the caller closes it.
+     * @param name the file of the document in the profiling events, null when unknown
+     */
+    public ExtractionStats extract(PDDocument document, String name, ExtractionSink sink) throws IOException
+    {
+        DocumentExtractor extractor = _idle.poll();
+        if (extractor == null) {
+            extractor = new DocumentExtractor();
+        }
+        try {
+            ExtractionStats stats = extractor.extract(document, name, _options, sink);
+            _stats.add(stats);
+            return stats;
+        }
+        finally {
+            _idle.add(extractor);
+        }
+    }
+
+    /**
+     * Load a PDF file, memory-mapped with mmap (see MappedFile).
+     */
+    public static PDDocument load(File pdf, boolean mmap) throws IOException
+    {
+        if (mmap == false) {
+            return PDDocument.load(pdf);
+        }
+        InputStream input = MappedFile.open(pdf).asInputStream();
+        try {
+            return load(input, true);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Load a PDF from a stream. With mmap the content of the streams of the document is kept in a
+     * memory-mapped scratch file instead of the heap.
+     */
+    public static PDDocument load(InputStream input, boolean mmap) throws IOException
+    {
+        if (mmap == false) {
+            return PDDocument.load(input);
+        }
+        MappedFile scratch = MappedFile.scratch();
+        try {
+            // the document closes its scratch file
+            return PDDocument.load(input, scratch);
+        }
+        catch (IOException e) {
+            scratch.close();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            scratch.close();
+            throw e;
+        }
+    }
+}
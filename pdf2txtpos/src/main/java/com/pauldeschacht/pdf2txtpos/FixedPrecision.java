@@ -0,0 +1,55 @@
+package com.pauldeschacht.pdf2txtpos;
+
+/**
+ * Writes floats with a fixed number of decimals straight into a StringBuilder, without the
+ * shortest representation search and the temporary String of Float.toString.
+ * The value is rounded half away from zero, so the coordinates are also quantized to the precision.
+ */
+public class FixedPrecision
+{
+    public static final int MAX_PRECISION = 9;
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    // above this the scaled value no longer fits exactly in a long
+    private static final double MAX_SCALED = 1e17;
+
+    private FixedPrecision()
+    {
+    }
+
+    /**
+     * Append value with the given number of decimals, or as Float.toString when precision is negative.
+     */
+    public static StringBuilder append(StringBuilder sb, float value, int precision)
+    {
+        if (precision < 0 || Float.isNaN(value) || Float.isInfinite(value)) {
+            return sb.append(value);
+        }
+        int p = Math.min(precision, MAX_PRECISION);
+        double scaled = Math.abs((double)value) * POW10[p];
+        if (scaled >= MAX_SCALED) {
+            return sb.append(value);
+        }
+        long v = (long)(scaled + 0.5);
+        if (v == 0) {
+            // no "-0.00"
+            value = 0;
+        }
+        if (value < 0) {
+            sb.append('-');
+        }
+        sb.append(v / POW10[p]);
+        if (p > 0) {
+            long fraction = v % POW10[p];
+            sb.append('.');
+            for (long d = POW10[p-1]; d > fraction && d > 1; d /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,220 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the extraction, so that a recording shows which pages of which files are
+ * expensive next to the GC and I/O events of the JVM:
+ *
+ *   java -XX:StartFlightRecording=filename=run.jfr ... PDF2TxtPos -d dir
+ *   jfr print --events pdf2txtpos.SlowPage run.jfr
+ *
+ * The events cost nothing while no recording is running. On a runtime without Flight Recorder (before
+ * Java 11 and 8u262) the event classes are never loaded, the callers check AVAILABLE first.
+ */
+public class FlightEvents
+{
+    public static final boolean AVAILABLE = available();
+
+    private FlightEvents()
+    {
+    }
+
+    private static boolean available()
+    {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    @Name("pdf2txtpos.Document")
+    @Label("Document")
+    @Description("Extraction of a PDF file, with the totals of its pages")
+    @Category("pdf2txtpos")
+    @StackTrace(false)
+    public static class Document extends Event
+    {
+        @Label("File")
+        public String file;
+        @Label("Pages")
+        public int pages;
+        @Label("Words")
+        public int words;
+        @Label("Glyphs")
+        public int glyphs;
+        @Label("Segments")
+        @Description("Path segments drawn by the grid passes")
+        public int segments;
+        @Label("Grids")
+        public int grids;
+        @Label("Load")
+        @Description("Stage of the directory pipeline, 0 when the document is extracted page by page into its output")
+        @Timespan(Timespan.NANOSECONDS)
+        public long loadDuration;
+        @Label("Text")
+        @Timespan(Timespan.NANOSECONDS)
+        public long textDuration;
+        @Label("Grid")
+        @Timespan(Timespan.NANOSECONDS)
+        public long gridDuration;
+        @Label("Write")
+        @Description("Stage of the directory pipeline, 0 when the document is extracted page by page into its output")
+        @Timespan(Timespan.NANOSECONDS)
+        public long writeDuration;
+
+        /**
+         * Add the counts and durations of a page.
+         */
+        public void add(PageStats page)
+        {
+            pages++;
+            words += page.words;
+            glyphs += page.glyphs;
+            segments += page.segments;
+            grids += page.grids;
+            textDuration += page.textNanos;
+            gridDuration += page.gridNanos;
+        }
+    }
+
+    @Name("pdf2txtpos.Page")
+    @Label("Page")
+    @Description("Text and grid passes over a page")
+    @Category("pdf2txtpos")
+    @StackTrace(false)
+    public static class Page extends Event
+    {
+        @Label("File")
+        public String file;
+        @Label("Page")
+        public int page;
+        @Label("Cached")
+        @Description("The output came from the page cache, no pass ran")
+        public boolean cached;
+        @Label("Words")
+        public int words;
+        @Label("Glyphs")
+        public int glyphs;
+        @Label("Segments")
+        public int segments;
+        @Label("Grids")
+        public int grids;
+        @Label("Text")
+        @Timespan(Timespan.NANOSECONDS)
+        public long textDuration;
+        @Label("Grid")
+        @Timespan(Timespan.NANOSECONDS)
+        public long gridDuration;
+        @Label("Allocated")
+        @DataAmount
+        public long allocated;
+        @Label("Over Budget")
+        @Description("Why the page was skipped, null when it was not")
+        public String overBudget;
+    }
+
+    @Name("pdf2txtpos.SlowPage")
+    @Label("Slow Page")
+    @Description("Page whose passes took longer or allocated more than the slow page thresholds, or that exceeded its budget")
+    @Category("pdf2txtpos")
+    @StackTrace(false)
+    public static class SlowPage extends Event
+    {
+        @Label("File")
+        public String file;
+        @Label("Page")
+        public int page;
+        @Label("Words")
+        public int words;
+        @Label("Glyphs")
+        public int glyphs;
+        @Label("Segments")
+        public int segments;
+        @Label("Grids")
+        public int grids;
+        @Label("Text")
+        @Timespan(Timespan.NANOSECONDS)
+        public long textDuration;
+        @Label("Grid")
+        @Timespan(Timespan.NANOSECONDS)
+        public long gridDuration;
+        @Label("Allocated")
+        @DataAmount
+        public long allocated;
+        @Label("Over Budget")
+        @Description("Why the page was skipped, null when it was not")
+        public String overBudget;
+    }
+
+    /**
+     * A started Document event, null without Flight Recorder or when the event is not recorded.
+     */
+    public static Document beginDocument(String file)
+    {
+        if (AVAILABLE == false) {
+            return null;
+        }
+        Document document = new Document();
+        if (document.isEnabled() == false) {
+            return null;
+        }
+        document.file = file;
+        document.begin();
+        return document;
+    }
+
+    /**
+     * Commit the Page event of a page, and the SlowPage event when it is slow for the options.
+     */
+    public static void page(String file, int pageNb, PageStats stats, boolean cached, ExtractionOptions options)
+    {
+        if (AVAILABLE == false) {
+            return;
+        }
+        Page page = new Page();
+        if (page.isEnabled()) {
+            page.file = file;
+            page.page = pageNb;
+            page.cached = cached;
+            page.words = stats.words;
+            page.glyphs = stats.glyphs;
+            page.segments = stats.segments;
+            page.grids = stats.grids;
+            page.textDuration = stats.textNanos;
+            page.gridDuration = stats.gridNanos;
+            page.allocated = stats.allocatedBytes;
+            page.overBudget = stats.overBudget;
+            page.commit();
+        }
+        if (options.isSlow(stats)) {
+            SlowPage slow = new SlowPage();
+            if (slow.isEnabled()) {
+                slow.file = file;
+                slow.page = pageNb;
+                slow.words = stats.words;
+                slow.glyphs = stats.glyphs;
+                slow.segments = stats.segments;
+                slow.grids = stats.grids;
+                slow.textDuration = stats.textNanos;
+                slow.gridDuration = stats.gridNanos;
+                slow.allocated = stats.allocatedBytes;
+                slow.overBudget = stats.overBudget;
+                slow.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Watches a folder and processes the PDF files as they are created or modified.
+ *
+ * A file is only processed when no event was seen for the debounce period and its size did not change
+ * during that period, so files that are still being copied are not read half written.
+ * The manifest keeps the size, modification time and digest of every processed file, so unchanged files
+ * are skipped, also after a restart.
+ */
+public class FolderWatcher
+{
+    private static final Log LOG = LogFactory.getLog(FolderWatcher.class);
+
+    public static final String MANIFEST_NAME = ".pdf2txtpos.manifest";
+
+    private static class Pending
+    {
+        long lastEvent;
+        long size;
+    }
+
+    protected Path _dir;
+    protected Manifest _manifest;
+    protected long _debounce;
+    protected ExtractionOptions _options;
+    private Map<Path, Pending> _pending;
+
+    public FolderWatcher(Path dir, Path manifest, long debounceMillis, ExtractionOptions options) throws IOException
+    {
+        _dir = dir.toAbsolutePath();
+        _manifest = new Manifest(manifest != null ? manifest : _dir.resolve(MANIFEST_NAME));
+        _debounce = debounceMillis;
+        _options = options;
+        _pending = new HashMap<Path, Pending>();
+    }
+
+    /**
+     * Process the files already in the folder, then wait for new or modified files. Does not return
+     * unless the folder disappears or the thread is interrupted.
+     */
+    public void run() throws IOException, InterruptedException
+    {
+        WatchService watchService = _dir.getFileSystem().newWatchService();
+        try {
+            _dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            LOG.info("Watching " + _dir);
+            scheduleAll();
+            while (true) {
+                WatchKey key = watchService.poll(Math.max(50, _debounce / 2), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost
+                            scheduleAll();
+                            continue;
+                        }
+                        schedule(_dir.resolve((Path)event.context()));
+                    }
+                    if (key.reset() == false) {
+                        LOG.warn("Folder " + _dir + " is no longer accessible");
+                        return;
+                    }
+                }
+                processSettled();
+            }
+        }
+        finally {
+            watchService.close();
+        }
+    }
+
+    private void scheduleAll() throws IOException
+    {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(_dir);
+        try {
+            for (Path path : stream) {
+                schedule(path);
+            }
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private void schedule(Path path)
+    {
+        if (path.getFileName().toString().endsWith(".pdf") == false) {
+            return;
+        }
+        Pending pending = _pending.get(path);
+        if (pending == null) {
+            pending = new Pending();
+            _pending.put(path, pending);
+        }
+        pending.lastEvent = System.currentTimeMillis();
+        pending.size = size(path);
+    }
+
+    private void processSettled()
+    {
+        long now = System.currentTimeMillis();
+        List<Path> settled = new ArrayList<Path>();
+        for (Map.Entry<Path, Pending> kv : _pending.entrySet()) {
+            Pending pending = kv.getValue();
+            if (now - pending.lastEvent < _debounce) {
+                continue;
+            }
+            long size = size(kv.getKey());
+            if (size != pending.size) {
+                // still growing without events (e.g. network shares)
+                pending.size = size;
+                pending.lastEvent = now;
+                continue;
+            }
+            settled.add(kv.getKey());
+        }
+        for (Path path : settled) {
+            _pending.remove(path);
+            process(path);
+        }
+    }
+
+    private void process(Path path)
+    {
+        if (Files.isRegularFile(path) == false) {
+            return;
+        }
+        try {
+            if (_manifest.isUnchanged(path)) {
+                LOG.debug("Unchanged " + path);
+                return;
+            }
+            PDF2TxtPos.parseFile(path.toString(), _options);
+            _manifest.record(path);
+        }
+        catch (Exception e) {
+            // not recorded, the file is retried when it changes or after a restart
+            LOG.error("Failed to process " + path, e);
+        }
+    }
+
+    private static long size(Path path)
+    {
+        try {
+            return Files.size(path);
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+}
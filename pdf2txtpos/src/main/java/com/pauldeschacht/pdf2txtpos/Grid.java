@@ -28,14 +28,40 @@ public class Grid
     protected Double[] _xs = null;
     protected Double[] _ys = null;
     
-    public static double COLLAPSE_X = (double)3.0;
-    public static double COLLAPSE_Y = (double)3.0;
+    public static final double COLLAPSE_X = (double)3.0;
+    public static final double COLLAPSE_Y = (double)3.0;
+
+    protected final double _collapseX, _collapseY, _lineMargin;
 
     public Grid()
+    {
+	this(COLLAPSE_X, COLLAPSE_Y, Line.LINE_MARGIN);
+    }
+
+    /**
+     * @param collapseX rulings closer than collapseX are one column
+     * @param collapseY rulings closer than collapseY are one row
+     * @param lineMargin see Line.isVertical()
+     **/
+    public Grid(double collapseX, double collapseY, double lineMargin)
     {
 	_isDefined=false;
 	_xs = null;
 	_ys = null;
+	_collapseX = collapseX;
+	_collapseY = collapseY;
+	_lineMargin = lineMargin;
+    }
+
+    /**
+     * A grid with known boundaries, see GridCache. The arrays are not modified.
+     **/
+    public Grid(Double[] xs, Double[] ys, double collapseX, double collapseY, double lineMargin)
+    {
+	this(collapseX, collapseY, lineMargin);
+	_isDefined = true;
+	_xs = xs;
+	_ys = ys;
     }
 
     /**
@@ -218,11 +244,11 @@ public class Grid
 		    _maxx = java.lang.Math.max(_maxx, l_maxx);
 		    _maxy = java.lang.Math.max(_maxy, l_maxy);
 		    
-		    if (line.isHorizontal()==true) { 
+		    if (line.isHorizontal(_lineMargin)==true) { 
 			//equal x
 			gridx.add(line._x1);
 		    }
-		    else if (line.isVertical()==true) {
+		    else if (line.isVertical(_lineMargin)==true) {
 			//equal y
 			gridy.add(line._y1);
 		    }
@@ -268,8 +294,8 @@ public class Grid
 	Double[] xs = gridx.toArray(new Double[0]);
 	Double[] ys = gridy.toArray(new Double[0]);
 
-	_xs = collapse(xs, (double)Grid.COLLAPSE_X);
-	_ys = collapse(ys, (double)Grid.COLLAPSE_Y);
+	_xs = collapse(xs, _collapseX);
+	_ys = collapse(ys, _collapseY);
 
 	return nonProcessedLines;
     }
@@ -0,0 +1,174 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory cache of the grids built from a set of lines, keyed by a signature of the lines. The statements of
+ * an issuer draw the same ruled table on every page and every month, their grids are built once.
+ *
+ * The signature holds the coordinates of the lines rounded to QUANTUM and the settings of the grids. The lines
+ * are in the order of sorted(), so the drawing order does not matter; the grids are built from the lines in
+ * that order too, so that the grids of the first page fit the second one. Two sets of lines with the same
+ * signature are within QUANTUM of each other, far below the precision of the positions of the words, so the
+ * grids of the first are used for the second. The grid drawer
+ * still draws every page, only the grouping of the lines into grids is skipped.
+ * The cache keeps the boundaries of the grids, shared by the Grid objects of every hit, and holds at most
+ * maxEntries signatures, the least recently used are removed first. It is thread safe.
+ */
+public class GridCache
+{
+    /** points, the coordinates of the lines are rounded to this */
+    public static final double QUANTUM = 0.001;
+
+    /**
+     * The rounded lines and settings of a page or region.
+     */
+    public static final class Signature
+    {
+        private final long[] _values;
+        private final int _hash;
+
+        private Signature(long[] values)
+        {
+            _values = values;
+            _hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if ((o instanceof Signature) == false) {
+                return false;
+            }
+            Signature signature = (Signature)o;
+            return _hash == signature._hash && Arrays.equals(_values, signature._values);
+        }
+    }
+
+    /** orders the lines by their rounded coordinates */
+    private static final Comparator<Line> QUANTIZED = new Comparator<Line>() {
+        public int compare(Line l1, Line l2) {
+            int c = compare(l1._x1, l2._x1);
+            if (c == 0) {
+                c = compare(l1._y1, l2._y1);
+            }
+            if (c == 0) {
+                c = compare(l1._x2, l2._x2);
+            }
+            if (c == 0) {
+                c = compare(l1._y2, l2._y2);
+            }
+            return c;
+        }
+        private int compare(double v1, double v2) {
+            long q1 = Math.round(v1 / QUANTUM);
+            long q2 = Math.round(v2 / QUANTUM);
+            return q1 < q2 ? -1 : (q1 == q2 ? 0 : 1);
+        }
+    };
+
+    private final Map<Signature, List<Double[][]>> _entries;
+    private final AtomicInteger _hits = new AtomicInteger();
+    private final AtomicInteger _misses = new AtomicInteger();
+
+    /**
+     * @param maxEntries number of signatures kept
+     */
+    public GridCache(final int maxEntries)
+    {
+        _entries = new LinkedHashMap<Signature, List<Double[][]>>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, List<Double[][]>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The horizontal lines and then the vertical lines, each sorted by their coordinates rounded to QUANTUM.
+     */
+    public static List<Line> sorted(List<Line> lines, double lineMargin)
+    {
+        List<Line> horizontals = new ArrayList<Line>();
+        List<Line> verticals = new ArrayList<Line>();
+        for (Line line : lines) {
+            if (line.isVertical(lineMargin)) {
+                verticals.add(line);
+            }
+            else {
+                horizontals.add(line);
+            }
+        }
+        Collections.sort(horizontals, QUANTIZED);
+        Collections.sort(verticals, QUANTIZED);
+        horizontals.addAll(verticals);
+        return horizontals;
+    }
+
+    /**
+     * @param lines in the order of sorted()
+     */
+    public static Signature signature(List<Line> lines, double collapseX, double collapseY, double lineMargin)
+    {
+        long[] values = new long[3 + 4 * lines.size()];
+        values[0] = Double.doubleToLongBits(collapseX);
+        values[1] = Double.doubleToLongBits(collapseY);
+        values[2] = Double.doubleToLongBits(lineMargin);
+        int i = 3;
+        for (Line line : lines) {
+            values[i++] = Math.round(line._x1 / QUANTUM);
+            values[i++] = Math.round(line._y1 / QUANTUM);
+            values[i++] = Math.round(line._x2 / QUANTUM);
+            values[i++] = Math.round(line._y2 / QUANTUM);
+        }
+        return new Signature(values);
+    }
+
+    /**
+     * The grids of the signature, null when they are not cached.
+     */
+    public List<Grid> get(Signature signature, double collapseX, double collapseY, double lineMargin)
+    {
+        List<Double[][]> boundaries;
+        synchronized (_entries) {
+            boundaries = _entries.get(signature);
+        }
+        if (boundaries == null) {
+            _misses.incrementAndGet();
+            return null;
+        }
+        _hits.incrementAndGet();
+        List<Grid> grids = new ArrayList<Grid>(boundaries.size());
+        for (Double[][] xys : boundaries) {
+            grids.add(new Grid(xys[0], xys[1], collapseX, collapseY, lineMargin));
+        }
+        return grids;
+    }
+
+    public void put(Signature signature, List<Grid> grids)
+    {
+        List<Double[][]> boundaries = new ArrayList<Double[][]>(grids.size());
+        for (Grid grid : grids) {
+            boundaries.add(new Double[][] { grid.xs(), grid.ys() });
+        }
+        synchronized (_entries) {
+            _entries.put(signature, boundaries);
+        }
+    }
+
+    public int getHits() { return _hits.get(); }
+    public int getMisses() { return _misses.get(); }
+}
@@ -8,7 +8,7 @@ package com.pauldeschacht.pdf2txtpos;
 
 public class Line 
 {
-    public static double LINE_MARGIN = 2;
+    public static final double LINE_MARGIN = 2;
 
     public double _x1, _y1, _x2, _y2;
 
@@ -21,11 +21,19 @@ public class Line
     }
     public boolean isVertical() 
     {
-	return (java.lang.Math.abs(_y2 - _y1) < Line.LINE_MARGIN);
+	return isVertical(LINE_MARGIN);
     }
     public boolean isHorizontal()
     {
-	return (java.lang.Math.abs(_x2 - _x1) < Line.LINE_MARGIN);
+	return isHorizontal(LINE_MARGIN);
+    }
+    public boolean isVertical(double margin) 
+    {
+	return (java.lang.Math.abs(_y2 - _y1) < margin);
+    }
+    public boolean isHorizontal(double margin)
+    {
+	return (java.lang.Math.abs(_x2 - _x1) < margin);
     }
 
     public String toString() 
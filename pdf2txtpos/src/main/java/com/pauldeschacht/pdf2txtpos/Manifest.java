@@ -0,0 +1,208 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Record of the processed files: path, size, modification time and SHA-256 digest of the content.
+ * The manifest is a text file (digest;size;mtime;path) that survives restarts. Each change appends a line,
+ * a later line of the same path replaces the earlier ones. When the file holds more than twice as many lines
+ * as paths, it is compacted: rewritten atomically with one line per path.
+ */
+public class Manifest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** lines of the file that are never worth a compaction */
+    private static final int COMPACT_MIN = 1000;
+
+    public static class Entry
+    {
+        public final String digest;
+        public final long size;
+        public final long mtime;
+
+        public Entry(String digest, long size, long mtime)
+        {
+            this.digest = digest;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    protected Path _file;
+    protected Map<String, Entry> _entries;
+    // lines in the file
+    protected int _lines = 0;
+
+    public Manifest(Path file) throws IOException
+    {
+        _file = file;
+        _entries = new HashMap<String, Entry>();
+        if (Files.exists(file)) {
+            BufferedReader reader = Files.newBufferedReader(file, UTF8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    _lines++;
+                    String[] fields = line.split(";", 4);
+                    if (fields.length == 4) {
+                        try {
+                            _entries.put(fields[3], new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                        }
+                        catch (NumberFormatException e) {
+                            // incomplete line
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+            if (endsWithNewline(file) == false) {
+                // a line cut by a crash must not swallow the next one
+                save();
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+        try {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * true if the file is already processed with the same content.
+     * The digest is only computed when the size or the modification time changed.
+     */
+    public synchronized boolean isUnchanged(Path pdf) throws IOException
+    {
+        Entry entry = _entries.get(key(pdf));
+        if (entry == null) {
+            return false;
+        }
+        long size = Files.size(pdf);
+        long mtime = Files.getLastModifiedTime(pdf).toMillis();
+        if (entry.size == size && entry.mtime == mtime) {
+            return true;
+        }
+        String digest = digest(pdf);
+        if (entry.digest.equals(digest)) {
+            // touched but not modified
+            append(key(pdf), new Entry(digest, size, mtime));
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void record(Path pdf) throws IOException
+    {
+        append(key(pdf), new Entry(digest(pdf), Files.size(pdf), Files.getLastModifiedTime(pdf).toMillis()));
+    }
+
+    public synchronized Entry get(Path pdf)
+    {
+        return _entries.get(key(pdf));
+    }
+
+    private static String key(Path pdf)
+    {
+        return pdf.toAbsolutePath().normalize().toString();
+    }
+
+    private void append(String key, Entry entry) throws IOException
+    {
+        _entries.put(key, entry);
+        if (_lines >= COMPACT_MIN && _lines >= 2 * _entries.size()) {
+            save();
+            return;
+        }
+        Writer writer = Files.newBufferedWriter(_file, UTF8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            writer.write(line(key, entry));
+        }
+        finally {
+            writer.close();
+        }
+        _lines++;
+    }
+
+    private static String line(String key, Entry entry)
+    {
+        return entry.digest + ";" + entry.size + ";" + entry.mtime + ";" + key + "\n";
+    }
+
+    /**
+     * Rewrite the file with one line per path.
+     */
+    private void save() throws IOException
+    {
+        Path tmp = _file.resolveSibling(_file.getFileName() + ".tmp");
+        BufferedWriter writer = Files.newBufferedWriter(tmp, UTF8);
+        try {
+            for (Map.Entry<String, Entry> kv : _entries.entrySet()) {
+                writer.write(line(kv.getKey(), kv.getValue()));
+            }
+        }
+        finally {
+            writer.close();
+        }
+        Files.move(tmp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _lines = _entries.size();
+    }
+
+    public static String digest(Path file) throws IOException
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = Files.newInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return hex(md.digest());
+    }
+
+    public static String hex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
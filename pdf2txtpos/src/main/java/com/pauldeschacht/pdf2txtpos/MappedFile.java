@@ -0,0 +1,338 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.io.RandomAccessFile;
+
+/**
+ * RandomAccess over a memory-mapped file, the bytes stay in the page cache instead of the heap.
+ *
+ * The file is mapped in windows of 64 MB, so files of more than 2 GB work too.
+ * A read-only MappedFile is the input of the parser (see asInputStream()). A scratch MappedFile is a
+ * temporary file that grows with the writes, PDFBox keeps the content of all the streams of the document
+ * in it. The scratch file is deleted by close(), which PDFBox calls when the document is closed, or when the
+ * JVM exits.
+ *
+ * The scratch files of a process are in its own directory of the temporary directory, pdf2txtpos-N, next to
+ * the lock file pdf2txtpos-N.lock that the process keeps locked while it runs. The first scratch() removes the
+ * directories whose lock is free, a killed process left them behind. The scratch files of the other running
+ * processes are never touched, however long their extraction runs.
+ *
+ * It extends the RandomAccessFile of PDFBox because COSStream shares only that kind of scratch file between
+ * the streams of a document, all the methods are replaced by the mapped ones. The windows are mapped through
+ * a channel of its own, the file handle of the PDFBox class is only closed.
+ * Not thread-safe, like the RandomAccess implementations of PDFBox.
+ */
+public class MappedFile extends RandomAccessFile
+{
+    private static final Log LOG = LogFactory.getLog(MappedFile.class);
+
+    private static final int WINDOW_BITS = 26;
+    private static final long WINDOW = 1L << WINDOW_BITS;
+    private static final String SCRATCH_PREFIX = "pdf2txtpos-";
+    private static final String SCRATCH_SUFFIX = ".scratch";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    // the scratch directory of the process and its lock, held until the JVM exits
+    private static File _scratchDir = null;
+    private static FileLock _scratchLock = null;
+
+    private final File _file;
+    private final boolean _scratch;
+    private final java.io.RandomAccessFile _raf;
+    private final FileChannel _channel;
+    private final List<MappedByteBuffer> _windows = new ArrayList<MappedByteBuffer>();
+    private long _length;
+    private long _position = 0;
+    private boolean _closed = false;
+
+    private MappedFile(File file, boolean scratch) throws IOException
+    {
+        super(file, scratch ? "rw" : "r");
+        _file = file;
+        _scratch = scratch;
+        try {
+            _raf = new java.io.RandomAccessFile(file, scratch ? "rw" : "r");
+        }
+        catch (IOException e) {
+            super.close();
+            throw e;
+        }
+        _channel = _raf.getChannel();
+        _length = scratch ? 0 : _channel.size();
+    }
+
+    /**
+     * Map an existing file for reading.
+     */
+    public static MappedFile open(File file) throws IOException
+    {
+        return new MappedFile(file, false);
+    }
+
+    /**
+     * A new temporary file for the scratch data of PDFBox, deleted when closed.
+     */
+    public static MappedFile scratch() throws IOException
+    {
+        File file = File.createTempFile(SCRATCH_PREFIX, SCRATCH_SUFFIX, scratchDir());
+        file.deleteOnExit();
+        try {
+            return new MappedFile(file, true);
+        }
+        catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * The scratch directory of the process, created with its lock by the first call.
+     */
+    private static synchronized File scratchDir() throws IOException
+    {
+        if (_scratchDir != null) {
+            return _scratchDir;
+        }
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        deleteStaleScratch(tmp);
+        while (true) {
+            File lockFile = File.createTempFile(SCRATCH_PREFIX, LOCK_SUFFIX, tmp);
+            // deleted after the directory and its files, the deletions run in the reverse order
+            lockFile.deleteOnExit();
+            java.io.RandomAccessFile lock = new java.io.RandomAccessFile(lockFile, "rw");
+            _scratchLock = lock.getChannel().lock();
+            if (lockFile.exists() == false) {
+                // removed as stale by another process before it was locked
+                lock.close();
+                continue;
+            }
+            File dir = scratchDirOf(lockFile);
+            if (dir.mkdir() == false) {
+                lock.close();
+                throw new IOException("Cannot create the scratch directory " + dir);
+            }
+            dir.deleteOnExit();
+            _scratchDir = dir;
+            return dir;
+        }
+    }
+
+    private static File scratchDirOf(File lockFile)
+    {
+        String name = lockFile.getName();
+        return new File(lockFile.getParentFile(), name.substring(0, name.length() - LOCK_SUFFIX.length()));
+    }
+
+    /**
+     * Remove the scratch directories whose lock is free, they were left by a process that was killed.
+     */
+    protected static void deleteStaleScratch(File dir)
+    {
+        File[] locks = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(SCRATCH_PREFIX) && name.endsWith(LOCK_SUFFIX) && file.isFile();
+            }
+        });
+        if (locks == null) {
+            return;
+        }
+        for (File lockFile : locks) {
+            try {
+                java.io.RandomAccessFile lock = new java.io.RandomAccessFile(lockFile, "rw");
+                try {
+                    if (lock.getChannel().tryLock() == null) {
+                        // the process runs
+                        continue;
+                    }
+                    File stale = scratchDirOf(lockFile);
+                    File[] files = stale.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            file.delete();
+                        }
+                    }
+                    stale.delete();
+                    // while it is locked, so that a process that just created it sees it is gone
+                    lockFile.delete();
+                    LOG.info("Removed stale scratch directory " + stale);
+                }
+                finally {
+                    lock.close();
+                }
+            }
+            catch (OverlappingFileLockException e) {
+                // the lock of this process
+            }
+            catch (IOException e) {
+                LOG.warn("Cannot remove the stale scratch files of " + lockFile, e);
+            }
+        }
+    }
+
+    /**
+     * Stream over the file from the current position. Closing the stream closes the file.
+     */
+    public InputStream asInputStream()
+    {
+        return new InputStream() {
+            public int read() throws IOException {
+                return MappedFile.this.read();
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                return MappedFile.this.read(b, off, len);
+            }
+            public long skip(long n) throws IOException {
+                long skipped = Math.max(0, Math.min(n, _length - _position));
+                _position += skipped;
+                return skipped;
+            }
+            public int available() {
+                return (int)Math.min(Integer.MAX_VALUE, _length - _position);
+            }
+            public void close() throws IOException {
+                MappedFile.this.close();
+            }
+        };
+    }
+
+    @Override
+    public long getPosition() throws IOException
+    {
+        return _position;
+    }
+
+    @Override
+    public void seek(long position) throws IOException
+    {
+        if (position < 0) {
+            throw new IOException("Invalid position " + position + " in " + _file);
+        }
+        _position = position;
+    }
+
+    @Override
+    public long length() throws IOException
+    {
+        return _length;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (_position >= _length) {
+            return -1;
+        }
+        MappedByteBuffer window = window(_position >>> WINDOW_BITS);
+        int b = window.get((int)(_position & (WINDOW - 1))) & 0xff;
+        _position++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (_position >= _length) {
+            return len == 0 ? 0 : -1;
+        }
+        len = (int)Math.min(len, _length - _position);
+        int read = 0;
+        while (read < len) {
+            MappedByteBuffer window = window(_position >>> WINDOW_BITS);
+            int offset = (int)(_position & (WINDOW - 1));
+            int n = Math.min(len - read, window.limit() - offset);
+            ((Buffer)window).position(offset);
+            window.get(b, off + read, n);
+            read += n;
+            _position += n;
+        }
+        return read;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        checkWritable();
+        MappedByteBuffer window = window(_position >>> WINDOW_BITS);
+        window.put((int)(_position & (WINDOW - 1)), (byte)b);
+        _position++;
+        _length = Math.max(_length, _position);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        checkWritable();
+        int written = 0;
+        while (written < len) {
+            MappedByteBuffer window = window(_position >>> WINDOW_BITS);
+            int offset = (int)(_position & (WINDOW - 1));
+            int n = Math.min(len - written, window.limit() - offset);
+            ((Buffer)window).position(offset);
+            window.put(b, off + written, n);
+            written += n;
+            _position += n;
+        }
+        _length = Math.max(_length, _position);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        // the mappings are released by the garbage collector, the file can be removed before
+        _windows.clear();
+        try {
+            // closes the channel too
+            _raf.close();
+        }
+        finally {
+            super.close();
+        }
+        if (_scratch) {
+            _file.delete();
+        }
+    }
+
+    private void checkWritable() throws IOException
+    {
+        if (_scratch == false) {
+            throw new IOException(_file + " is read-only");
+        }
+    }
+
+    private MappedByteBuffer window(long index) throws IOException
+    {
+        if (_closed) {
+            throw new IOException(_file + " is closed");
+        }
+        while (_windows.size() <= index) {
+            long start = _windows.size() * WINDOW;
+            MappedByteBuffer window;
+            if (_scratch) {
+                // a writable mapping beyond the end grows the file
+                window = _channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW);
+            }
+            else {
+                window = _channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, _length - start));
+            }
+            _windows.add(window);
+        }
+        return _windows.get((int)index);
+    }
+}
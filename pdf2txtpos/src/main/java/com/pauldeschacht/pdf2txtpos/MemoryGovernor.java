@@ -0,0 +1,207 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdfparser.NonSequentialPDFParser;
+
+/**
+ * Admits documents against a heap budget, so that the number of documents in memory adapts to their size
+ * instead of being a fixed thread count.
+ *
+ * Each document reserves its estimated cost (see estimate()) before it is loaded and releases it when its
+ * output is written. A document waits while the reservations would exceed the budget, while the heap that
+ * survived the last collection is above the high water mark, or while the garbage collector takes more than
+ * a quarter of the time. A document is always admitted when nothing else is running, so a document larger
+ * than the budget is processed alone instead of never.
+ */
+public class MemoryGovernor
+{
+    private static final Log LOG = LogFactory.getLog(MemoryGovernor.class);
+
+    private static final double HIGH_WATER = 0.85;
+    private static final double GC_THROTTLE = 0.25;
+    private static final double GC_RESUME = 0.10;
+    private static final long SAMPLE_MILLIS = 1000;
+
+    private final MemoryMXBean _memory = ManagementFactory.getMemoryMXBean();
+    private final long _maxHeap;
+    private final long _budget;
+    private long _reserved = 0;
+    private int _running = 0;
+    private volatile boolean _throttled = false;
+    private volatile double _gcOverhead = 0;
+    private volatile long _heapAfterGc = 0;
+    private long _lastGcTime;
+    private long _lastSample;
+    private Timer _sampler;
+
+    /**
+     * @param heapFraction part of the maximum heap that the admitted documents may reserve
+     */
+    public MemoryGovernor(double heapFraction)
+    {
+        MemoryUsage heap = _memory.getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        _maxHeap = max;
+        _budget = (long)(max * heapFraction);
+        _lastGcTime = gcTime();
+        _lastSample = System.nanoTime();
+        _sampler = new Timer("pdf2txtpos-memory", true);
+        _sampler.schedule(new TimerTask() {
+            public void run() {
+                sample();
+            }
+        }, SAMPLE_MILLIS, SAMPLE_MILLIS);
+        LOG.info("Heap budget " + (_budget >> 20) + " MB of " + (max >> 20) + " MB");
+    }
+
+    /**
+     * Estimated heap of a loaded document: PDFBox keeps the parsed objects of the whole file, plus the
+     * words and grids of every page until the output is written. With mmap the content of the streams
+     * is outside the heap.
+     */
+    public static long estimate(long fileSize, int pages, boolean mmap)
+    {
+        long parsed = mmap ? fileSize : 4 * fileSize;
+        return parsed + 64 * 1024L * Math.max(pages, 1) + 1024 * 1024;
+    }
+
+    /**
+     * Number of pages read from the page tree, without loading the pages. -1 when the file cannot be parsed.
+     */
+    public static int pageCount(File pdf)
+    {
+        try {
+            PageCountParser parser = new PageCountParser(pdf);
+            return parser.pageCount();
+        }
+        catch (IOException e) {
+            return -1;
+        }
+        catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Estimated cost of a PDF file, from its size and its number of pages.
+     */
+    public static long estimate(File pdf, boolean mmap)
+    {
+        return estimate(pdf.length(), pageCount(pdf), mmap);
+    }
+
+    public synchronized void acquire(long cost) throws InterruptedException
+    {
+        while (_running > 0 && (_throttled || _reserved + cost > _budget || _heapAfterGc > HIGH_WATER * _maxHeap)) {
+            // timed, the throttle and the heap are sampled by another thread
+            wait(SAMPLE_MILLIS);
+        }
+        _reserved += cost;
+        _running++;
+    }
+
+    public synchronized void release(long cost)
+    {
+        _reserved -= cost;
+        _running--;
+        notifyAll();
+    }
+
+    public synchronized long getReserved() { return _reserved; }
+    public synchronized int getRunning() { return _running; }
+    public long getBudget() { return _budget; }
+    public double getGcOverhead() { return _gcOverhead; }
+    public boolean isThrottled() { return _throttled; }
+
+    public void stop()
+    {
+        _sampler.cancel();
+    }
+
+    private void sample()
+    {
+        long now = System.nanoTime();
+        long gc = gcTime();
+        double elapsed = (now - _lastSample) / 1000000.0;
+        if (elapsed > 0) {
+            _gcOverhead = (gc - _lastGcTime) / elapsed;
+        }
+        _lastGcTime = gc;
+        _lastSample = now;
+        _heapAfterGc = heapAfterGc();
+
+        boolean throttled = _throttled;
+        if (throttled == false && _gcOverhead > GC_THROTTLE) {
+            LOG.info("GC overhead " + Math.round(_gcOverhead * 100) + "%, no new documents until it drops");
+            _throttled = true;
+        }
+        else if (throttled && _gcOverhead < GC_RESUME) {
+            _throttled = false;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private static long gcTime()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Heap that survived the last collection of each pool, the live data.
+     */
+    private static long heapAfterGc()
+    {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                // null for the pools without collection usage
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    total += usage.getUsed();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Reads the cross reference table, the catalog and the root of the page tree, nothing else.
+     */
+    private static class PageCountParser extends NonSequentialPDFParser
+    {
+        PageCountParser(File pdf) throws IOException
+        {
+            super(pdf, null);
+        }
+
+        int pageCount() throws IOException
+        {
+            try {
+                initialParse();
+                return getPageNumber();
+            }
+            finally {
+                pdfSource.close();
+                getDocument().close();
+                deleteTempFile();
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Calls and time of each operator of the content streams, for the text pass and the grid pass.
+ *
+ * The engines call enter() before and exit() after each operator. The self time of an operator does not
+ * include the operators it runs itself, so Do (Invoke) is the cost of looking up and preparing the XObject,
+ * and the operators of the form are counted on their own; the total time includes them.
+ * A profile is kept by the watchdog of a document (see ExtractionOptions.newWatchdog) and is used by one
+ * thread at a time, add() merges the profiles of the documents into the profile of the run.
+ */
+public class OperatorProfile
+{
+    public static final int TEXT = 0;
+    public static final int GRID = 1;
+    private static final String[] PASSES = { "text", "grid" };
+
+    // by pass, by operator: calls, self nanos, total nanos
+    private final List<Map<String, long[]>> _operators = new ArrayList<Map<String, long[]>>();
+    // the running operators, innermost last
+    private long[] _starts = new long[16];
+    private long[] _children = new long[16];
+    private int _depth = 0;
+
+    public OperatorProfile()
+    {
+        for (int i = 0; i < PASSES.length; i++) {
+            _operators.add(new HashMap<String, long[]>());
+        }
+    }
+
+    public void enter()
+    {
+        if (_depth == _starts.length) {
+            long[] starts = new long[2 * _depth];
+            long[] children = new long[2 * _depth];
+            System.arraycopy(_starts, 0, starts, 0, _depth);
+            System.arraycopy(_children, 0, children, 0, _depth);
+            _starts = starts;
+            _children = children;
+        }
+        _children[_depth] = 0;
+        _starts[_depth] = System.nanoTime();
+        _depth++;
+    }
+
+    /**
+     * The operator started by the last enter() returned or threw.
+     */
+    public void exit(int pass, String operator)
+    {
+        long elapsed = System.nanoTime() - _starts[--_depth];
+        if (_depth > 0) {
+            _children[_depth - 1] += elapsed;
+        }
+        add(pass, operator, 1, elapsed - _children[_depth], elapsed);
+    }
+
+    private void add(int pass, String operator, long calls, long self, long total)
+    {
+        Map<String, long[]> operators = _operators.get(pass);
+        long[] counters = operators.get(operator);
+        if (counters == null) {
+            counters = new long[3];
+            operators.put(operator, counters);
+        }
+        counters[0] += calls;
+        counters[1] += self;
+        counters[2] += total;
+    }
+
+    /**
+     * Add the counters of another profile, that is not used anymore.
+     */
+    public synchronized void add(OperatorProfile profile)
+    {
+        for (int pass = 0; pass < PASSES.length; pass++) {
+            for (Map.Entry<String, long[]> kv : profile._operators.get(pass).entrySet()) {
+                long[] counters = kv.getValue();
+                add(pass, kv.getKey(), counters[0], counters[1], counters[2]);
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        for (Map<String, long[]> operators : _operators) {
+            if (operators.isEmpty() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The operators with the most self time, one per line: pass, operator, calls, self and total milliseconds.
+     */
+    public synchronized String top(int count)
+    {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int pass = 0; pass < PASSES.length; pass++) {
+            for (Map.Entry<String, long[]> kv : _operators.get(pass).entrySet()) {
+                rows.add(new Object[] { PASSES[pass], kv.getKey(), kv.getValue() });
+            }
+        }
+        Collections.sort(rows, new Comparator<Object[]>() {
+            public int compare(Object[] r1, Object[] r2) {
+                long s1 = ((long[])r1[2])[1];
+                long s2 = ((long[])r2[2])[1];
+                return s1 > s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-5s %-8s %12s %12s %12s", "pass", "operator", "calls", "self ms", "total ms"));
+        for (int i = 0; i < Math.min(count, rows.size()); i++) {
+            long[] counters = (long[])rows.get(i)[2];
+            sb.append('\n').append(String.format(Locale.ROOT, "%-5s %-8s %12d %12.1f %12.1f",
+                rows.get(i)[0], rows.get(i)[1], counters[0], counters[1] / 1e6, counters[2] / 1e6));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.exceptions.WrappedIOException;
+import org.apache.pdfbox.util.PDFOperator;
+import org.apache.pdfbox.util.PDFStreamEngine;
+import org.apache.pdfbox.util.ResourceLoader;
+import org.apache.pdfbox.util.operator.OperatorProcessor;
+
+/**
+ * Immutable table of the operator classes of an operator resource file (operator=class), read and resolved
+ * once per process instead of once per stream engine.
+ *
+ * The OperatorProcessor instances keep their engine as context, so each engine still gets its own
+ * instances: register() only calls the resolved constructors.
+ */
+public class OperatorRegistry
+{
+    private static final Map<String, OperatorRegistry> REGISTRIES = new HashMap<String, OperatorRegistry>();
+
+    private final String _resource;
+    private final Map<String, Constructor<? extends OperatorProcessor>> _constructors;
+
+    private OperatorRegistry(String resource, Map<String, Constructor<? extends OperatorProcessor>> constructors)
+    {
+        _resource = resource;
+        _constructors = Collections.unmodifiableMap(constructors);
+    }
+
+    /**
+     * The registry of the resource file, loaded by the first call.
+     */
+    public static OperatorRegistry get(String resource) throws IOException
+    {
+        synchronized (REGISTRIES) {
+            OperatorRegistry registry = REGISTRIES.get(resource);
+            if (registry == null) {
+                registry = load(resource);
+                REGISTRIES.put(resource, registry);
+            }
+            return registry;
+        }
+    }
+
+    private static OperatorRegistry load(String resource) throws IOException
+    {
+        Properties properties = ResourceLoader.loadProperties(resource, true);
+        if (properties == null) {
+            throw new IOException("Missing operator resource " + resource);
+        }
+        Map<String, Constructor<? extends OperatorProcessor>> constructors = new LinkedHashMap<String, Constructor<? extends OperatorProcessor>>();
+        Enumeration<?> names = properties.propertyNames();
+        while (names.hasMoreElements()) {
+            String operator = names.nextElement().toString();
+            String className = properties.getProperty(operator);
+            Class<? extends OperatorProcessor> klass;
+            try {
+                klass = Class.forName(className.isEmpty() ? Ignore.class.getName() : className).asSubclass(OperatorProcessor.class);
+                constructors.put(operator, klass.getConstructor());
+            }
+            catch (Exception e) {
+                throw new WrappedIOException("OperatorProcessor class " + className + " could not be resolved", e);
+            }
+        }
+        return new OperatorRegistry(resource, constructors);
+    }
+
+    /**
+     * Register new instances of the operators with the engine.
+     */
+    public void register(PDFStreamEngine engine) throws IOException
+    {
+        for (Map.Entry<String, Constructor<? extends OperatorProcessor>> kv : _constructors.entrySet()) {
+            try {
+                engine.registerOperatorProcessor(kv.getKey(), kv.getValue().newInstance());
+            }
+            catch (Exception e) {
+                throw new WrappedIOException("Operator " + kv.getKey() + " of " + _resource + " could not be instantiated", e);
+            }
+        }
+    }
+
+    public int size()
+    {
+        return _constructors.size();
+    }
+
+    /**
+     * Operator disabled with an empty class name.
+     */
+    public static class Ignore extends OperatorProcessor
+    {
+        @Override
+        public void process(PDFOperator operator, List<COSBase> arguments)
+        {
+        }
+    }
+}
@@ -2,13 +2,15 @@ package com.pauldeschacht.pdf2txtpos;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -17,19 +19,27 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
 
 public class PDF2TxtPos {
 
     private static final Log LOG = LogFactory.getLog(PDF2TxtPos.class);
     
-    protected static int startPage = -1;
-    protected static int endPage = -1;
-    protected static float lineMargin = 1.5f; //should be based on the height of the font
+    // file name of stdin and stdout
+    public static final String STDIO = "-";
+    
+    private static Extractor extractor = null;
     
     private PDF2TxtPos() {
     };
 
+    private static double heapFraction(CommandLine cmd) {
+        String tmp = cmd.getOptionValue("heap-fraction");
+        if (tmp == null) {
+            return 0.6;
+        }
+        return Math.min(1.0, Math.max(0.05, Double.parseDouble(tmp)));
+    }
+
     public static void usage(Options options) {
         System.out.println("pdf2txtpos extracts the textual information from a PDF file.");
         System.out.println();
@@ -49,224 +59,521 @@ public class PDF2TxtPos {
         System.out.println("8.  y1");
         System.out.println("9.  y2");
         System.out.println("10. word");
+        System.out.println("11. region name (only with a template)");
     }
     
     public static void main(String[] args) throws Exception {
         
         Options options = new Options();
-        options.addOption("f", "file",      true, "PDF file");
-        options.addOption("d", "directory", true, "directory with PDF files");
+        options.addOption("f", "file",      true, "PDF file, - reads the PDF from stdin");
+        options.addOption("o", "output",    true, "output file name without extension (file), - streams the .info records, or the .csv rows with -v, to stdout; output .zip or directory (archive)");
+        options.addOption("d", "directory", true, "directory with PDF files, or a .zip, .tar, .tar.gz or .tgz archive of PDF files");
         options.addOption("s", "start",     true, "start page (first page is 1)");
         options.addOption("e", "end",       true, "end page");
         options.addOption("h", "height",    true, "height of a line (only needed for fine tuning");
         options.addOption("b", "bottom",    true, "delta bottom line (only needed for fine tuning");
         options.addOption("v", "vlines",    false, "use vertical lines to create the csv file ");
         options.addOption("c", "sep",       true, "separator for the csv lines (only with vlines) ");
+        options.addOption("x", "engine",    true, "text engine: stripper (default) or lean");
+        options.addOption("k", "check",     false, "cross-check the lean engine against the stripper");
+        options.addOption("t", "template",  true, "file with the named regions to extract (name;pages;x1;y1;x2;y2)");
+        options.addOption("i", "index",     false, "write a spatial index of the words (.idx file)");
+        options.addOption(null, "server",   true, "run as extraction server on the given port");
+        options.addOption(null, "bind",     true, "address the server listens on (server, default 127.0.0.1, 0.0.0.0 is every interface)");
+        options.addOption(null, "root",     true, "directory of the files the server extracts with ?path= (server, default none: ?path= is refused)");
+        options.addOption(null, "max-body", true, "maximum size in MB of a PDF posted to the server (server, default 256)");
+        options.addOption(null, "threads",  true, "number of documents extracted at the same time (server, archive)");
+        options.addOption(null, "queue",    true, "number of requests waiting for an extractor before requests are rejected (server)");
+        options.addOption(null, "watch",    true, "watch the directory and process new or modified PDF files");
+        options.addOption(null, "debounce", true, "milliseconds without change before a new file is processed (watch, default 2000)");
+        options.addOption(null, "manifest", true, "file with the processed files (watch, default <dir>/" + FolderWatcher.MANIFEST_NAME + ")");
+        options.addOption(null, "stages",   true, "threads of the load,extract,grid,write stages (directory, default 1,<cpus>,<cpus/2>,1)");
+        options.addOption(null, "prefetch", true, "documents waiting in front of each stage (directory, default 2)");
+        options.addOption(null, "claims",   true, "directory shared by the processes of a batch, each file is processed by one of them (directory)");
+        options.addOption(null, "claim-timeout", true, "seconds without heartbeat before the files of a worker are taken over (claims, default 60)");
+        options.addOption(null, "split",    true, "write the jobs of this number of page ranges of the file into <file>.split/ (file)");
+        options.addOption(null, "job",      true, "extract the page range of a job written by --split");
+        options.addOption(null, "merge",    true, "merge the page ranges of a <file>.split/ directory into the output of the file");
+        options.addOption(null, "no-prescan", false, "run the text engine and the grid drawer on every page, also on the pages without text or rulings");
+        options.addOption(null, "mmap",     false, "memory-map the PDF files and keep their streams in a memory-mapped scratch file instead of the heap");
+        options.addOption(null, "heap-fraction", true, "part of the heap the documents in memory may use (directory and server, default 0.6)");
+        options.addOption(null, "journal",  true, "journal of the completed documents (directory, default <dir>/" + BatchJournal.JOURNAL_NAME + " with resume, none without)");
+        options.addOption(null, "resume",   false, "skip the documents that the journal records as complete (directory)");
+        options.addOption(null, "doc-timeout", true, "seconds before a document is aborted (default unlimited)");
+        options.addOption(null, "page-timeout", true, "seconds before a page is skipped (default unlimited)");
+        options.addOption(null, "max-operators", true, "operators before a page is skipped (default unlimited)");
+        options.addOption(null, "quarantine", true, "file with the PDF files that exceeded their budget or crashed, they are skipped");
+        options.addOption(null, "precision", true, "number of decimals of the font size, space width and coordinates (default: shortest representation)");
+        options.addOption(null, "slow-page", true, "milliseconds of the passes over a page before it is slow (default 1000, 0 is no limit)");
+        options.addOption(null, "slow-page-mb", true, "MB allocated by the passes over a page before it is slow (default no limit)");
+        options.addOption(null, "capture",  true, "directory where the slow pages are written as PDF files with a .json of their timings");
+        options.addOption(null, "progress", true, "seconds between two progress reports on stderr (directory and archive)");
+        options.addOption(null, "status",   true, "file rewritten with each progress report instead of stderr (directory and archive, default every 10 seconds)");
+        options.addOption(null, "grid-cache", true, "number of ruling layouts whose grids are kept for the next pages and documents (default 256, 0 is none)");
+        options.addOption(null, "profile-operators", false, "count and time the operators of the content streams, the top operators are logged at the end");
+        options.addOption(null, "cache",    true, "directory of the page cache, identical pages are extracted once");
+        options.addOption(null, "cache-size", true, "maximum size of the page cache in MB (default 1024)");
 
         CommandLineParser parser = new BasicParser();
         CommandLine cmd = parser.parse( options, args);
         
-        String tmp = cmd.getOptionValue("h");
-        if (tmp != null) {
-            lineMargin = Float.parseFloat(tmp);
+        ExtractionOptions extraction;
+        try {
+            extraction = extractionOptions(cmd);
         }
-        tmp = cmd.getOptionValue("s");
-        if (tmp != null) {
-            startPage = Integer.parseInt(tmp);
+        catch (IllegalArgumentException e) {
+            LOG.error(e.getMessage());
+            usage(options);
+            return;
         }
-        tmp = cmd.getOptionValue("e");
+        String tmp;
+        tmp = cmd.getOptionValue("server");
         if (tmp != null) {
-            endPage = Integer.parseInt(tmp);
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (cmd.getOptionValue("threads") != null) {
+                threads = Integer.parseInt(cmd.getOptionValue("threads"));
+            }
+            int queue = 2 * threads;
+            if (cmd.getOptionValue("queue") != null) {
+                queue = Integer.parseInt(cmd.getOptionValue("queue"));
+            }
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(tmp));
+            if (cmd.getOptionValue("bind") != null) {
+                address = new InetSocketAddress(InetAddress.getByName(cmd.getOptionValue("bind")), Integer.parseInt(tmp));
+            }
+            ExtractionServer server = new ExtractionServer(address, threads, queue, extraction);
+            server.setGovernor(new MemoryGovernor(heapFraction(cmd)));
+            if (cmd.getOptionValue("root") != null) {
+                server.setRoot(Paths.get(cmd.getOptionValue("root")));
+            }
+            if (cmd.getOptionValue("max-body") != null) {
+                server.setMaxBody(Long.parseLong(cmd.getOptionValue("max-body")) * 1024 * 1024);
+            }
+            server.start();
+            return;
         }
-        tmp = cmd.getOptionValue("b");
+        
+        tmp = cmd.getOptionValue("watch");
         if (tmp != null) {
-            float delta = Float.parseFloat(tmp);
-            WordPositionComparator.DELTA=delta;
-        }
-        else {
-            WordPositionComparator.DELTA=0.00001f;
+            long debounce = 2000;
+            if (cmd.getOptionValue("debounce") != null) {
+                debounce = Long.parseLong(cmd.getOptionValue("debounce"));
+            }
+            Path manifest = null;
+            if (cmd.getOptionValue("manifest") != null) {
+                manifest = Paths.get(cmd.getOptionValue("manifest"));
+            }
+            new FolderWatcher(Paths.get(tmp), manifest, debounce, extraction).run();
+            return;
         }
         
-        boolean bVerticalLines = false;
-        String separator = ";";
-        if (cmd.hasOption("v")) {
-            bVerticalLines = true;
-            tmp = cmd.getOptionValue("c");
-            if (tmp != null) {
-                separator = tmp;
+        tmp = cmd.getOptionValue("job");
+        if (tmp != null) {
+            SplitJob job = SplitJob.read(new File(tmp));
+            if (parseFile(job.pdf.getAbsolutePath(), job.output, extraction.toBuilder().pages(job.start, job.end).build())) {
+                job.done();
             }
-            
+            return;
         }
         
+        tmp = cmd.getOptionValue("merge");
+        if (tmp != null) {
+            SplitJob.merge(new File(tmp));
+            LOG.info("Merged " + tmp);
+            return;
+        }
+        
+        // counters of the run, for the summary
+        ExtractionStats stats = new ExtractionStats();
+        // documents that could not be extracted, the exit status is 1
+        boolean failed = false;
         String filename = cmd.getOptionValue("f");
+        if (filename != null && cmd.getOptionValue("split") != null) {
+            for (File job : SplitJob.plan(new File(filename), Integer.parseInt(cmd.getOptionValue("split")))) {
+                // one line per job for xargs or a scheduler
+                System.out.println(job.getPath());
+            }
+            return;
+        }
+        if (filename != null && (STDIO.equals(filename) || cmd.getOptionValue("o") != null)) {
+            String output = cmd.getOptionValue("o") != null ? cmd.getOptionValue("o") : STDIO;
+            String pdfFile = STDIO.equals(filename) ? filename : new File(filename).getAbsolutePath();
+            if (parseFile(pdfFile, output, extraction) == false) {
+                // for the scripts that pipe the output
+                System.exit(1);
+            }
+            return;
+        }
         if (filename != null) {
             File file = new File(filename);
             if (file.isFile() && file.getName().endsWith(".pdf")) {
-                parseFile(file.getAbsolutePath(), bVerticalLines, separator);
+                parseFile(file.getAbsolutePath(), extraction);
             }
         }
         else {
             String dir = cmd.getOptionValue("d");
-            if (dir != null) {
+            if (dir != null && new File(dir).isFile() && ArchiveBatch.isArchive(dir)) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                if (cmd.getOptionValue("threads") != null) {
+                    threads = Math.max(1, Integer.parseInt(cmd.getOptionValue("threads")));
+                }
+                File archive = new File(dir);
+                File output = ArchiveBatch.defaultOutput(archive);
+                if (cmd.getOptionValue("o") != null) {
+                    output = new File(cmd.getOptionValue("o"));
+                }
+                MemoryGovernor governor = new MemoryGovernor(heapFraction(cmd));
+                ProgressReporter progress = progress(cmd);
+                if (progress != null) {
+                    extraction = extraction.toBuilder().progress(progress).build();
+                    progress.start();
+                }
+                ArchiveBatch batch = new ArchiveBatch(archive, output, threads, extraction);
+                batch.setGovernor(governor);
+                try {
+                    batch.run();
+                }
+                finally {
+                    governor.stop();
+                    if (progress != null) {
+                        progress.stop();
+                    }
+                }
+                stats.add(batch.getStats());
+                if (batch.getFailed() > 0) {
+                    failed = true;
+                }
+            }
+            else if (dir != null) {
                 //process all PDF in the folder
+                List<File> pdfs = new ArrayList<File>();
                 File[] files = new File(dir).listFiles();
                 for (File file : files) {
                     if (file.isFile() && file.getName().endsWith(".pdf")) {
-                        parseFile(file.getAbsolutePath(), bVerticalLines, separator);
+                        pdfs.add(file.getAbsoluteFile());
+                    }
+                }
+                int cpus = Runtime.getRuntime().availableProcessors();
+                int[] stages = { 1, cpus, Math.max(1, cpus / 2), 1 };
+                tmp = cmd.getOptionValue("stages");
+                if (tmp != null) {
+                    String[] counts = tmp.split(",");
+                    if (counts.length != 4) {
+                        usage(options);
+                        return;
+                    }
+                    for (int i = 0; i < 4; i++) {
+                        stages[i] = Math.max(1, Integer.parseInt(counts[i].trim()));
+                    }
+                }
+                int prefetch = 2;
+                if (cmd.getOptionValue("prefetch") != null) {
+                    prefetch = Math.max(1, Integer.parseInt(cmd.getOptionValue("prefetch")));
+                }
+                Path journalFile = Paths.get(dir, BatchJournal.JOURNAL_NAME);
+                if (cmd.getOptionValue("journal") != null) {
+                    journalFile = Paths.get(cmd.getOptionValue("journal"));
+                }
+                // the journal syncs every document, only keep one when it is asked for
+                BatchJournal journal = null;
+                if (cmd.hasOption("resume") || cmd.getOptionValue("journal") != null) {
+                    journal = new BatchJournal(journalFile);
+                }
+                MemoryGovernor governor = new MemoryGovernor(heapFraction(cmd));
+                ProgressReporter progress = progress(cmd);
+                if (progress != null) {
+                    extraction = extraction.toBuilder().progress(progress).build();
+                    progress.start(pdfs);
+                }
+                ExtractionPipeline pipeline = new ExtractionPipeline(stages, prefetch, extraction);
+                if (journal != null) {
+                    pipeline.setJournal(journal, cmd.hasOption("resume"));
+                }
+                pipeline.setGovernor(governor);
+                WorkClaims claims = null;
+                if (cmd.getOptionValue("claims") != null) {
+                    long timeout = 60;
+                    if (cmd.getOptionValue("claim-timeout") != null) {
+                        timeout = Long.parseLong(cmd.getOptionValue("claim-timeout"));
+                    }
+                    claims = new WorkClaims(Paths.get(cmd.getOptionValue("claims")), timeout * 1000);
+                    pipeline.setClaims(claims);
+                }
+                try {
+                    pipeline.run(pdfs);
+                }
+                finally {
+                    if (claims != null) {
+                        claims.close();
+                    }
+                    governor.stop();
+                    if (journal != null) {
+                        journal.close();
+                    }
+                    if (progress != null) {
+                        progress.stop();
                     }
                 }
+                stats.add(pipeline.getStats());
+                if (pipeline.getResumed() > 0) {
+                    LOG.info(pipeline.getResumed() + " documents already complete in " + journalFile);
+                }
             }
             else {
                 usage(options);
             }
         }
+        if (extractor != null) {
+            stats.add(extractor.getStats());
+        }
+        LOG.info("Pages: " + stats.getPagesScanned() + " scanned, " + stats.getPagesWithoutText() + " skipped without text, " +
+                 stats.getGridsWithoutRulings() + " grid passes skipped without rulings");
+        if (stats.getPagesOverBudget() > 0) {
+            LOG.warn(stats.getPagesOverBudget() + " pages skipped over budget");
+        }
+        if (stats.getPagesCaptured() > 0) {
+            LOG.info(stats.getPagesCaptured() + " slow pages captured into " + extraction.getCaptureDir());
+        }
+        GridCache gridCache = extraction.getGridCache();
+        if (gridCache != null) {
+            LOG.info("Grid cache: " + gridCache.getHits() + " hits, " + gridCache.getMisses() + " misses");
+        }
+        if (stats.getOperators().isEmpty() == false) {
+            LOG.info("Top operators:\n" + stats.getOperators().top(15));
+        }
+        if (extraction.isCrossCheck()) {
+            LOG.info("Cross-check found " + stats.getCrossCheckDifferences() + " differences between the engines");
+        }
+        PageCache pageCache = extraction.getPageCache();
+        if (pageCache != null) {
+            LOG.info("Page cache: " + pageCache.getHits() + " hits, " + pageCache.getMisses() + " misses, " +
+                     pageCache.getEvictions() + " evictions");
+        }
+        if (failed) {
+            // for the scripts that process the output
+            System.exit(1);
+        }
     }
 
-    protected static void parseFile(String pdfFile, boolean bVerticalLines, String sep) throws Exception {
-        
-        String baseFilename = pdfFile.substring(0, pdfFile.lastIndexOf('.'));
-        String txtposFilename = baseFilename + ".info";
-        File txtposFile = new File(txtposFilename);
-        if (!txtposFile.exists()) {
-            txtposFile.createNewFile();
-        }
-        FileWriter txtposFW = new FileWriter(txtposFile.getAbsoluteFile());
-        BufferedWriter txtposWriter = new BufferedWriter(txtposFW);
-        
-        BufferedWriter gridWriter = null;
-        if (bVerticalLines == true) {
-            String gridFilename = baseFilename + ".csv";
-            File gridFile = new File(gridFilename);
-            if (!gridFile.exists()) {
-                gridFile.createNewFile();
+    /**
+     * The progress reporter of --progress and --status, null without them.
+     */
+    private static ProgressReporter progress(CommandLine cmd) {
+        if (cmd.getOptionValue("progress") == null && cmd.getOptionValue("status") == null) {
+            return null;
+        }
+        long seconds = 10;
+        if (cmd.getOptionValue("progress") != null) {
+            seconds = Math.max(1, Long.parseLong(cmd.getOptionValue("progress")));
+        }
+        Path status = cmd.getOptionValue("status") != null ? Paths.get(cmd.getOptionValue("status")) : null;
+        return new ProgressReporter(seconds * 1000, status);
+    }
+
+    /**
+     * The extraction settings of the command line.
+     * @throws IllegalArgumentException for an unknown engine or a precision out of range
+     */
+    protected static ExtractionOptions extractionOptions(CommandLine cmd) throws IOException {
+        ExtractionOptions.Builder builder = ExtractionOptions.builder();
+        String tmp = cmd.getOptionValue("h");
+        if (tmp != null) {
+            builder.lineMargin(Float.parseFloat(tmp));
+        }
+        int startPage = -1;
+        int endPage = -1;
+        tmp = cmd.getOptionValue("s");
+        if (tmp != null) {
+            startPage = Integer.parseInt(tmp);
+        }
+        tmp = cmd.getOptionValue("e");
+        if (tmp != null) {
+            endPage = Integer.parseInt(tmp);
+        }
+        builder.pages(startPage, endPage);
+        tmp = cmd.getOptionValue("b");
+        if (tmp != null) {
+            builder.delta(Float.parseFloat(tmp));
+        }
+        tmp = cmd.getOptionValue("x");
+        if (tmp != null) {
+            builder.engine(tmp);
+        }
+        long documentTimeout = 0;
+        long pageTimeout = 0;
+        long maxOperators = 0;
+        if (cmd.getOptionValue("doc-timeout") != null) {
+            documentTimeout = Long.parseLong(cmd.getOptionValue("doc-timeout"));
+        }
+        if (cmd.getOptionValue("page-timeout") != null) {
+            pageTimeout = Long.parseLong(cmd.getOptionValue("page-timeout"));
+        }
+        if (cmd.getOptionValue("max-operators") != null) {
+            maxOperators = Long.parseLong(cmd.getOptionValue("max-operators"));
+        }
+        builder.budget(documentTimeout, pageTimeout, maxOperators);
+        tmp = cmd.getOptionValue("precision");
+        if (tmp != null) {
+            int precision = Integer.parseInt(tmp);
+            if (precision < 0) {
+                throw new IllegalArgumentException("Precision " + precision + " is negative");
+            }
+            builder.precision(precision);
+        }
+        long slowPageMillis = 1000;
+        long slowPageBytes = 0;
+        if (cmd.getOptionValue("slow-page") != null) {
+            slowPageMillis = Long.parseLong(cmd.getOptionValue("slow-page"));
+        }
+        if (cmd.getOptionValue("slow-page-mb") != null) {
+            slowPageBytes = Long.parseLong(cmd.getOptionValue("slow-page-mb")) * 1024 * 1024;
+        }
+        builder.slowPage(slowPageMillis, slowPageBytes);
+        if (cmd.getOptionValue("capture") != null) {
+            builder.capture(new File(cmd.getOptionValue("capture")));
+        }
+        builder.mmap(cmd.hasOption("mmap"));
+        builder.prescan(cmd.hasOption("no-prescan") == false);
+        builder.profileOperators(cmd.hasOption("profile-operators"));
+        if (cmd.getOptionValue("quarantine") != null) {
+            builder.quarantine(new Quarantine(Paths.get(cmd.getOptionValue("quarantine"))));
+        }
+        builder.crossCheck(cmd.hasOption("k"));
+        builder.index(cmd.hasOption("i"));
+        tmp = cmd.getOptionValue("t");
+        if (tmp != null) {
+            builder.template(RegionTemplate.load(tmp));
+        }
+        tmp = cmd.getOptionValue("cache");
+        if (tmp != null) {
+            long cacheSize = 1024;
+            if (cmd.getOptionValue("cache-size") != null) {
+                cacheSize = Long.parseLong(cmd.getOptionValue("cache-size"));
             }
-            FileWriter gridFW = new FileWriter(gridFile.getAbsoluteFile());
-            gridWriter = new BufferedWriter(gridFW);
+            builder.pageCache(new PageCache(new File(tmp), cacheSize * 1024 * 1024));
         }
+        if (cmd.hasOption("v")) {
+            builder.verticalLines(true);
+            int gridCacheSize = 256;
+            if (cmd.getOptionValue("grid-cache") != null) {
+                gridCacheSize = Integer.parseInt(cmd.getOptionValue("grid-cache"));
+            }
+            if (gridCacheSize > 0) {
+                builder.gridCache(new GridCache(gridCacheSize));
+            }
+            tmp = cmd.getOptionValue("c");
+            if (tmp != null) {
+                builder.separator(tmp);
+            }
+        }
+        return builder.build();
+    }
+
+    protected static void parseFile(String pdfFile, ExtractionOptions options) throws Exception {
+        parseFile(pdfFile, pdfFile.substring(0, pdfFile.lastIndexOf('.')), options);
+    }
+
+    /**
+     * Extract the PDF into baseFilename.info (and .csv, .idx).
+     * A pdfFile "-" is read from stdin. A baseFilename "-" streams the .info records to stdout, or the
+     * .csv rows with vertical lines, page after page.
+     * @return true when the output files are complete
+     */
+    protected static boolean parseFile(String pdfFile, String baseFilename, ExtractionOptions options) throws Exception {
         
+        Path path = STDIO.equals(pdfFile) ? null : Paths.get(pdfFile);
+        if (path != null && options.getQuarantine() != null && options.getQuarantine().contains(path)) {
+            LOG.warn("Skipped quarantined file " + pdfFile);
+            return false;
+        }
+        Writer txtposWriter = null;
+        Writer gridWriter = null;
+        List<WordIndex> indexes = null;
+        if (STDIO.equals(baseFilename)) {
+            Writer stdout = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+            if (options.isVerticalLines()) {
+                // only the rows of the grids
+                gridWriter = stdout;
+            }
+            else {
+                txtposWriter = stdout;
+            }
+        }
+        else {
+            txtposWriter = new AsyncFileWriter(new File(baseFilename + ".info"));
+            if (options.isVerticalLines() == true) {
+                gridWriter = new AsyncFileWriter(new File(baseFilename + ".csv"));
+            }
+            indexes = options.isIndex() ? new ArrayList<WordIndex>() : null;
+        }
         
-
-        LOG.info("Processing file " + pdfFile);
+        LOG.info("Processing file " + (path != null ? pdfFile : "from stdin"));
         
         PDDocument document = null;
+        boolean complete = false;
         try {
-            // extract the grid lines from the pdf
-            document = PDDocument.load(pdfFile);
-
-            // process page by page
-            List pages = document.getDocumentCatalog().getAllPages();
-            
-            startPage = Math.max(startPage,1);
-            if(endPage==-1) {
-                endPage = pages.size();
+            // the parser reads stdin sequentially, no temporary copy of the file
+            document = path != null ? Extractor.load(new File(pdfFile), options.isMmap()) : Extractor.load(System.in, options.isMmap());
+            if (extractor == null || extractor.getOptions() != options) {
+                extractor = new Extractor(options);
             }
-            endPage = Math.min(endPage,pages.size());
-                
-            for (int pageNb = startPage; pageNb <= endPage; pageNb++) {
-                // extract the words and their positions from the page
-                PDFWordPositionStripper wordPositionStripper = new PDFWordPositionStripper();
-                wordPositionStripper.setStartPage(pageNb);
-                wordPositionStripper.setEndPage(pageNb);
-                wordPositionStripper.getText(document);
-                List<WordPosition> words = wordPositionStripper.getWordPositions();
-                //sort on bottom line of each bounding box 
-                //and assign a line number based on that bottom line
-                Collections.sort(words, new WordPositionComparator());
-                if (words.size() == 0) {
-                  continue;
-                }
-                float lineY = words.get(0).y1();
-                int lineNb = 0;
-                for (WordPosition word : words) {
-                    float y = word.y1();
-                    if (Math.abs(lineY - y) > lineMargin) {
-                        lineNb++;
-                        lineY = y;
-                    }
-                    //to gradually slide the line position: lineY = y;
-                    word.setLineNb(lineNb);
-                }
-                //sort the words according line number
-                Collections.sort(words, new WordPositionLineComparator());
-                // build a map so that all the word in a single line can be accessed.
-                // csv file: page, line, x1,y1,x2,y2, word
-                Map<Integer, List<WordPosition>> lines = new HashMap<Integer, List<WordPosition>>();
-                for (WordPosition word : words) {
-                    Integer line = word.getLineNb();
-                    if (lines.containsKey(line) == true) {
-                        lines.get(line).add(word);
-                    } else {
-                        lines.put(line, new ArrayList<WordPosition>());
-                        lines.get(line).add(word);
-                    }
-                }
-                //Sometimes a space is used as thousand separator. 
-                //Collapse the 2 words together in a single word
-                for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
-                    List<WordPosition> line = kv.getValue();
-                    
-                    int i=0;
-                    while(i<line.size()-1) {
-                        WordPosition w1 = line.get(i);
-                        WordPosition w2 = line.get(i+1);
-                        if(w1.isNumber() && w2.isNumber() && (w1.x2() + (1.5f * w1.getSpaceWidth()) > w2.x1())) {
-                            //if both words are numbers and the space between the words is small (bit more than space width) --> merge the 2 words
-                            w1.merge(w2);
-                            line.remove(i+1);
-                        }
-                        else {
-                            i++;
-                        }
-                    }
-                }
-                final String infoSep=";";
-                for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
-                    List<WordPosition> line = kv.getValue();
-                    
-                    for (WordPosition word : line) {
-                        txtposWriter.write(Integer.toString(pageNb) + infoSep);
-                        txtposWriter.write(Integer.toString(word.getLineNb()) + infoSep);
-                        txtposWriter.write(word.toString(infoSep));
-                        txtposWriter.write("\n");
-                    }
-                }
-                txtposWriter.flush();
-                
-                
-                if (bVerticalLines == true) {
-                    // GRID approach
-                    //String baseFilename = pdfFile.substring(0, pdfFile.lastIndexOf('.'));
-                    PageGridDrawer gridDrawer = new PageGridDrawer();
-                    PDPage page = (PDPage)pages.get(pageNb-1);
-                    gridDrawer.drawPage(page);
-
-                    List<WordPosition> ll = new ArrayList<WordPosition>();
-                    for(Map.Entry<Integer,List<WordPosition>> kv: lines.entrySet()) {
-                        List<WordPosition> line = kv.getValue();
-                        for(WordPosition wp: line) {
-                            ll.add(wp);
-                        }
-                    }
-                    List<Grid> grids = gridDrawer.getGrids();
-                    for(Grid g : grids) {
-                        String[][] csv = g.csv(ll,bVerticalLines);
-                        for (String[] row : csv) {
-                            for (String s : row) {
-                                gridWriter.write(s + sep);
-                            }
-                            gridWriter.write("\n");   
-                        }
-                    }
-                    gridWriter.flush();
-                }
+            extractor.extract(document, path != null ? pdfFile : null, new WriterSink(txtposWriter, gridWriter, indexes, STDIO.equals(baseFilename)));
+            if (indexes != null) {
+                WordIndex.writeAll(new File(baseFilename + ".idx"), indexes);
             }
+            complete = true;
+        }
+        catch (BudgetExceededException e) {
+            failed(path, e, options);
         }
         catch (IOException e) {
             LOG.error(e);
+        }
+        catch (RuntimeException e) {
+            failed(path, e, options);
+        }
+        catch (StackOverflowError e) {
+            failed(path, e, options);
         } finally {
             if (document != null) {
                 document.close();
             }
-        }                
+            // the output files are renamed in place only when the document is complete
+            if (txtposWriter != null) {
+                finish(txtposWriter, complete);
+            }
+            if (gridWriter != null) {
+                finish(gridWriter, complete);
+            }
+        }
+        return complete;
     } 
+
+    /**
+     * Rename the output file in place, or remove it. What is already on stdout stays there.
+     */
+    private static void finish(Writer writer, boolean complete) throws IOException {
+        if (writer instanceof AsyncFileWriter) {
+            if (complete) {
+                writer.close();
+            }
+            else {
+                ((AsyncFileWriter)writer).abort();
+            }
+        }
+        else {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Log a document that could not be processed. Documents that exceeded their budget or crashed
+     * the extraction are added to the quarantine.
+     */
+    private static void failed(Path pdf, Throwable error, ExtractionOptions options) {
+        LOG.error("Failed to process " + (pdf != null ? pdf : "stdin"), error);
+        if (options.getQuarantine() != null && pdf != null) {
+            options.getQuarantine().failed(pdf, error);
+        }
+    }
 }
@@ -16,23 +16,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Vector;
 
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.util.PDFTextStripper;
+import org.apache.pdfbox.util.PDFOperator;
 import org.apache.pdfbox.util.PositionWrapper;
 import org.apache.pdfbox.util.TextPosition;
 import org.apache.pdfbox.util.TextNormalize;
 import org.apache.pdfbox.util.TextPositionComparator;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSStream;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDStream;
-import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 
 public class PDFWordPositionStripper extends PDFTextStripper
 {
     List<WordPosition> _wordPositions;
+    private int _glyphs = 0;
 
    /**
      * The normalizer is used to remove text ligatures/presentation forms
@@ -40,6 +41,8 @@ public class PDFWordPositionStripper extends PDFTextStripper
      */
     private TextNormalize normalize = null;
     private Map<PDFont,Map<Float,Float>> _fontMap;
+    private List<Region> _regions = null;
+    protected Watchdog _watchdog = null;
 
     public PDFWordPositionStripper() throws IOException
     {
@@ -65,7 +68,93 @@ public class PDFWordPositionStripper extends PDFTextStripper
     {
 	return _wordPositions;
     }
+
+    /**
+     * Number of glyphs of the last call of getText, after the regions.
+     */
+    public int getGlyphCount()
+    {
+	return _glyphs;
+    }
+
+    /**
+     * The stripper can be reused, the words of the previous call of getText are discarded.
+     */
+    public void resetEngine()
+    {
+        super.resetEngine();
+        _wordPositions = new ArrayList<WordPosition>();
+        _glyphs = 0;
+    }
     
+    /**
+     * Restrict the extraction to the given regions. Glyphs outside all the regions are dropped
+     * before they are added to a line. null extracts the whole page.
+     */
+    public void setRegions(List<Region> regions)
+    {
+        _regions = regions;
+    }
+
+    /**
+     * Budget of the current page, null is unlimited.
+     */
+    public void setWatchdog(Watchdog watchdog)
+    {
+        _watchdog = watchdog;
+    }
+
+    @Override
+    protected void processOperator(PDFOperator operator, List<COSBase> arguments) throws IOException
+    {
+        OperatorProfile profile = null;
+        if (_watchdog != null) {
+            _watchdog.checkOperator();
+            profile = _watchdog.getProfile();
+        }
+        if (profile == null) {
+            super.processOperator(operator, arguments);
+        }
+        else {
+            profile.enter();
+            try {
+                super.processOperator(operator, arguments);
+            }
+            finally {
+                profile.exit(OperatorProfile.TEXT, operator.getOperation());
+            }
+        }
+        if (_watchdog != null) {
+            // PDFStreamEngine logs and swallows the exceptions of an operator, also of a Do whose form ran out of budget
+            _watchdog.checkExceeded();
+        }
+    }
+
+    @Override
+    public void processSubStream(PDPage aPage, PDResources resources, COSStream cosStream) throws IOException
+    {
+        if (_watchdog != null && _watchdog.enterStream(cosStream) == false) {
+            return;
+        }
+        try {
+            super.processSubStream(aPage, resources, cosStream);
+        }
+        finally {
+            if (_watchdog != null) {
+                _watchdog.exitStream(cosStream);
+            }
+        }
+    }
+
+    protected void processTextPosition(TextPosition text)
+    {
+        if (_regions != null && RegionTemplate.accept(_regions, text) == false) {
+            return;
+        }
+        _glyphs++;
+        super.processTextPosition(text);
+    }
+
     public void processSinglePage(PDPage page) throws IOException
     {
 	PDStream contentStream = page.getContents();
@@ -587,6 +676,13 @@ public class PDFWordPositionStripper extends PDFTextStripper
 
     }
     
+    /**
+     * The cached space widths refer to the fonts of the current document.
+     */
+    public void clearFontCache() {
+        _fontMap.clear();
+    }
+
     private float getSpaceWidthForFont(PDFont font, float fontSize) {
         
         if (_fontMap.containsKey(font)) {
@@ -595,54 +691,11 @@ public class PDFWordPositionStripper extends PDFTextStripper
             }
         }
         
-        float width = 0f;
-        try {
-            PDDocument doc = new PDDocument();
-            PDPage page = new PDPage();
-
-            doc.addPage(page);
-           // font = PDType1Font.HELVETICA_BOLD;
-
-            PDPageContentStream content = new PDPageContentStream(doc, page);
-            content.beginText();
-            content.setFont(font, fontSize);
-            content.moveTextPositionByAmount(0, 0);
-            content.drawString(" ");
-
-            content.endText();
-            content.close();
-            /*
-                PDFWordPositionStripper wordPositionStripper = new PDFWordPositionStripper();
-                wordPositionStripper.setStartPage(1);
-                wordPositionStripper.setEndPage(1);
-                wordPositionStripper.getText(doc);
-                List<WordPosition> words = wordPositionStripper.getWordPositions();
-            */
-            
-            SpaceWidthStripper stripper = new SpaceWidthStripper();
-            stripper.setStartPage(1);
-            stripper.setEndPage(1);
-            stripper.getText(doc);
-            Vector<List<TextPosition>> chars = stripper.charactersByArticle();
-            if(chars.size()>0) {
-                if (chars.get(0).size()>0) {
-                    TextPosition pos = chars.get(0).get(0);
-                    if (pos.getCharacter().equals(" ")) {
-                        width = pos.getWidth();
-                        if (_fontMap.containsKey(font)==false) {
-                            _fontMap.put(font, new HashMap<Float,Float>());
-                        }
-                        _fontMap.get(font).put(fontSize,width);
-                    }
-                }
-            }
-                  
-            //doc.save("PDFWithText.pdf");
-            doc.close();
-        } catch (Exception e) {
-            System.out.println(e);
+        float width = SpaceWidthStripper.measure(font, fontSize);
+        if (_fontMap.containsKey(font)==false) {
+            _fontMap.put(font, new HashMap<Float,Float>());
         }
-        
+        _fontMap.get(font).put(fontSize,width);
         return width;
     }
 }
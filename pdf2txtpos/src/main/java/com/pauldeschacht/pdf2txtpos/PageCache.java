@@ -0,0 +1,380 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+/**
+ * Disk cache of the finished output of a page, keyed by a digest of the page content, its resources and
+ * the extraction options. Pages that are byte-identical between documents (terms and conditions, boilerplate)
+ * are extracted once.
+ *
+ * An entry holds the .info lines of the page without the page number, the .csv rows and the index of the words.
+ * Every entry is a file in the cache directory. The total size is capped, the least recently used entries
+ * are removed first. The modification time of a file is its last use, so the order survives a restart.
+ */
+public class PageCache
+{
+    private static final Log LOG = LogFactory.getLog(PageCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x50325043; // P2PC
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".page";
+
+    public static class Entry
+    {
+        // .info lines without the page number
+        public final String info;
+        public final String grid;
+        public final WordIndex index;
+
+        public Entry(String info, String grid, WordIndex index)
+        {
+            this.info = info;
+            this.grid = grid;
+            this.index = index;
+        }
+    }
+
+    protected File _dir;
+    protected long _maxBytes;
+    protected long _bytes;
+    // key -> size of the entry, in access order (least recently used first)
+    private LinkedHashMap<String, Long> _entries;
+
+    private AtomicInteger _hits = new AtomicInteger();
+    private AtomicInteger _misses = new AtomicInteger();
+    private AtomicInteger _evictions = new AtomicInteger();
+
+    public PageCache(File dir, long maxBytes) throws IOException
+    {
+        _dir = dir;
+        _maxBytes = maxBytes;
+        _entries = new LinkedHashMap<String, Long>(256, 0.75f, true);
+        if (dir.isDirectory() == false && dir.mkdirs() == false) {
+            throw new IOException("Cannot create the cache directory " + dir);
+        }
+        File[] files = dir.listFiles();
+        List<File> entries = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+            }
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (File file : entries) {
+            String name = file.getName();
+            _entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            _bytes += file.length();
+        }
+        evict();
+        LOG.info("Page cache " + dir + ": " + _entries.size() + " entries, " + (_bytes / 1024) + " KB");
+    }
+
+    /**
+     * The cached output of the page or null.
+     * @param pageNb page number of the words in the returned index
+     */
+    public Entry get(String key, int pageNb)
+    {
+        synchronized (this) {
+            if (_entries.get(key) == null) {
+                _misses.incrementAndGet();
+                return null;
+            }
+        }
+        File file = file(key);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Entry entry;
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a page cache entry");
+                }
+                String info = readString(in);
+                String grid = readString(in);
+                WordIndex index = WordIndex.read(in);
+                index._pageNb = pageNb;
+                entry = new Entry(info, grid, index);
+            }
+            finally {
+                in.close();
+            }
+            file.setLastModified(System.currentTimeMillis());
+            _hits.incrementAndGet();
+            return entry;
+        }
+        catch (IOException e) {
+            // removed by another process or corrupt: extract the page again
+            LOG.warn("Cannot read the cache entry " + file + ": " + e.getMessage());
+            remove(key);
+            _misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry)
+    {
+        File file = file(key);
+        File tmp = new File(_dir, key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, entry.info);
+                writeString(out, entry.grid);
+                entry.index.write(out);
+            }
+            finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOG.warn("Cannot write the cache entry " + file + ": " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        synchronized (this) {
+            Long previous = _entries.put(key, file.length());
+            if (previous != null) {
+                _bytes -= previous;
+            }
+            _bytes += file.length();
+            evict();
+        }
+    }
+
+    public int getHits() { return _hits.get(); }
+    public int getMisses() { return _misses.get(); }
+    public int getEvictions() { return _evictions.get(); }
+
+    private synchronized void remove(String key)
+    {
+        Long size = _entries.remove(key);
+        if (size != null) {
+            _bytes -= size;
+        }
+    }
+
+    private synchronized void evict()
+    {
+        Iterator<Map.Entry<String, Long>> it = _entries.entrySet().iterator();
+        while (_bytes > _maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> kv = it.next();
+            file(kv.getKey()).delete();
+            _bytes -= kv.getValue();
+            it.remove();
+            _evictions.incrementAndGet();
+        }
+    }
+
+    private File file(String key)
+    {
+        return new File(_dir, key + SUFFIX);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Computes the cache keys of the pages of one document.
+     *
+     * The key covers the decoded content stream, the geometry of the page, the annotations and the resources.
+     * The resources are hashed structurally, streams by their encoded bytes, except the data of the images,
+     * which does not change the words or the grids. The digests of the streams are kept for the whole document,
+     * so a font shared by all the pages is hashed once.
+     */
+    public static class PageDigest
+    {
+        private Map<COSBase, byte[]> _streams = new IdentityHashMap<COSBase, byte[]>();
+
+        public String digest(PDPage page, String options) throws IOException
+        {
+            MessageDigest md = sha256();
+            update(md, "v" + VERSION + ";" + options);
+            update(md, rectangle(page.findMediaBox()) + rectangle(page.findCropBox()) + ";" + page.findRotation());
+            PDStream contents = page.getContents();
+            if (contents != null) {
+                InputStream in = contents.createInputStream();
+                try {
+                    byte[] buffer = new byte[16 * 1024];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        md.update(buffer, 0, n);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            Map<COSBase, Boolean> path = new IdentityHashMap<COSBase, Boolean>();
+            PDResources resources = page.findResources();
+            update(md, resources != null ? resources.getCOSDictionary() : null, path);
+            update(md, page.getCOSDictionary().getDictionaryObject(COSName.ANNOTS), path);
+            return Manifest.hex(md.digest());
+        }
+
+        private void update(MessageDigest md, COSBase base, Map<COSBase, Boolean> path) throws IOException
+        {
+            if (base instanceof COSObject) {
+                base = ((COSObject)base).getObject();
+            }
+            if (base == null) {
+                update(md, "n");
+            }
+            else if (path.containsKey(base)) {
+                // reference back to an object that is being hashed (e.g. /Parent)
+                update(md, "c");
+            }
+            else if (base instanceof COSDictionary) {
+                path.put(base, Boolean.TRUE);
+                COSDictionary dict = (COSDictionary)base;
+                List<COSName> keys = new ArrayList<COSName>(dict.keySet());
+                Collections.sort(keys);
+                update(md, "<<");
+                for (COSName key : keys) {
+                    if (COSName.PARENT.equals(key)) {
+                        continue;
+                    }
+                    update(md, "/" + key.getName());
+                    update(md, dict.getItem(key), path);
+                }
+                update(md, ">>");
+                if (base instanceof COSStream) {
+                    md.update(streamDigest((COSStream)base));
+                }
+                path.remove(base);
+            }
+            else if (base instanceof COSArray) {
+                path.put(base, Boolean.TRUE);
+                update(md, "[");
+                for (COSBase item : (COSArray)base) {
+                    update(md, item, path);
+                }
+                update(md, "]");
+                path.remove(base);
+            }
+            else if (base instanceof COSName) {
+                update(md, "/" + ((COSName)base).getName());
+            }
+            else if (base instanceof COSString) {
+                update(md, "(");
+                md.update(((COSString)base).getBytes());
+                update(md, ")");
+            }
+            else if (base instanceof COSNumber) {
+                update(md, Double.toString(((COSNumber)base).doubleValue()));
+            }
+            else if (base instanceof COSBoolean) {
+                update(md, Boolean.toString(((COSBoolean)base).getValue()));
+            }
+            else {
+                update(md, base.getClass().getSimpleName());
+            }
+            update(md, " ");
+        }
+
+        private byte[] streamDigest(COSStream stream) throws IOException
+        {
+            byte[] digest = _streams.get(stream);
+            if (digest != null) {
+                return digest;
+            }
+            MessageDigest md = sha256();
+            if (COSName.IMAGE.equals(stream.getDictionaryObject(COSName.SUBTYPE)) == false) {
+                InputStream in = stream.getFilteredStream();
+                try {
+                    byte[] buffer = new byte[16 * 1024];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        md.update(buffer, 0, n);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            digest = md.digest();
+            _streams.put(stream, digest);
+            return digest;
+        }
+
+        private static void update(MessageDigest md, String s)
+        {
+            md.update(s.getBytes(UTF8));
+        }
+
+        private static String rectangle(PDRectangle r)
+        {
+            if (r == null) {
+                return "[]";
+            }
+            return "[" + r.getLowerLeftX() + " " + r.getLowerLeftY() + " " + r.getUpperRightX() + " " + r.getUpperRightY() + "]";
+        }
+
+        private static MessageDigest sha256() throws IOException
+        {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
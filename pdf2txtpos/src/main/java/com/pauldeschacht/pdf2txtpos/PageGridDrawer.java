@@ -30,6 +30,8 @@ import org.apache.commons.logging.LogFactory;
 
 /**
  */
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -37,8 +39,8 @@ import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.PDFOperator;
 import org.apache.pdfbox.util.PDFStreamEngine;
-import org.apache.pdfbox.util.ResourceLoader;
 
 public class PageGridDrawer extends PDFStreamEngine
 {
@@ -47,6 +49,14 @@ public class PageGridDrawer extends PDFStreamEngine
      */
     private static final Log LOG = LogFactory.getLog(PageGridDrawer.class);
 
+    private static final String OPERATORS = "com/pauldeschacht/pdf2txtpos/GridDrawer.properties";
+
+    // a strong reference, java.util.logging forgets the level of a collected logger
+    private static final Logger STREAM_ENGINE_LOG = Logger.getLogger("org.apache.pdfbox.util.PDFStreamEngine");
+    static {
+        STREAM_ENGINE_LOG.setLevel(Level.OFF);
+    }
+
     private Graphics2D graphics;
     
     /**
@@ -73,23 +83,118 @@ public class PageGridDrawer extends PDFStreamEngine
     protected List<Line> _path;
     protected double _startx, _starty, _currentx, _currenty;
     protected AffineTransform _pageAffineTransform;
+    protected List<Region> _regions = null;
+    protected Watchdog _watchdog = null;
+    protected ExtractionOptions _options = ExtractionOptions.DEFAULTS;
+    protected int _segments = 0;
 
     /**
-     * Default constructor, loads properties from file.
+     * Default constructor, the operators of GridDrawer.properties are resolved once per process,
+     * see OperatorRegistry.
      *
-     * @throws IOException If there is an error loading properties from the file.
+     * @throws IOException If the operators cannot be loaded.
      */
     public PageGridDrawer() throws IOException
     {
-	super( ResourceLoader.loadProperties("com/pauldeschacht/pdf2txtpos/GridDrawer.properties", true ) );
-	//super( ResourceLoader.loadProperties("org/pauldeschacht/pdfgrid/resources/GridDrawer.properties", true ) );
+	super();
+	OperatorRegistry.get(OPERATORS).register(this);
 	_closedPath = false;
 	_currentPath = new ArrayList<Line>();
 	_path = new ArrayList<Line>();
 	_pageAffineTransform = null;
-        
-        Logger.getLogger("org.apache.pdfbox.util.PDFStreamEngine").setLevel(Level.OFF);
+    }
+
+    /**
+     * Forget the lines of the previous page, so that the drawer can draw the next page.
+     */
+    public void reset()
+    {
+	resetEngine();
+	page = null;
+	pageSize = null;
+	linePath.reset();
+	clippingWindingRule = -1;
+	_closedPath = false;
+	_currentPath.clear();
+	_path.clear();
+	_pageAffineTransform = null;
+	_regions = null;
+	_watchdog = null;
+	_segments = 0;
+    }
+
+    /**
+     * Number of path segments of the page, rulings or not.
+     */
+    public int getSegmentCount()
+    {
+        return _segments;
+    }
+
+    /**
+     * The ruling margin and the collapse distances of the grids.
+     */
+    public void setOptions(ExtractionOptions options)
+    {
+        _options = options;
+    }
 
+    /**
+     * Only keep the lines that touch one of the regions. null keeps all the lines of the page.
+     */
+    public void setRegions(List<Region> regions)
+    {
+        _regions = regions;
+    }
+
+    /**
+     * Budget of the current page, null is unlimited.
+     */
+    public void setWatchdog(Watchdog watchdog)
+    {
+        _watchdog = watchdog;
+    }
+
+    @Override
+    protected void processOperator(PDFOperator operator, List<COSBase> arguments) throws IOException
+    {
+        OperatorProfile profile = null;
+        if (_watchdog != null) {
+            _watchdog.checkOperator();
+            profile = _watchdog.getProfile();
+        }
+        if (profile == null) {
+            super.processOperator(operator, arguments);
+        }
+        else {
+            profile.enter();
+            try {
+                super.processOperator(operator, arguments);
+            }
+            finally {
+                profile.exit(OperatorProfile.GRID, operator.getOperation());
+            }
+        }
+        if (_watchdog != null) {
+            // PDFStreamEngine logs and swallows the exceptions of an operator, also of a Do whose form ran out of budget
+            _watchdog.checkExceeded();
+        }
+    }
+
+    @Override
+    public void processSubStream(PDPage aPage, PDResources resources, COSStream cosStream) throws IOException
+    {
+        if (_watchdog != null && _watchdog.enterStream(cosStream) == false) {
+            return;
+        }
+        try {
+            super.processSubStream(aPage, resources, cosStream);
+        }
+        finally {
+            if (_watchdog != null) {
+                _watchdog.exitStream(cosStream);
+            }
+        }
     }
 
     /**
@@ -297,6 +402,7 @@ public class PageGridDrawer extends PDFStreamEngine
 	double ty = pos.getY();
 	
 	Line line = new Line(_currentx, _currenty, tx, ty);
+	_segments++;
 
 	//System.out.println("+Line: " + line.toString());
 	_currentPath.add(line);
@@ -310,6 +416,7 @@ public class PageGridDrawer extends PDFStreamEngine
     public void closepath() 
     {
 	Line line = new Line(_currentx, _currenty, _startx, _starty);
+	_segments++;
 	_currentPath.add(line);
 	_currentx = _startx;
 	_currenty = _starty;
@@ -348,8 +455,8 @@ public class PageGridDrawer extends PDFStreamEngine
 	    }
 	    if (strokingPaint != Color.WHITE) {
 		for(Line line : _currentPath) {
-		    if(line.isVertical() || line.isHorizontal()) {
-			_path.add(line);
+		    if(line.isVertical(_options.getRulingMargin()) || line.isHorizontal(_options.getRulingMargin())) {
+			addLine(line);
 		    }
 		}
 	    }
@@ -369,8 +476,8 @@ public class PageGridDrawer extends PDFStreamEngine
 	    }
 	    if(nonStrokingPaint != Color.WHITE) {
 		for(Line line : _currentPath) {
-		    if(line.isVertical() || line.isHorizontal()) {
-			_path.add(line);
+		    if(line.isVertical(_options.getRulingMargin()) || line.isHorizontal(_options.getRulingMargin())) {
+			addLine(line);
 		    }
 		}
 	    }
@@ -378,14 +485,58 @@ public class PageGridDrawer extends PDFStreamEngine
 	_currentPath.clear();
     }
 
+    private void addLine(Line line) {
+	if (_regions != null) {
+	    boolean inside = false;
+	    for (Region region : _regions) {
+		if (region.intersects(line)) {
+		    inside = true;
+		    break;
+		}
+	    }
+	    if (inside == false) {
+		return;
+	    }
+	}
+	_path.add(line);
+    }
+
+    /**
+     * The grids built from the lines that touch the given region.
+     **/
+    public List<Grid> getGrids(Region region) {
+	List<Line> lines = new ArrayList<Line>();
+	for (Line line : _path) {
+	    if (region.intersects(line)) {
+		lines.add(line);
+	    }
+	}
+	return getGrids(lines);
+    }
+
     /**
      * Once the vertical and horizontal lines are extracted from the PDF stream, it is possible to determine the different grids.
      **/
     public List<Grid> getGrids() {
+	return getGrids(_path);
+    }
+
+    protected List<Grid> getGrids(List<Line> lines) {
+	// the grids depend on the order of the lines, the same rulings drawn in another order give the same grids
+	lines = GridCache.sorted(lines, _options.getRulingMargin());
+	GridCache cache = _options.getGridCache();
+	GridCache.Signature signature = null;
+	if (cache != null && lines.size() > 1) {
+	    signature = GridCache.signature(lines, _options.getCollapseX(), _options.getCollapseY(), _options.getRulingMargin());
+	    List<Grid> grids = cache.get(signature, _options.getCollapseX(), _options.getCollapseY(), _options.getRulingMargin());
+	    if (grids != null) {
+		return grids;
+	    }
+	}
 	List<Grid> grids = new ArrayList<Grid>();
-	List<Line> currentLines = _path;
+	List<Line> currentLines = lines;
 	while(currentLines.size()>1) {
-	    Grid grid = new Grid();
+	    Grid grid = new Grid(_options.getCollapseX(), _options.getCollapseY(), _options.getRulingMargin());
 	    grids.add(grid);
 	    List<Line> nonOverlappingLines = grid.overlapping(currentLines);
 	    	    
@@ -411,6 +562,9 @@ public class PageGridDrawer extends PDFStreamEngine
 
 	    currentLines = nonOverlappingLines;
 	}
+	if (signature != null) {
+	    cache.put(signature, grids);
+	}
 	return grids;
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.util.PDFOperator;
+
+/**
+ * Cheap scan of the content stream of a page (and of the form XObjects it invokes) that only looks at the operators.
+ * Nothing is drawn and no graphics state is kept. The result tells if the page shows any text and if it paints any path,
+ * so that the text engine and the grid drawer are only run when they can produce output.
+ * The scan counts in the time budget of the page, but not in its operator budget.
+ */
+public class PagePrescan
+{
+    private static final Log LOG = LogFactory.getLog(PagePrescan.class);
+
+    protected boolean _hasText = false;
+    protected boolean _hasPaths = false;
+    private Set<COSStream> _visited;
+    private Watchdog _watchdog;
+    private long _operators = 0;
+
+    private PagePrescan(Watchdog watchdog)
+    {
+        _visited = Collections.newSetFromMap(new IdentityHashMap<COSStream,Boolean>());
+        _watchdog = watchdog;
+    }
+
+    public boolean hasText() { return _hasText; }
+    public boolean hasPaths() { return _hasPaths; }
+
+    public static PagePrescan scan(PDPage page) throws BudgetExceededException
+    {
+        return scan(page, null);
+    }
+
+    /**
+     * @param watchdog null is unlimited
+     */
+    public static PagePrescan scan(PDPage page, Watchdog watchdog) throws BudgetExceededException
+    {
+        PagePrescan prescan = new PagePrescan(watchdog);
+        try {
+            if (page.getContents() != null) {
+                PDResources resources = page.findResources();
+                prescan.scan(page.getContents().getStream(), resources != null ? resources.getCOSDictionary() : null);
+            }
+            // the grid drawer also draws the appearance streams of the annotations
+            List<PDAnnotation> annotations = page.getAnnotations();
+            for (int i=0; i<annotations.size() && prescan._hasPaths == false; i++) {
+                PDAppearanceDictionary appearDictionary = annotations.get(i).getAppearance();
+                if (appearDictionary == null) {
+                    continue;
+                }
+                Map<String, PDAppearanceStream> appearanceMap = appearDictionary.getNormalAppearance();
+                if (appearanceMap == null) {
+                    continue;
+                }
+                for (PDAppearanceStream appearance : appearanceMap.values()) {
+                    PDResources resources = appearance.getResources();
+                    prescan.scan(appearance.getStream(), resources != null ? resources.getCOSDictionary() : null);
+                }
+            }
+        }
+        catch (BudgetExceededException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            // when in doubt, run everything
+            LOG.warn(e);
+            prescan._hasText = true;
+            prescan._hasPaths = true;
+        }
+        return prescan;
+    }
+
+    private boolean done()
+    {
+        return _hasText && _hasPaths;
+    }
+
+    private void scan(COSStream stream, COSDictionary resources) throws IOException
+    {
+        if (stream == null || _visited.add(stream) == false) {
+            return;
+        }
+        PDFStreamParser parser = new PDFStreamParser(stream);
+        try {
+            Object previous = null;
+            Iterator<Object> iter = parser.getTokenIterator();
+            while (iter.hasNext() && done() == false) {
+                Object next = iter.next();
+                if (next instanceof PDFOperator) {
+                    if (_watchdog != null && (++_operators & 0xff) == 0) {
+                        _watchdog.checkTime();
+                    }
+                    String operation = ((PDFOperator)next).getOperation();
+                    if (isTextShowing(operation)) {
+                        _hasText = true;
+                    }
+                    else if (isPathPainting(operation)) {
+                        _hasPaths = true;
+                    }
+                    else if (operation.equals("Do") && previous instanceof COSName) {
+                        scanXObject((COSName)previous, resources);
+                    }
+                }
+                previous = next;
+            }
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    private void scanXObject(COSName name, COSDictionary resources) throws IOException
+    {
+        if (resources == null) {
+            return;
+        }
+        COSBase xobjects = resources.getDictionaryObject(COSName.XOBJECT);
+        if (!(xobjects instanceof COSDictionary)) {
+            return;
+        }
+        COSBase xobject = ((COSDictionary)xobjects).getDictionaryObject(name);
+        if (!(xobject instanceof COSStream)) {
+            return;
+        }
+        COSStream form = (COSStream)xobject;
+        if (COSName.FORM.equals(form.getDictionaryObject(COSName.SUBTYPE)) == false) {
+            return;
+        }
+        COSBase formResources = form.getDictionaryObject(COSName.RESOURCES);
+        scan(form, formResources instanceof COSDictionary ? (COSDictionary)formResources : resources);
+    }
+
+    private static boolean isTextShowing(String operation)
+    {
+        return operation.equals("Tj") || operation.equals("TJ") ||
+            operation.equals("'") || operation.equals("\"");
+    }
+
+    private static boolean isPathPainting(String operation)
+    {
+        return operation.equals("S") || operation.equals("s") ||
+            operation.equals("f") || operation.equals("F") || operation.equals("f*") ||
+            operation.equals("B") || operation.equals("B*") ||
+            operation.equals("b") || operation.equals("b*");
+    }
+}
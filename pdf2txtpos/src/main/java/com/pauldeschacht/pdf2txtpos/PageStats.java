@@ -0,0 +1,59 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts and durations of the passes over a page, filled in by the text pass and the grid pass.
+ */
+public class PageStats
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATIONS = allocationsSupported();
+
+    public int words;
+    public int glyphs;
+    public int segments;
+    public int grids;
+    public long textNanos;
+    public long gridNanos;
+    public long textOperators;
+    public long gridOperators;
+    /** bytes allocated by the passes, 0 when the JVM does not measure it */
+    public long allocatedBytes;
+    /** why the page was skipped, null when it was not over budget */
+    public String overBudget;
+    /** the content shows no text, the page is not written */
+    public boolean withoutText;
+    /** the page has words but paints no path, its grid pass was skipped */
+    public boolean gridWithoutRulings;
+    /** the words on which the text engines differ, with cross-check */
+    public int crossCheckDifferences;
+    /** the page was written by SlowPageCapture */
+    public boolean captured;
+
+    private static boolean allocationsSupported()
+    {
+        try {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+                return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+            }
+        }
+        catch (LinkageError e) {
+            // not a HotSpot JVM
+        }
+        return false;
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, 0 when the JVM does not measure it.
+     */
+    public static long threadAllocatedBytes()
+    {
+        if (ALLOCATIONS == false) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean)THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,318 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Periodic report of a batch run, on stderr or in a status file:
+ *
+ *   Progress: 120/3400 documents, 2210/61873 pages, 35.2 pages/s, 4.1 MB/s, page p50 12 ms p95 80 ms p99 310 ms,
+ *   ETA 25m10s, running 3: big.pdf 42s, ...
+ *
+ * The worker threads only increment counters and one bucket of a histogram, the report is computed by the
+ * thread of a timer from what they recorded. The rates are those of the last interval, the ETA is computed
+ * from the bytes of the remaining files at the average rate of the whole run.
+ * The pages of the files are counted by a background thread with the cheap parser of MemoryGovernor,
+ * the total is shown with ~ until they are all counted.
+ */
+public class ProgressReporter
+{
+    private static final Log LOG = LogFactory.getLog(ProgressReporter.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int RUNNING_SHOWN = 5;
+
+    private final long _interval;
+    private final Path _status;
+    private final AtomicInteger _documentsDone = new AtomicInteger();
+    private final AtomicInteger _pagesDone = new AtomicInteger();
+    private final AtomicLong _bytesDone = new AtomicLong();
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    // start of the running documents, by file
+    private final Map<String, Long> _running = new ConcurrentHashMap<String, Long>();
+    private volatile int _documentsTotal = -1;
+    private volatile long _bytesTotal = -1;
+    private volatile int _pagesTotal = 0;
+    private volatile boolean _pagesCounted = false;
+    private long _start;
+    private Timer _timer;
+    // the last report, under the lock of report
+    private long _lastReport;
+    private int _lastPages;
+    private long _lastBytes;
+
+    /**
+     * @param intervalMillis time between two reports
+     * @param status file rewritten with each report, null prints the reports on stderr
+     */
+    public ProgressReporter(long intervalMillis, Path status)
+    {
+        _interval = intervalMillis;
+        _status = status;
+    }
+
+    /**
+     * Start reporting a batch of files, whose pages are counted in the background.
+     */
+    public void start(final List<File> pdfs)
+    {
+        long bytes = 0;
+        for (File pdf : pdfs) {
+            bytes += pdf.length();
+        }
+        _documentsTotal = pdfs.size();
+        _bytesTotal = bytes;
+        Thread counter = new Thread(new Runnable() {
+            public void run() {
+                for (File pdf : pdfs) {
+                    int pages = MemoryGovernor.pageCount(pdf);
+                    if (pages > 0) {
+                        _pagesTotal += pages;
+                    }
+                }
+                _pagesCounted = true;
+            }
+        }, "pdf2txtpos-progress-count");
+        counter.setDaemon(true);
+        counter.setPriority(Thread.MIN_PRIORITY);
+        counter.start();
+        start();
+    }
+
+    /**
+     * Start reporting a batch whose files are not known in advance, such as the entries of an archive.
+     */
+    public void start()
+    {
+        _start = System.nanoTime();
+        _lastReport = _start;
+        _timer = new Timer("pdf2txtpos-progress", true);
+        _timer.schedule(new TimerTask() {
+            public void run() {
+                report("Progress", false);
+            }
+        }, _interval, _interval);
+    }
+
+    /**
+     * Stop the reports and report the whole run.
+     */
+    public void stop()
+    {
+        if (_timer != null) {
+            _timer.cancel();
+            _timer = null;
+        }
+        report("Done", true);
+    }
+
+    /**
+     * A document is loaded, it is running until its output is written.
+     */
+    public void beginDocument(String file)
+    {
+        _running.put(file, System.nanoTime());
+    }
+
+    /**
+     * A document is done, extracted or not.
+     */
+    public void endDocument(String file, long bytes)
+    {
+        _running.remove(file);
+        _documentsDone.incrementAndGet();
+        _bytesDone.addAndGet(bytes);
+    }
+
+    /**
+     * A page is done, the pages of the page cache are not in the latencies.
+     */
+    public void page(PageStats stats, boolean cached)
+    {
+        _pagesDone.incrementAndGet();
+        if (cached == false) {
+            _latency.record(stats.textNanos + stats.gridNanos);
+        }
+    }
+
+    /**
+     * @param whole the rates of the whole run instead of the last interval
+     */
+    private synchronized void report(String title, boolean whole)
+    {
+        long now = System.nanoTime();
+        int pages = _pagesDone.get();
+        long bytes = _bytesDone.get();
+        if (whole) {
+            _lastReport = _start;
+            _lastPages = 0;
+            _lastBytes = 0;
+        }
+        double seconds = Math.max(now - _lastReport, 1) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(title).append(": ").append(_documentsDone.get());
+        if (_documentsTotal >= 0) {
+            sb.append('/').append(_documentsTotal);
+        }
+        sb.append(" documents, ").append(pages);
+        if (_documentsTotal >= 0) {
+            sb.append('/').append(_pagesCounted ? "" : "~").append(_pagesTotal);
+        }
+        sb.append(" pages, ");
+        sb.append(String.format(Locale.ROOT, "%.1f pages/s, %.2f MB/s", (pages - _lastPages) / seconds, (bytes - _lastBytes) / seconds / (1024 * 1024)));
+        sb.append(", page p50 ").append(millis(_latency.percentile(0.50)));
+        sb.append(" p95 ").append(millis(_latency.percentile(0.95)));
+        sb.append(" p99 ").append(millis(_latency.percentile(0.99)));
+        long elapsed = now - _start;
+        if (_bytesTotal > 0 && bytes > 0 && bytes < _bytesTotal) {
+            sb.append(", ETA ").append(duration((long)((double)elapsed * (_bytesTotal - bytes) / bytes)));
+        }
+        List<Map.Entry<String, Long>> running = new ArrayList<Map.Entry<String, Long>>(_running.entrySet());
+        if (running.isEmpty() == false) {
+            // the longest running first
+            Collections.sort(running, new Comparator<Map.Entry<String, Long>>() {
+                public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+                    return e1.getValue().compareTo(e2.getValue());
+                }
+            });
+            sb.append(", running ").append(running.size()).append(':');
+            for (int i = 0; i < Math.min(running.size(), RUNNING_SHOWN); i++) {
+                String file = running.get(i).getKey();
+                sb.append(' ').append(file.substring(Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\')) + 1));
+                sb.append(' ').append(duration(now - running.get(i).getValue()));
+            }
+            if (running.size() > RUNNING_SHOWN) {
+                sb.append(" ...");
+            }
+        }
+        _lastReport = now;
+        _lastPages = pages;
+        _lastBytes = bytes;
+        write(sb.toString());
+    }
+
+    private void write(String line)
+    {
+        if (_status == null) {
+            System.err.println(line);
+            return;
+        }
+        Path tmp = _status.resolveSibling(_status.getFileName() + ".tmp");
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(tmp, UTF8);
+            try {
+                writer.write(line);
+                writer.write("\n");
+            }
+            finally {
+                writer.close();
+            }
+            // readers of the status file never see half a report
+            Files.move(tmp, _status, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOG.warn("Cannot write the status file " + _status, e);
+        }
+    }
+
+    private static String millis(long nanos)
+    {
+        return (nanos + 500000) / 1000000 + " ms";
+    }
+
+    private static String duration(long nanos)
+    {
+        long seconds = nanos / 1000000000L;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return seconds / 60 + "m" + seconds % 60 + "s";
+        }
+        return seconds / 3600 + "h" + (seconds % 3600) / 60 + "m";
+    }
+
+    /**
+     * Histogram of latencies in microseconds, with buckets of 1/8 of a power of two above 16 microseconds,
+     * so that a percentile is within 12.5% of the exact value. Recording is one atomic increment.
+     */
+    static class LatencyHistogram
+    {
+        private static final int LINEAR = 16;
+        private static final int SUB_BUCKETS = 8;
+        private final AtomicLongArray _counts = new AtomicLongArray(LINEAR + 64 * SUB_BUCKETS);
+
+        void record(long nanos)
+        {
+            _counts.incrementAndGet(bucket(Math.max(nanos / 1000, 0)));
+        }
+
+        static int bucket(long micros)
+        {
+            if (micros < LINEAR) {
+                return (int)micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int)(micros >> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * The middle of the bucket, in nanoseconds.
+         */
+        static long value(int bucket)
+        {
+            if (bucket < LINEAR) {
+                return bucket * 1000L;
+            }
+            int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+            long sub = (bucket - LINEAR) % SUB_BUCKETS;
+            long low = (SUB_BUCKETS + sub) << (exponent - 3);
+            long width = 1L << (exponent - 3);
+            return (low + width / 2) * 1000L;
+        }
+
+        /**
+         * The latency below which this fraction of the pages is, 0 without pages.
+         */
+        long percentile(double fraction)
+        {
+            long[] counts = new long[_counts.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = _counts.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long)Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return value(i);
+                }
+            }
+            return value(counts.length - 1);
+        }
+    }
+}
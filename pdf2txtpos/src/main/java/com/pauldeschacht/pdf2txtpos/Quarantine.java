@@ -0,0 +1,140 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * List of the PDF files that exceeded their budget or crashed the extraction, so that the next runs skip them.
+ * The list is a text file with one digest;path;reason line per file. A file is recognized by the digest of
+ * its content, so a corrected file with the same name is processed again. The entries of an archive are
+ * recognized by the digest of their content too.
+ */
+public class Quarantine
+{
+    private static final Log LOG = LogFactory.getLog(Quarantine.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected Path _file;
+    protected Set<String> _digests;
+
+    public Quarantine(Path file) throws IOException
+    {
+        _file = file;
+        _digests = new HashSet<String>();
+        if (Files.exists(file)) {
+            BufferedReader reader = Files.newBufferedReader(file, UTF8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int sep = line.indexOf(';');
+                    if (sep > 0) {
+                        _digests.add(line.substring(0, sep));
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+    }
+
+    public synchronized boolean contains(Path pdf) throws IOException
+    {
+        if (_digests.isEmpty()) {
+            return false;
+        }
+        return _digests.contains(Manifest.digest(pdf));
+    }
+
+    /**
+     * The content of a PDF read into memory, an entry of an archive.
+     */
+    public synchronized boolean contains(byte[] pdf) throws IOException
+    {
+        if (_digests.isEmpty()) {
+            return false;
+        }
+        return _digests.contains(digest(pdf));
+    }
+
+    public void add(Path pdf, String reason) throws IOException
+    {
+        add(Manifest.digest(pdf), pdf.toAbsolutePath().toString(), reason);
+    }
+
+    private synchronized void add(String digest, String name, String reason) throws IOException
+    {
+        if (_digests.add(digest) == false) {
+            return;
+        }
+        Writer writer = Files.newBufferedWriter(_file, UTF8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            writer.write(digest + ";" + name + ";" + reason.replace('\n', ' ') + "\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Add a document that exceeded its budget or crashed the extraction. A damaged file fails fast, it does not
+     * slow the batch down and is not added.
+     */
+    public void failed(Path pdf, Throwable error)
+    {
+        if (isDamaged(error)) {
+            return;
+        }
+        try {
+            add(pdf, error.toString());
+            LOG.warn("Quarantined " + pdf);
+        }
+        catch (IOException e) {
+            LOG.warn("Cannot add " + pdf + " to the quarantine", e);
+        }
+    }
+
+    /**
+     * See failed(Path, Throwable), for a PDF read into memory.
+     * @param name the name of the PDF in the quarantine, archive!entry
+     */
+    public void failed(String name, byte[] pdf, Throwable error)
+    {
+        if (isDamaged(error)) {
+            return;
+        }
+        try {
+            add(digest(pdf), name, error.toString());
+            LOG.warn("Quarantined " + name);
+        }
+        catch (IOException e) {
+            LOG.warn("Cannot add " + name + " to the quarantine", e);
+        }
+    }
+
+    private static boolean isDamaged(Throwable error)
+    {
+        return error instanceof IOException && (error instanceof BudgetExceededException) == false;
+    }
+
+    private static String digest(byte[] pdf) throws IOException
+    {
+        try {
+            return Manifest.hex(MessageDigest.getInstance("SHA-256").digest(pdf));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
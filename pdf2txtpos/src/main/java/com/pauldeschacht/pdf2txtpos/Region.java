@@ -0,0 +1,59 @@
+package com.pauldeschacht.pdf2txtpos;
+
+/**
+ * Named rectangle of a region template.
+ * The coordinates use the same system as the .info output: x from the left, y from the top of the page.
+ */
+public class Region
+{
+    protected String _name;
+    // from,to pairs of page numbers, see RegionTemplate.pageRanges
+    protected int[] _pages;
+    protected float _x1, _y1, _x2, _y2;
+
+    public Region(String name, int[] pages, float x1, float y1, float x2, float y2)
+    {
+        _name = name;
+        _pages = pages;
+        _x1 = Math.min(x1,x2);
+        _y1 = Math.min(y1,y2);
+        _x2 = Math.max(x1,x2);
+        _y2 = Math.max(y1,y2);
+    }
+
+    public String name() { return _name; }
+
+    public float x1() { return _x1; }
+    public float y1() { return _y1; }
+    public float x2() { return _x2; }
+    public float y2() { return _y2; }
+
+    public boolean matchesPage(int pageNb)
+    {
+        for (int i = 0; i < _pages.length; i += 2) {
+            if (pageNb >= _pages[i] && pageNb <= _pages[i+1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * true if the box (x1,y1)-(x2,y2) touches the region
+     */
+    public boolean intersects(float x1, float y1, float x2, float y2)
+    {
+        return Math.min(x1,x2) <= _x2 && Math.max(x1,x2) >= _x1 &&
+            Math.min(y1,y2) <= _y2 && Math.max(y1,y2) >= _y1;
+    }
+
+    public boolean intersects(WordPosition word)
+    {
+        return intersects(word.x1(), word.y1(), word.x2(), word.y2());
+    }
+
+    public boolean intersects(Line line)
+    {
+        return intersects((float)line._x1, (float)line._y1, (float)line._x2, (float)line._y2);
+    }
+}
@@ -0,0 +1,150 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.util.TextPosition;
+
+/**
+ * A template is a list of named regions. Only the text and the grids inside the regions are extracted.
+ *
+ * Each line of the template file contains
+ * name;pages;x1;y1;x2;y2
+ * where pages is *, a page number, a range (2-5 or 2-) or a comma separated list of those.
+ * Empty lines and lines starting with # are ignored.
+ */
+public class RegionTemplate
+{
+    protected List<Region> _regions;
+
+    public RegionTemplate()
+    {
+        _regions = new ArrayList<Region>();
+    }
+
+    public static RegionTemplate load(String filename) throws IOException
+    {
+        RegionTemplate template = new RegionTemplate();
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            String line;
+            int lineNb = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNb++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(";");
+                if (fields.length != 6) {
+                    throw new IOException(filename + ":" + lineNb + ": expected name;pages;x1;y1;x2;y2");
+                }
+                int[] pages;
+                try {
+                    pages = pageRanges(fields[1]);
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IOException(filename + ":" + lineNb + ": invalid pages \"" + fields[1].trim() + "\"");
+                }
+                try {
+                    template.add(new Region(fields[0].trim(), pages,
+                                            Float.parseFloat(fields[2].trim()), Float.parseFloat(fields[3].trim()),
+                                            Float.parseFloat(fields[4].trim()), Float.parseFloat(fields[5].trim())));
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException(filename + ":" + lineNb + ": " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return template;
+    }
+
+    /**
+     * The from,to pairs of a page pattern: *, a page number, a range n-m, an open range n- or a comma separated list of those.
+     * @throws IllegalArgumentException when the pattern is not valid
+     */
+    public static int[] pageRanges(String pages)
+    {
+        String[] patterns = pages.split(",");
+        int[] ranges = new int[2 * patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i].trim();
+            int from, to;
+            if (pattern.equals("*")) {
+                from = 1;
+                to = Integer.MAX_VALUE;
+            }
+            else {
+                int dash = pattern.indexOf('-');
+                if (dash == -1) {
+                    from = Integer.parseInt(pattern);
+                    to = from;
+                }
+                else {
+                    from = Integer.parseInt(pattern.substring(0, dash).trim());
+                    String end = pattern.substring(dash+1).trim();
+                    to = end.length() == 0 ? Integer.MAX_VALUE : Integer.parseInt(end);
+                }
+            }
+            if (from < 1 || to < from) {
+                throw new IllegalArgumentException(pattern);
+            }
+            ranges[2*i] = from;
+            ranges[2*i+1] = to;
+        }
+        return ranges;
+    }
+
+    public void add(Region region)
+    {
+        _regions.add(region);
+    }
+
+    /**
+     * The regions that apply to the given page (first page is 1)
+     */
+    public List<Region> regions(int pageNb)
+    {
+        List<Region> result = new ArrayList<Region>();
+        for (Region region : _regions) {
+            if (region.matchesPage(pageNb)) {
+                result.add(region);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The first region that contains (a part of) the word, null if the word is outside all the regions
+     */
+    public static Region find(List<Region> regions, WordPosition word)
+    {
+        for (Region region : regions) {
+            if (region.intersects(word)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Test on the bounding box of a single glyph, using the coordinates of the word positions.
+     */
+    public static boolean accept(List<Region> regions, TextPosition glyph)
+    {
+        float x = glyph.getXDirAdj();
+        float y = glyph.getYDirAdj();
+        for (Region region : regions) {
+            if (region.intersects(x, y, x + glyph.getWidthDirAdj(), y + glyph.getHeightDir())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
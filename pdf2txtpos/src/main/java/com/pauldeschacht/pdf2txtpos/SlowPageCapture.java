@@ -0,0 +1,177 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Writes the slow pages (see ExtractionOptions.isSlow) as standalone PDF files, so that a slow page of a
+ * confidential document can be shared and added to the benchmark corpus without the rest of the document.
+ *
+ * <name>-page<N>.pdf contains the page with its content and resources, without its annotations, which can
+ * point to the other pages. <name>-page<N>.json records the timings, allocations and operator counts of
+ * the passes and the options that matter to reproduce them.
+ */
+public class SlowPageCapture
+{
+    private static final Log LOG = LogFactory.getLog(SlowPageCapture.class);
+
+    private SlowPageCapture()
+    {
+    }
+
+    /**
+     * Capture the page when the options have a capture directory and the page is slow.
+     * A page that cannot be written is logged, the extraction goes on.
+     * @param file the PDF file of the page, null when unknown
+     */
+    public static void captureIfSlow(PDPage page, String file, int pageNb, PageStats stats, ExtractionOptions options)
+    {
+        if (options.getCaptureDir() == null || options.isSlow(stats) == false) {
+            return;
+        }
+        String base = baseName(file) + "-page" + pageNb;
+        File pdf = new File(options.getCaptureDir(), base + ".pdf");
+        try {
+            Files.createDirectories(options.getCaptureDir().toPath());
+            writePage(page, pdf);
+            writeSidecar(new File(options.getCaptureDir(), base + ".json"), file, pageNb, stats, options);
+            stats.captured = true;
+            LOG.info("Captured slow page " + pageNb + " of " + (file != null ? file : "stdin") + " into " + pdf);
+        }
+        catch (IOException e) {
+            LOG.warn("Cannot capture page " + pageNb + " of " + (file != null ? file : "stdin"), e);
+        }
+        catch (COSVisitorException e) {
+            LOG.warn("Cannot capture page " + pageNb + " of " + (file != null ? file : "stdin"), e);
+        }
+        catch (RuntimeException e) {
+            LOG.warn("Cannot capture page " + pageNb + " of " + (file != null ? file : "stdin"), e);
+        }
+    }
+
+    /**
+     * The page with its inherited attributes, in a document of its own.
+     */
+    private static void writePage(PDPage page, File target) throws IOException, COSVisitorException
+    {
+        PDDocument document = new PDDocument();
+        try {
+            PDPage imported = document.importPage(page);
+            // the inherited attributes are in the parent of the original page
+            imported.setResources(page.findResources());
+            imported.setMediaBox(page.findMediaBox());
+            imported.setCropBox(page.findCropBox());
+            imported.setRotation(page.findRotation());
+            // the annotations, beads and thumbnails can refer to other pages of the original
+            imported.getCOSDictionary().removeItem(COSName.ANNOTS);
+            imported.getCOSDictionary().removeItem(COSName.B);
+            imported.getCOSDictionary().removeItem(COSName.getPDFName("Thumb"));
+            imported.getCOSDictionary().removeItem(COSName.STRUCT_PARENTS);
+            document.save(target.getPath());
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    private static void writeSidecar(File target, String file, int pageNb, PageStats stats, ExtractionOptions options) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        field(json, "file", file);
+        field(json, "page", pageNb);
+        field(json, "overBudget", stats.overBudget);
+        field(json, "textMillis", millis(stats.textNanos));
+        field(json, "gridMillis", millis(stats.gridNanos));
+        field(json, "allocatedBytes", stats.allocatedBytes);
+        field(json, "textOperators", stats.textOperators);
+        field(json, "gridOperators", stats.gridOperators);
+        field(json, "words", stats.words);
+        field(json, "glyphs", stats.glyphs);
+        field(json, "segments", stats.segments);
+        field(json, "grids", stats.grids);
+        field(json, "engine", options.getEngine());
+        field(json, "verticalLines", options.isVerticalLines());
+        field(json, "template", options.getTemplate() != null);
+        field(json, "slowPageMillis", options.getSlowPageMillis());
+        field(json, "slowPageBytes", options.getSlowPageBytes());
+        // no comma after the last field
+        json.setLength(json.length() - 2);
+        json.append("\n}\n");
+
+        OutputStream out = Files.newOutputStream(target.toPath());
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            writer.write(json.toString());
+            writer.flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Milliseconds with 3 decimals.
+     */
+    private static double millis(long nanos)
+    {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static void field(StringBuilder json, String name, Object value)
+    {
+        json.append("  \"").append(name).append("\": ");
+        if (value == null) {
+            json.append("null");
+        }
+        else if (value instanceof String) {
+            json.append('"');
+            escape(json, (String)value);
+            json.append('"');
+        }
+        else {
+            json.append(value);
+        }
+        json.append(",\n");
+    }
+
+    private static void escape(StringBuilder json, String s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int)c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+    }
+
+    /**
+     * File name without directory and extension, "stdin" without file.
+     * The entries of an archive (archive!entry) use the name of the entry.
+     */
+    private static String baseName(String file)
+    {
+        if (file == null) {
+            return "stdin";
+        }
+        String name = file.substring(Math.max(Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\')), file.lastIndexOf('!')) + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
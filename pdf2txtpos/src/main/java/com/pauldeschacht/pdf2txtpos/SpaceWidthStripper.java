@@ -7,6 +7,12 @@ package com.pauldeschacht.pdf2txtpos;
 import java.io.IOException;
 import java.util.List;
 import java.util.Vector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.pdfbox.util.TextPosition;
 
@@ -15,11 +21,57 @@ import org.apache.pdfbox.util.TextPosition;
  * @author pdeschacht
  */
 public class SpaceWidthStripper extends PDFTextStripper{
+    private static final Log LOG = LogFactory.getLog(SpaceWidthStripper.class);
+
     public SpaceWidthStripper() throws IOException{
         super();
     }
-    
+
     public  Vector<List<TextPosition>> charactersByArticle() {
         return this.charactersByArticle;
     }
+
+    /**
+     * Measures the width of the space character by drawing a single space with the given font
+     * in a scratch document and extracting it again.
+     * Shared by the text engines, which cache the result per font and font size.
+     * @return the width of the space character, 0 if it cannot be measured
+     */
+    public static float measure(PDFont font, float fontSize) {
+        float width = 0f;
+        try {
+            PDDocument doc = new PDDocument();
+            PDPage page = new PDPage();
+
+            doc.addPage(page);
+
+            PDPageContentStream content = new PDPageContentStream(doc, page);
+            content.beginText();
+            content.setFont(font, fontSize);
+            content.moveTextPositionByAmount(0, 0);
+            content.drawString(" ");
+
+            content.endText();
+            content.close();
+
+            SpaceWidthStripper stripper = new SpaceWidthStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(1);
+            stripper.getText(doc);
+            Vector<List<TextPosition>> chars = stripper.charactersByArticle();
+            if(chars.size()>0) {
+                if (chars.get(0).size()>0) {
+                    TextPosition pos = chars.get(0).get(0);
+                    if (pos.getCharacter().equals(" ")) {
+                        width = pos.getWidth();
+                    }
+                }
+            }
+            doc.close();
+        } catch (Exception e) {
+            // stdout may be the output stream
+            LOG.warn("Cannot measure the space width of " + font.getBaseFont(), e);
+        }
+        return width;
+    }
 }
@@ -0,0 +1,260 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A page range of a large PDF, extracted by a separate process so that no process needs the heap of the
+ * whole document.
+ *
+ * plan() reads the page tree only and writes into <base>.split/ a plan.properties and one part-NNNN.job per
+ * range. Each job is run by its own process (--job) with the -s/-e page range, which writes part-NNNN.info
+ * (and .csv) next to the job and then part-NNNN.done. merge() checks that the ranges cover all the pages and
+ * are all done, and concatenates the parts in page order into <base>.info (and .csv).
+ */
+public class SplitJob
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public final File pdf;
+    public final int start;
+    public final int end;
+    /** path of the part outputs without extension */
+    public final String output;
+
+    public SplitJob(File pdf, int start, int end, String output)
+    {
+        this.pdf = pdf;
+        this.start = start;
+        this.end = end;
+        this.output = output;
+    }
+
+    /**
+     * Write the jobs of the page ranges of the PDF, at most 'parts' of them.
+     * @return the job files, in page order
+     */
+    public static List<File> plan(File pdf, int parts) throws IOException
+    {
+        int pages = MemoryGovernor.pageCount(pdf);
+        if (pages < 0) {
+            throw new IOException("Cannot read the page tree of " + pdf);
+        }
+        parts = Math.max(1, Math.min(parts, pages));
+        String path = pdf.getAbsolutePath();
+        File dir = new File(path.substring(0, path.lastIndexOf('.')) + ".split");
+        Files.createDirectories(dir.toPath());
+
+        Properties plan = new Properties();
+        plan.setProperty("pdf", pdf.getAbsolutePath());
+        plan.setProperty("pages", Integer.toString(pages));
+        plan.setProperty("parts", Integer.toString(parts));
+        store(plan, new File(dir, "plan.properties"));
+
+        List<File> jobs = new ArrayList<File>();
+        for (int i = 0; i < parts; i++) {
+            // the first pages%parts ranges have one page more
+            int start = 1 + i * (pages / parts) + Math.min(i, pages % parts);
+            int end = start + pages / parts - 1 + (i < pages % parts ? 1 : 0);
+            String name = String.format("part-%04d", i + 1);
+            Properties job = new Properties();
+            job.setProperty("pdf", pdf.getAbsolutePath());
+            job.setProperty("start", Integer.toString(start));
+            job.setProperty("end", Integer.toString(end));
+            job.setProperty("output", new File(dir, name).getPath());
+            File file = new File(dir, name + ".job");
+            store(job, file);
+            jobs.add(file);
+        }
+        return jobs;
+    }
+
+    public static SplitJob read(File jobFile) throws IOException
+    {
+        Properties job = load(jobFile);
+        return new SplitJob(new File(job.getProperty("pdf")),
+                            Integer.parseInt(job.getProperty("start")),
+                            Integer.parseInt(job.getProperty("end")),
+                            job.getProperty("output"));
+    }
+
+    /**
+     * Mark the part as complete, after its output files are in place.
+     */
+    public void done() throws IOException
+    {
+        Properties done = new Properties();
+        done.setProperty("start", Integer.toString(start));
+        done.setProperty("end", Integer.toString(end));
+        store(done, new File(output + ".done"));
+    }
+
+    /**
+     * Concatenate the parts of a plan into the outputs of the PDF.
+     * Fails without touching the outputs when a range is missing, not done, or not in its place.
+     */
+    public static void merge(File dir) throws IOException
+    {
+        Properties plan = load(new File(dir, "plan.properties"));
+        int pages = Integer.parseInt(plan.getProperty("pages"));
+        int parts = Integer.parseInt(plan.getProperty("parts"));
+        String pdf = plan.getProperty("pdf");
+        String baseFilename = pdf.substring(0, pdf.lastIndexOf('.'));
+
+        List<SplitJob> jobs = new ArrayList<SplitJob>();
+        int next = 1;
+        for (int i = 1; i <= parts; i++) {
+            SplitJob job = read(new File(dir, String.format("part-%04d", i) + ".job"));
+            if (job.start != next) {
+                throw new IOException("Pages " + next + " to " + (job.start - 1) + " are not in a part of " + dir);
+            }
+            File doneFile = new File(job.output + ".done");
+            if (doneFile.isFile() == false) {
+                throw new IOException("Pages " + job.start + " to " + job.end + " are not done, run " + job.output + ".job");
+            }
+            Properties done = load(doneFile);
+            if (Integer.parseInt(done.getProperty("start")) != job.start || Integer.parseInt(done.getProperty("end")) != job.end) {
+                throw new IOException("The output of " + job.output + " is not the range of its job");
+            }
+            jobs.add(job);
+            next = job.end + 1;
+        }
+        if (next != pages + 1) {
+            throw new IOException("Pages " + next + " to " + pages + " are not in a part of " + dir);
+        }
+
+        boolean csv = new File(jobs.get(0).output + ".csv").isFile();
+        for (SplitJob job : jobs) {
+            if (new File(job.output + ".csv").isFile() != csv) {
+                throw new IOException("Some parts of " + dir + " have no .csv, run all the jobs with the same options");
+            }
+        }
+        mergeInfo(jobs, new File(baseFilename + ".info"));
+        if (csv) {
+            List<File> files = new ArrayList<File>();
+            for (SplitJob job : jobs) {
+                files.add(new File(job.output + ".csv"));
+            }
+            concatenate(files, new File(baseFilename + ".csv"));
+        }
+    }
+
+    /**
+     * Concatenate the .info parts, checking that each line belongs to the range of its part and that
+     * the pages are in order.
+     */
+    private static void mergeInfo(List<SplitJob> jobs, File target) throws IOException
+    {
+        File part = new File(target.getPath() + ".part");
+        BufferedWriter writer = Files.newBufferedWriter(part.toPath(), UTF8);
+        boolean complete = false;
+        try {
+            for (SplitJob job : jobs) {
+                File info = new File(job.output + ".info");
+                BufferedReader reader = Files.newBufferedReader(info.toPath(), UTF8);
+                try {
+                    int previous = job.start;
+                    StringBuilder line = new StringBuilder();
+                    while (readLine(reader, line)) {
+                        int pageNb = pageNumber(line);
+                        if (pageNb < previous || pageNb > job.end) {
+                            throw new IOException("Page " + pageNb + " out of order in " + info);
+                        }
+                        previous = pageNb;
+                        writer.append(line).write('\n');
+                    }
+                }
+                finally {
+                    reader.close();
+                }
+            }
+            writer.close();
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        }
+        finally {
+            if (complete == false) {
+                writer.close();
+                part.delete();
+            }
+        }
+    }
+
+    /**
+     * Only '\n' ends a line, a '\r' can be part of a word.
+     */
+    private static boolean readLine(BufferedReader reader, StringBuilder line) throws IOException
+    {
+        line.setLength(0);
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            line.append((char)c);
+        }
+        return c != -1 || line.length() > 0;
+    }
+
+    private static int pageNumber(StringBuilder line)
+    {
+        int pageNb = 0;
+        int i = 0;
+        for (; i < line.length() && Character.isDigit(line.charAt(i)); i++) {
+            pageNb = pageNb * 10 + (line.charAt(i) - '0');
+        }
+        return i > 0 && i < line.length() && line.charAt(i) == ';' ? pageNb : -1;
+    }
+
+    private static void concatenate(List<File> files, File target) throws IOException
+    {
+        File part = new File(target.getPath() + ".part");
+        OutputStream out = Files.newOutputStream(part.toPath());
+        boolean complete = false;
+        try {
+            for (File file : files) {
+                Files.copy(file.toPath(), out);
+            }
+            out.close();
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        }
+        finally {
+            if (complete == false) {
+                out.close();
+                part.delete();
+            }
+        }
+    }
+
+    private static Properties load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = Files.newInputStream(file.toPath());
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws IOException
+    {
+        OutputStream out = Files.newOutputStream(file.toPath());
+        try {
+            properties.store(out, null);
+        }
+        finally {
+            out.close();
+        }
+    }
+}
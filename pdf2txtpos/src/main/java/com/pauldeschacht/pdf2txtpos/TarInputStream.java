@@ -0,0 +1,261 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the files of a TAR archive one after the other, like ZipInputStream: getNextEntry() moves to the
+ * next regular file and read() returns its content.
+ *
+ * Understands the ustar and GNU headers, the GNU long names and the pax path records, which covers the
+ * archives of tar and of the common libraries. Directories, links and devices are skipped.
+ */
+public class TarInputStream extends FilterInputStream
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BLOCK = 512;
+
+    private final byte[] _header = new byte[BLOCK];
+    private long _remaining = 0;
+    private long _padding = 0;
+    private long _size = 0;
+
+    public TarInputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    /**
+     * Move to the next regular file.
+     * @return its path in the archive, null at the end of the archive
+     */
+    public String getNextEntry() throws IOException
+    {
+        skipFully(_remaining + _padding);
+        _remaining = 0;
+        _padding = 0;
+        String longName = null;
+        while (true) {
+            if (readBlock() == false || isZero(_header)) {
+                return null;
+            }
+            long size = octal(_header, 124, 12);
+            char type = (char)_header[156];
+            String name = longName != null ? longName : headerName();
+            longName = null;
+            long padding = (BLOCK - size % BLOCK) % BLOCK;
+            if (type == 'L') {
+                // GNU: the name of the next entry
+                longName = trimNul(new String(readData(size), UTF8));
+                skipFully(padding);
+            }
+            else if (type == 'x') {
+                // pax: records "length key=value\n" of the next entry
+                String path = paxPath(readData(size));
+                skipFully(padding);
+                if (path != null) {
+                    longName = path;
+                }
+            }
+            else if (type == '0' || type == '\0' || type == '7') {
+                _size = size;
+                _remaining = size;
+                _padding = padding;
+                return name;
+            }
+            else {
+                skipFully(size + padding);
+            }
+        }
+    }
+
+    /**
+     * Size of the current file.
+     */
+    public long getSize()
+    {
+        return _size;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (_remaining <= 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated TAR archive");
+        }
+        _remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (_remaining <= 0) {
+            return -1;
+        }
+        int n = in.read(b, off, (int)Math.min(len, _remaining));
+        if (n < 0) {
+            throw new EOFException("Truncated TAR archive");
+        }
+        _remaining -= n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long skipped = Math.min(n, _remaining);
+        skipFully(skipped);
+        _remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return (int)Math.min(in.available(), _remaining);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    private String headerName()
+    {
+        String name = trimNul(new String(_header, 0, 100, UTF8));
+        // ustar splits long paths in a prefix and a name
+        if ("ustar".equals(new String(_header, 257, 5, UTF8)) && _header[345] != 0) {
+            name = trimNul(new String(_header, 345, 155, UTF8)) + "/" + name;
+        }
+        return name;
+    }
+
+    private static String paxPath(byte[] records)
+    {
+        String path = null;
+        int pos = 0;
+        while (pos < records.length) {
+            int space = pos;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(records, pos, space - pos, UTF8));
+            }
+            catch (NumberFormatException e) {
+                break;
+            }
+            if (length <= 0 || pos + length > records.length) {
+                break;
+            }
+            String record = new String(records, space + 1, pos + length - space - 2, UTF8);
+            if (record.startsWith("path=")) {
+                path = record.substring(5);
+            }
+            pos += length;
+        }
+        return path;
+    }
+
+    private byte[] readData(long size) throws IOException
+    {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("TAR header of " + size + " bytes");
+        }
+        byte[] data = new byte[(int)size];
+        readFully(data);
+        return data;
+    }
+
+    private boolean readBlock() throws IOException
+    {
+        int n = 0;
+        while (n < BLOCK) {
+            int r = in.read(_header, n, BLOCK - n);
+            if (r < 0) {
+                if (n == 0) {
+                    // no end of archive blocks
+                    return false;
+                }
+                throw new EOFException("Truncated TAR archive");
+            }
+            n += r;
+        }
+        return true;
+    }
+
+    private void readFully(byte[] data) throws IOException
+    {
+        int n = 0;
+        while (n < data.length) {
+            int r = in.read(data, n, data.length - n);
+            if (r < 0) {
+                throw new EOFException("Truncated TAR archive");
+            }
+            n += r;
+        }
+    }
+
+    private void skipFully(long n) throws IOException
+    {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated TAR archive");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static long octal(byte[] header, int offset, int length)
+    {
+        if ((header[offset] & 0x80) != 0) {
+            // GNU base-256 for the files of 8 GB and more
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') {
+                value = value * 8 + (b - '0');
+            }
+            else if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private static boolean isZero(byte[] block)
+    {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String trimNul(String s)
+    {
+        int nul = s.indexOf('\0');
+        return nul >= 0 ? s.substring(0, nul) : s;
+    }
+}
@@ -0,0 +1,191 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.cos.COSStream;
+
+/**
+ * Time and work budget of a document and of each of its pages.
+ *
+ * The engines call checkOperator() before every operator, so a page that runs too long or executes too many
+ * operators stops at the next operator, and enterStream() before every content stream, so a form XObject
+ * that draws itself, directly or through other forms, or that nests too deep is skipped instead of recursing
+ * until the stack overflows. The check is cooperative: a single operator that never returns is not interrupted.
+ * An exceeded budget is sticky: every later check throws it again until the next page (or for the rest of the
+ * document when the document is over its budget), so it is not lost when PDFBox swallows the exception.
+ *
+ * A watchdog is used by one thread at a time. Between two threads, for example while a document waits in
+ * the queue of the next stage of a pipeline, the watchdog is paused so that only the processing time counts.
+ */
+public class Watchdog
+{
+    private static final Log LOG = LogFactory.getLog(Watchdog.class);
+
+    public static final int MAX_FORM_DEPTH = 32;
+
+    private final long _pageBudget;
+    private final long _maxOperators;
+    private long _documentDeadline;
+    private long _pageDeadline;
+    // when the watchdog was paused, 0 when it runs
+    private long _pausedAt = 0;
+    private BudgetExceededException _exceeded = null;
+    private long _operators;
+    private Map<COSStream, Boolean> _streams = new IdentityHashMap<COSStream, Boolean>();
+    private OperatorProfile _profile = null;
+
+    /**
+     * @param documentMillis time budget of the document, 0 is unlimited
+     * @param pageMillis time budget of each pass (text, grid) over a page, 0 is unlimited
+     * @param maxOperators number of operators of each pass over a page, 0 is unlimited
+     */
+    public Watchdog(long documentMillis, long pageMillis, long maxOperators)
+    {
+        _documentDeadline = documentMillis > 0 ? System.nanoTime() + documentMillis * 1000000L : Long.MAX_VALUE;
+        _pageBudget = pageMillis * 1000000L;
+        _maxOperators = maxOperators;
+        startPage();
+    }
+
+    /**
+     * Start the budget of a pass over a page.
+     */
+    public void startPage()
+    {
+        _operators = 0;
+        if (_exceeded != null && _exceeded.isDocument() == false) {
+            _exceeded = null;
+        }
+        _pageDeadline = _documentDeadline;
+        if (_pageBudget > 0) {
+            _pageDeadline = Math.min(_documentDeadline, System.nanoTime() + _pageBudget);
+        }
+        _streams.clear();
+    }
+
+    /**
+     * Stop counting the time until resume().
+     */
+    public void pause()
+    {
+        if (_pausedAt == 0) {
+            _pausedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Count the time again, the deadlines are moved by the time the watchdog was paused.
+     */
+    public void resume()
+    {
+        if (_pausedAt == 0) {
+            return;
+        }
+        long paused = System.nanoTime() - _pausedAt;
+        _pausedAt = 0;
+        if (_documentDeadline != Long.MAX_VALUE) {
+            _documentDeadline += paused;
+        }
+        if (_pageDeadline != Long.MAX_VALUE) {
+            _pageDeadline += paused;
+        }
+    }
+
+    /**
+     * Profile of the operators of the document, null when they are not profiled.
+     */
+    public OperatorProfile getProfile()
+    {
+        return _profile;
+    }
+
+    public void setProfile(OperatorProfile profile)
+    {
+        _profile = profile;
+    }
+
+    /**
+     * Operators of the current pass.
+     */
+    public long getOperators()
+    {
+        return _operators;
+    }
+
+    public void checkOperator() throws BudgetExceededException
+    {
+        checkExceeded();
+        _operators++;
+        if (_maxOperators > 0 && _operators > _maxOperators) {
+            exceeded(new BudgetExceededException("More than " + _maxOperators + " operators on the page", false));
+        }
+        if ((_operators & 0xff) == 0) {
+            checkTime();
+        }
+    }
+
+    public void checkTime() throws BudgetExceededException
+    {
+        checkExceeded();
+        if (Thread.currentThread().isInterrupted()) {
+            exceeded(new BudgetExceededException("Interrupted", true));
+        }
+        long now = System.nanoTime();
+        if (now > _documentDeadline) {
+            exceeded(new BudgetExceededException("Document time budget exceeded", true));
+        }
+        if (now > _pageDeadline) {
+            exceeded(new BudgetExceededException("Page time budget exceeded", false));
+        }
+    }
+
+    /**
+     * Throw the budget that was already exceeded, in case the exception was swallowed on its way up.
+     */
+    public void checkExceeded() throws BudgetExceededException
+    {
+        if (_exceeded != null) {
+            throw _exceeded;
+        }
+    }
+
+    /**
+     * End of a pass over a page: the budget exceeded during the pass, and the time of its last operators,
+     * which are only timed every 256 operators.
+     */
+    public void endPage() throws BudgetExceededException
+    {
+        checkTime();
+    }
+
+    private void exceeded(BudgetExceededException e) throws BudgetExceededException
+    {
+        _exceeded = e;
+        throw e;
+    }
+
+    /**
+     * false when the stream must be skipped: it is already being processed (recursive form) or the forms nest too deep.
+     */
+    public boolean enterStream(COSStream stream) throws BudgetExceededException
+    {
+        checkTime();
+        if (_streams.containsKey(stream)) {
+            LOG.warn("Skipped a form XObject that draws itself");
+            return false;
+        }
+        if (_streams.size() >= MAX_FORM_DEPTH) {
+            LOG.warn("Skipped a form XObject nested deeper than " + MAX_FORM_DEPTH);
+            return false;
+        }
+        _streams.put(stream, Boolean.TRUE);
+        return true;
+    }
+
+    public void exitStream(COSStream stream)
+    {
+        _streams.remove(stream);
+    }
+}
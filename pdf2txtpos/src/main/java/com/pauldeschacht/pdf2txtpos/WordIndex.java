@@ -0,0 +1,420 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Static spatial index over the words of a single page.
+ *
+ * The bounding box of the words is divided in a uniform grid of cells of about the size of an average word.
+ * Each word is registered in every cell it touches. The cells are packed in two arrays (offsets and word ids),
+ * so the index is built once and is never modified afterwards.
+ *
+ * The index of all the pages of a document can be written next to the .info file (.idx) and read back without
+ * extracting the PDF again.
+ */
+public class WordIndex
+{
+    private static final int MAGIC = 0x50325449; // P2TI
+    private static final int VERSION = 1;
+
+    protected int _pageNb;
+    protected WordPosition[] _words;
+    protected float _minx, _miny, _maxx, _maxy;
+    protected float _cellWidth, _cellHeight;
+    protected int _cols, _rows;
+    // words of cell c are _cellWords[_cellStart[c]] .. _cellWords[_cellStart[c+1]-1]
+    protected int[] _cellStart;
+    protected int[] _cellWords;
+
+    private WordIndex()
+    {
+    }
+
+    public static WordIndex build(int pageNb, List<WordPosition> words)
+    {
+        WordIndex index = new WordIndex();
+        index._pageNb = pageNb;
+        index._words = words.toArray(new WordPosition[0]);
+        index.layout();
+        index.fill();
+        return index;
+    }
+
+    public int getPageNb() { return _pageNb; }
+
+    public List<WordPosition> getWords()
+    {
+        List<WordPosition> result = new ArrayList<WordPosition>(_words.length);
+        Collections.addAll(result, _words);
+        return result;
+    }
+
+    private void layout()
+    {
+        int n = _words.length;
+        if (n == 0) {
+            _minx = _miny = _maxx = _maxy = 0;
+            _cellWidth = _cellHeight = 1;
+            _cols = _rows = 1;
+            return;
+        }
+        _minx = Float.MAX_VALUE;
+        _miny = Float.MAX_VALUE;
+        _maxx = -Float.MAX_VALUE;
+        _maxy = -Float.MAX_VALUE;
+        float sumWidth = 0;
+        float sumHeight = 0;
+        for (WordPosition word : _words) {
+            _minx = Math.min(_minx, word.x1());
+            _miny = Math.min(_miny, word.y1());
+            _maxx = Math.max(_maxx, word.x2());
+            _maxy = Math.max(_maxy, word.y2());
+            sumWidth += word.x2() - word.x1();
+            sumHeight += word.y2() - word.y1();
+        }
+        _cellWidth = Math.max(1f, sumWidth / n);
+        _cellHeight = Math.max(1f, sumHeight / n);
+        _cols = (int)((_maxx - _minx) / _cellWidth) + 1;
+        _rows = (int)((_maxy - _miny) / _cellHeight) + 1;
+        // keep the number of cells in proportion with the number of words
+        while ((long)_cols * _rows > 4L * n + 16) {
+            _cellWidth *= 2;
+            _cellHeight *= 2;
+            _cols = (int)((_maxx - _minx) / _cellWidth) + 1;
+            _rows = (int)((_maxy - _miny) / _cellHeight) + 1;
+        }
+    }
+
+    private void fill()
+    {
+        int cells = _cols * _rows;
+        _cellStart = new int[cells + 1];
+        for (WordPosition word : _words) {
+            for (int r = row(word.y1()); r <= row(word.y2()); r++) {
+                for (int c = col(word.x1()); c <= col(word.x2()); c++) {
+                    _cellStart[r * _cols + c + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < cells; i++) {
+            _cellStart[i+1] += _cellStart[i];
+        }
+        _cellWords = new int[_cellStart[cells]];
+        int[] next = new int[cells];
+        System.arraycopy(_cellStart, 0, next, 0, cells);
+        for (int w = 0; w < _words.length; w++) {
+            WordPosition word = _words[w];
+            for (int r = row(word.y1()); r <= row(word.y2()); r++) {
+                for (int c = col(word.x1()); c <= col(word.x2()); c++) {
+                    _cellWords[next[r * _cols + c]++] = w;
+                }
+            }
+        }
+    }
+
+    private int col(float x)
+    {
+        int c = (int)((x - _minx) / _cellWidth);
+        return Math.max(0, Math.min(_cols - 1, c));
+    }
+
+    private int row(float y)
+    {
+        int r = (int)((y - _miny) / _cellHeight);
+        return Math.max(0, Math.min(_rows - 1, r));
+    }
+
+    /**
+     * The words whose bounding box touches the rectangle (x1,y1)-(x2,y2)
+     */
+    public List<WordPosition> intersecting(float x1, float y1, float x2, float y2)
+    {
+        return query(Math.min(x1,x2), Math.min(y1,y2), Math.max(x1,x2), Math.max(y1,y2), false);
+    }
+
+    /**
+     * The words whose bounding box is completely inside the rectangle (x1,y1)-(x2,y2)
+     */
+    public List<WordPosition> within(float x1, float y1, float x2, float y2)
+    {
+        return query(Math.min(x1,x2), Math.min(y1,y2), Math.max(x1,x2), Math.max(y1,y2), true);
+    }
+
+    private List<WordPosition> query(float x1, float y1, float x2, float y2, boolean inside)
+    {
+        List<WordPosition> result = new ArrayList<WordPosition>();
+        if (_words.length == 0 || x1 > _maxx || x2 < _minx || y1 > _maxy || y2 < _miny) {
+            return result;
+        }
+        BitSet seen = new BitSet(_words.length);
+        for (int r = row(y1); r <= row(y2); r++) {
+            for (int c = col(x1); c <= col(x2); c++) {
+                int cell = r * _cols + c;
+                for (int i = _cellStart[cell]; i < _cellStart[cell+1]; i++) {
+                    int w = _cellWords[i];
+                    if (seen.get(w)) {
+                        continue;
+                    }
+                    seen.set(w);
+                    WordPosition word = _words[w];
+                    boolean match = inside ?
+                        (word.x1() >= x1 && word.x2() <= x2 && word.y1() >= y1 && word.y2() <= y2) :
+                        (word.x1() <= x2 && word.x2() >= x1 && word.y1() <= y2 && word.y2() >= y1);
+                    if (match) {
+                        result.add(word);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The word closest to the point (x,y), the distance is measured to the bounding box of the word.
+     * @return null when the page has no words
+     */
+    public WordPosition nearest(float x, float y)
+    {
+        if (_words.length == 0) {
+            return null;
+        }
+        int c0 = col(x);
+        int r0 = row(y);
+        WordPosition best = null;
+        double bestDistance = Double.MAX_VALUE;
+        int maxRing = Math.max(_cols, _rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // all cells of this ring are at least this far from the point
+            double ringDistance = Math.max(0, ring - 1) * Math.min(_cellWidth, _cellHeight);
+            if (best != null && ringDistance > bestDistance) {
+                break;
+            }
+            for (int r = r0 - ring; r <= r0 + ring; r++) {
+                if (r < 0 || r >= _rows) {
+                    continue;
+                }
+                for (int c = c0 - ring; c <= c0 + ring; c++) {
+                    if (c < 0 || c >= _cols) {
+                        continue;
+                    }
+                    if (Math.abs(r - r0) != ring && Math.abs(c - c0) != ring) {
+                        continue;
+                    }
+                    int cell = r * _cols + c;
+                    for (int i = _cellStart[cell]; i < _cellStart[cell+1]; i++) {
+                        WordPosition word = _words[_cellWords[i]];
+                        double d = distance(word, x, y);
+                        if (d < bestDistance) {
+                            bestDistance = d;
+                            best = word;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static double distance(WordPosition word, float x, float y)
+    {
+        double dx = Math.max(0, Math.max(word.x1() - x, x - word.x2()));
+        double dy = Math.max(0, Math.max(word.y1() - y, y - word.y2()));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * The words on the same line as the given word (the vertical overlap is at least half of the smallest height),
+     * sorted from left to right. The word itself is included.
+     */
+    public List<WordPosition> sameLine(WordPosition word)
+    {
+        List<WordPosition> result = new ArrayList<WordPosition>();
+        for (WordPosition other : intersecting(_minx, word.y1(), _maxx, word.y2())) {
+            float overlap = Math.min(word.y2(), other.y2()) - Math.max(word.y1(), other.y1());
+            float height = Math.min(word.height(), other.height());
+            if (overlap >= height / 2) {
+                result.add(other);
+            }
+        }
+        Collections.sort(result, new Comparator<WordPosition>() {
+            public int compare(WordPosition w1, WordPosition w2) {
+                return Float.compare(w1.x1(), w2.x1());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The words on the same line that start after the end of the given word, sorted from left to right.
+     */
+    public List<WordPosition> rightOf(WordPosition word)
+    {
+        List<WordPosition> result = new ArrayList<WordPosition>();
+        for (WordPosition other : sameLine(word)) {
+            if (other != word && other.x1() >= word.x2()) {
+                result.add(other);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The words with the given text, for instance to locate a label.
+     */
+    public List<WordPosition> find(String text)
+    {
+        List<WordPosition> result = new ArrayList<WordPosition>();
+        for (WordPosition word : _words) {
+            if (text.equals(word.word())) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(_pageNb);
+        out.writeInt(_words.length);
+        for (WordPosition word : _words) {
+            out.writeUTF(word.word());
+            out.writeFloat(word.x1());
+            out.writeFloat(word.y1());
+            out.writeFloat(word.x2());
+            out.writeFloat(word.y2());
+            out.writeInt(word.getLineNb());
+            out.writeBoolean(word.getRegion() != null);
+            if (word.getRegion() != null) {
+                out.writeUTF(word.getRegion());
+            }
+        }
+        out.writeFloat(_minx);
+        out.writeFloat(_miny);
+        out.writeFloat(_maxx);
+        out.writeFloat(_maxy);
+        out.writeFloat(_cellWidth);
+        out.writeFloat(_cellHeight);
+        out.writeInt(_cols);
+        out.writeInt(_rows);
+        for (int start : _cellStart) {
+            out.writeInt(start);
+        }
+        for (int w : _cellWords) {
+            out.writeInt(w);
+        }
+    }
+
+    public static WordIndex read(DataInputStream in) throws IOException
+    {
+        WordIndex index = new WordIndex();
+        index._pageNb = in.readInt();
+        index._words = new WordPosition[in.readInt()];
+        for (int i = 0; i < index._words.length; i++) {
+            WordPosition word = new WordPosition();
+            word.setWord(in.readUTF());
+            float x1 = in.readFloat();
+            float y1 = in.readFloat();
+            float x2 = in.readFloat();
+            float y2 = in.readFloat();
+            word.setRectangle(x1, y1, x2, y2);
+            word.setLineNb(in.readInt());
+            if (in.readBoolean()) {
+                word.setRegion(in.readUTF());
+            }
+            index._words[i] = word;
+        }
+        index._minx = in.readFloat();
+        index._miny = in.readFloat();
+        index._maxx = in.readFloat();
+        index._maxy = in.readFloat();
+        index._cellWidth = in.readFloat();
+        index._cellHeight = in.readFloat();
+        index._cols = in.readInt();
+        index._rows = in.readInt();
+        index._cellStart = new int[index._cols * index._rows + 1];
+        for (int i = 0; i < index._cellStart.length; i++) {
+            index._cellStart[i] = in.readInt();
+        }
+        index._cellWords = new int[index._cellStart[index._cellStart.length - 1]];
+        for (int i = 0; i < index._cellWords.length; i++) {
+            index._cellWords[i] = in.readInt();
+        }
+        return index;
+    }
+
+    /**
+     * Write the indexes of the pages of a document in a single file.
+     */
+    public static void writeAll(File file, List<WordIndex> indexes) throws IOException
+    {
+        // written next to the target and renamed, a reader never sees a partial index
+        File part = new File(file.getPath() + ".part");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(part));
+        try {
+            writeAll(out, indexes);
+        }
+        catch (IOException e) {
+            out.close();
+            part.delete();
+            throw e;
+        }
+        out.close();
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the indexes of the pages of a document to a stream, which is flushed but not closed.
+     */
+    public static void writeAll(OutputStream stream, List<WordIndex> indexes) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(indexes.size());
+        for (WordIndex index : indexes) {
+            index.write(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read the indexes written by writeAll.
+     * @return the index of each page, by page number
+     */
+    public static Map<Integer, WordIndex> readAll(File file) throws IOException
+    {
+        Map<Integer, WordIndex> indexes = new TreeMap<Integer, WordIndex>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a word index");
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                WordIndex index = read(in);
+                indexes.put(index.getPageNb(), index);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return indexes;
+    }
+}
@@ -11,6 +11,7 @@ public class WordPosition
     protected float _fontSize;
     protected PDFont _font;
     protected float _spaceWidth;
+    protected String _region;
     
     protected float _dir;
     
@@ -88,6 +89,9 @@ public class WordPosition
     public float getSpaceWidth() { return _spaceWidth; }
     
     
+    public void setRegion(String region) { _region = region; }
+    public String getRegion() { return _region; }
+    
     public void fontName(String fontName) { _fontName = fontName; }
     public String fontName() { return _fontName; }
     public void fontSize(float fontSize) { _fontSize = fontSize; }
@@ -98,14 +102,27 @@ public class WordPosition
     }
     public String toString(String sep) 
     {
-	return _fontName + sep +
-            _fontSize + sep + 
-            _spaceWidth + sep + 
-Float.toString(_x1) + sep + 
-                Float.toString(_x2) + sep + 
-                Float.toString(_y1) + sep + 
-                Float.toString(_y2) + sep + 
-                _word;
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb, sep, -1);
+        return sb.toString();
+    }
+    /**
+     * Append the fields of toString(sep) to sb.
+     * With precision >= 0 the numbers have that many decimals (see FixedPrecision), otherwise they are written as Float.toString.
+     */
+    public void appendTo(StringBuilder sb, String sep, int precision)
+    {
+        sb.append(_fontName).append(sep);
+        FixedPrecision.append(sb, _fontSize, precision).append(sep);
+        FixedPrecision.append(sb, _spaceWidth, precision).append(sep);
+        FixedPrecision.append(sb, _x1, precision).append(sep);
+        FixedPrecision.append(sb, _x2, precision).append(sep);
+        FixedPrecision.append(sb, _y1, precision).append(sep);
+        FixedPrecision.append(sb, _y2, precision).append(sep);
+        sb.append(_word);
+        if (_region != null) {
+            sb.append(sep).append(_region);
+        }
     }
     
     public void merge(WordPosition other) {
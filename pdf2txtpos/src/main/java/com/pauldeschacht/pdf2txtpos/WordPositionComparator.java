@@ -12,15 +12,28 @@ import java.util.Comparator;
  */
 
 public class WordPositionComparator implements Comparator<WordPosition> {
-    public static float DELTA = 0.00001f;
+    public static final float DELTA = 0.00001f;
+
+    private final float _delta;
+
+    public WordPositionComparator() {
+        this(DELTA);
+    }
+
+    /**
+     * @param delta words whose bottom lines are closer than delta are on the same line
+     */
+    public WordPositionComparator(float delta) {
+        _delta = delta;
+    }
     
     public int compare(WordPosition wp1, WordPosition wp2) {
 
         float dy = wp1.y2() - wp2.y2();     //check bottom line
-        if(Math.abs(dy) < DELTA) {
+        if(Math.abs(dy) < _delta) {
             //same line
             float dx = wp1.x1() - wp2.x1();
-            if(Math.abs(dx) < DELTA) {
+            if(Math.abs(dx) < _delta) {
                 return 0; //should not happen
             }
             if (dx < 0) {
@@ -0,0 +1,328 @@
+/**
+ * Lean alternative to PDFWordPositionStripper.
+ *
+ * This engine is a direct PDFStreamEngine and only registers the text operators (Tj, TJ, ', ", Tf, Td, ...).
+ * The words are built incrementally while the glyphs arrive from the show-text operators: a word is closed
+ * as soon as the next glyph starts a new line, jumps back, leaves a gap wider than a space or is a space itself.
+ * Contrary to PDFTextStripper, there are no article beads, no sorting of the page and no TextPositions
+ * kept for the whole page, only the glyphs of the current line are remembered to drop overlapping duplicates.
+ *
+ * The text is taken in the order of the content stream, right to left text is not reordered.
+ */
+
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.util.PDFOperator;
+import org.apache.pdfbox.util.PDFStreamEngine;
+import org.apache.pdfbox.util.ResourceLoader;
+import org.apache.pdfbox.util.TextNormalize;
+import org.apache.pdfbox.util.TextPosition;
+
+public class WordPositionStreamEngine extends PDFStreamEngine
+{
+    // same value as the default spacing tolerance of PDFTextStripper
+    private static final float SPACING_TOLERANCE = 0.5f;
+
+    private static final float ENDOFLASTTEXTX_RESET_VALUE = -1;
+    private static final float MAXYFORLINE_RESET_VALUE = -Float.MAX_VALUE;
+    private static final float MAXHEIGHTFORLINE_RESET_VALUE = -1;
+    private static final float LASTWORDSPACING_RESET_VALUE = -1;
+
+    protected List<WordPosition> _wordPositions;
+
+    private TextNormalize normalize;
+    private Map<PDFont,Map<Float,Float>> _fontMap;
+    private List<Region> _regions = null;
+    protected Watchdog _watchdog = null;
+
+    /**
+     * state of the current line
+     */
+    private float _maxYForLine;
+    private float _maxHeightForLine;
+    private float _endOfLastTextX;
+    private float _lastWordSpacing;
+    private List<TextPosition> _lineGlyphs;
+
+    /**
+     * state of the current word
+     */
+    private StringBuilder _word;
+    private TextPosition _firstGlyph;
+    private TextPosition _lastGlyph;
+    private int _glyphs = 0;
+
+    public WordPositionStreamEngine() throws IOException
+    {
+        super( ResourceLoader.loadProperties("org/apache/pdfbox/resources/PDFTextStripper.properties", true ) );
+        _fontMap = new HashMap<PDFont,Map<Float,Float>>();
+        normalize = new TextNormalize(null);
+        _wordPositions = new ArrayList<WordPosition>();
+        _lineGlyphs = new ArrayList<TextPosition>();
+        _word = new StringBuilder();
+    }
+
+    public List<WordPosition> getWordPositions()
+    {
+        return _wordPositions;
+    }
+
+    /**
+     * Number of glyphs of the last page, after the regions and without the duplicates.
+     */
+    public int getGlyphCount()
+    {
+        return _glyphs;
+    }
+
+    /**
+     * Restrict the extraction to the given regions, null extracts the whole page.
+     */
+    public void setRegions(List<Region> regions)
+    {
+        _regions = regions;
+    }
+
+    /**
+     * Budget of the current page, null is unlimited.
+     */
+    public void setWatchdog(Watchdog watchdog)
+    {
+        _watchdog = watchdog;
+    }
+
+    @Override
+    protected void processOperator(PDFOperator operator, List<COSBase> arguments) throws IOException
+    {
+        OperatorProfile profile = null;
+        if (_watchdog != null) {
+            _watchdog.checkOperator();
+            profile = _watchdog.getProfile();
+        }
+        if (profile == null) {
+            super.processOperator(operator, arguments);
+        }
+        else {
+            profile.enter();
+            try {
+                super.processOperator(operator, arguments);
+            }
+            finally {
+                profile.exit(OperatorProfile.TEXT, operator.getOperation());
+            }
+        }
+        if (_watchdog != null) {
+            // PDFStreamEngine logs and swallows the exceptions of an operator, also of a Do whose form ran out of budget
+            _watchdog.checkExceeded();
+        }
+    }
+
+    @Override
+    public void processSubStream(PDPage aPage, PDResources resources, COSStream cosStream) throws IOException
+    {
+        if (_watchdog != null && _watchdog.enterStream(cosStream) == false) {
+            return;
+        }
+        try {
+            super.processSubStream(aPage, resources, cosStream);
+        }
+        finally {
+            if (_watchdog != null) {
+                _watchdog.exitStream(cosStream);
+            }
+        }
+    }
+
+    /**
+     * Extract the words of a single page. The words of previous pages are discarded.
+     */
+    public void processPage(PDPage page) throws IOException
+    {
+        resetEngine();
+        _wordPositions = new ArrayList<WordPosition>();
+        _glyphs = 0;
+        resetLine();
+        resetWord();
+        if (page.getContents() != null) {
+            processStream(page, page.findResources(), page.getContents().getStream());
+        }
+        endWord();
+    }
+
+    protected void processTextPosition(TextPosition position)
+    {
+        String characterValue = position.getCharacter();
+        if (characterValue == null) {
+            return;
+        }
+        if (_regions != null && RegionTemplate.accept(_regions, position) == false) {
+            return;
+        }
+        if (isDuplicate(position)) {
+            return;
+        }
+        _glyphs++;
+
+        float positionX = position.getXDirAdj();
+        float positionY = position.getYDirAdj();
+        float positionWidth = position.getWidthDirAdj();
+        float positionHeight = position.getHeightDir();
+
+        if (_endOfLastTextX != ENDOFLASTTEXTX_RESET_VALUE) {
+            if (!overlap(positionY, positionHeight, _maxYForLine, _maxHeightForLine)) {
+                // new line
+                endWord();
+                resetLine();
+            }
+            else if (positionX < _lastGlyph.getXDirAdj()) {
+                // the content stream jumps back on the same line
+                endWord();
+            }
+            else if (positionX > expectedStartOfNextWord(position)) {
+                endWord();
+            }
+        }
+
+        if (characterValue.endsWith(" ")) {
+            endWord();
+        }
+        else {
+            if (_firstGlyph == null) {
+                _firstGlyph = position;
+            }
+            _lastGlyph = position;
+            _word.append(characterValue);
+        }
+        if (_lastGlyph == null) {
+            _lastGlyph = position;
+        }
+
+        _maxYForLine = Math.max(_maxYForLine, positionY);
+        _maxHeightForLine = Math.max(_maxHeightForLine, positionHeight);
+        _endOfLastTextX = positionX + positionWidth;
+        _lastWordSpacing = position.getWidthOfSpace();
+        _lineGlyphs.add(position);
+    }
+
+    /**
+     * Same estimation as PDFTextStripper: the smallest of the space width of the font and the word spacing
+     */
+    private float expectedStartOfNextWord(TextPosition position)
+    {
+        float wordSpacing = position.getWidthOfSpace();
+        float deltaSpace;
+        if (wordSpacing == 0 || Float.isNaN(wordSpacing)) {
+            deltaSpace = Float.MAX_VALUE;
+        }
+        else if (_lastWordSpacing < 0) {
+            deltaSpace = wordSpacing * SPACING_TOLERANCE;
+        }
+        else {
+            deltaSpace = ((wordSpacing + _lastWordSpacing) / 2f) * SPACING_TOLERANCE;
+        }
+        float deltaCharWidth = getSpaceWidthForFont(position.getFont(), position.getFontSize());
+        return _endOfLastTextX + Math.min(deltaSpace, deltaCharWidth);
+    }
+
+    /**
+     * Some PDF generators draw the same text twice (fake bold). Only the glyphs of the current line are checked.
+     */
+    private boolean isDuplicate(TextPosition position)
+    {
+        String c = position.getCharacter();
+        float tolerance = position.getWidth() / (float)c.length() / 3.0f;
+        for (TextPosition glyph : _lineGlyphs) {
+            if (c.equals(glyph.getCharacter()) &&
+                within(glyph.getX(), position.getX(), tolerance) &&
+                within(glyph.getY(), position.getY(), tolerance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void endWord()
+    {
+        if (_firstGlyph != null) {
+            String s = normalize.normalizePres(_word.toString());
+            float x1 = _firstGlyph.getXDirAdj();
+            float y1 = _firstGlyph.getYDirAdj();
+            float x2 = _lastGlyph.getXDirAdj() + _lastGlyph.getWidthDirAdj();
+            float y2 = _lastGlyph.getYDirAdj() + _lastGlyph.getHeightDir();
+
+            WordPosition wordPosition = new WordPosition();
+            wordPosition.setWord(s);
+            wordPosition.setRectangle(x1, y1, x2, y2);
+            wordPosition.fontName(_firstGlyph.getFont().getBaseFont());
+            wordPosition.fontSize(_firstGlyph.getFontSize());
+            wordPosition.setPDFont(_firstGlyph.getFont());
+            wordPosition.setSpaceWidth(getSpaceWidthForFont(_firstGlyph.getFont(), _firstGlyph.getFontSize()));
+            wordPosition.trimSpaces();
+            if (_firstGlyph.getDir() == 0) {
+                _wordPositions.add(wordPosition);
+            }
+        }
+        resetWord();
+    }
+
+    private void resetWord()
+    {
+        _word.setLength(0);
+        _firstGlyph = null;
+    }
+
+    private void resetLine()
+    {
+        _maxYForLine = MAXYFORLINE_RESET_VALUE;
+        _maxHeightForLine = MAXHEIGHTFORLINE_RESET_VALUE;
+        _endOfLastTextX = ENDOFLASTTEXTX_RESET_VALUE;
+        _lastWordSpacing = LASTWORDSPACING_RESET_VALUE;
+        _lastGlyph = null;
+        _lineGlyphs.clear();
+    }
+
+    protected boolean overlap( float y1, float height1, float y2, float height2 )
+    {
+        return within( y1, y2, .1f) || (y2 <= y1 && y2 >= y1-height1) ||
+            (y1 <= y2 && y1 >= y2-height2);
+    }
+
+    protected boolean within( float first, float second, float variance )
+    {
+        return second < first + variance && second > first - variance;
+    }
+
+    /**
+     * The cached space widths refer to the fonts of the current document.
+     */
+    public void clearFontCache() {
+        _fontMap.clear();
+    }
+
+    private float getSpaceWidthForFont(PDFont font, float fontSize) {
+
+        if (_fontMap.containsKey(font)) {
+            if(_fontMap.get(font).containsKey(fontSize)) {
+                return _fontMap.get(font).get(fontSize);
+            }
+        }
+
+        float width = SpaceWidthStripper.measure(font, fontSize);
+        if (_fontMap.containsKey(font)==false) {
+            _fontMap.put(font, new HashMap<Float,Float>());
+        }
+        _fontMap.get(font).put(fontSize,width);
+        return width;
+    }
+}
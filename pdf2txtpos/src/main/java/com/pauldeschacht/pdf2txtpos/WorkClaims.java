@@ -0,0 +1,222 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Claims of the PDF files of a batch shared by several processes, without a coordinator.
+ *
+ * The claims live in a shared directory, one file per PDF named after the hash of its file name:
+ * - name.claim: the PDF is being processed by the worker written in the file. The claim is created as a hard
+ *   link to a private file, which is atomic and fails when the claim exists, also on NFS.
+ * - name.done: the PDF is finished, by this worker or another one, it is never claimed again.
+ *
+ * The worker touches its claims every heartbeat. A claim that was not touched for the timeout belongs to a
+ * dead worker: it is renamed away (only one worker succeeds) and claimed again. A worker that was only paused
+ * finds out with owns() before it writes its output, and drops the document.
+ */
+public class WorkClaims
+{
+    private static final Log LOG = LogFactory.getLog(WorkClaims.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Path _dir;
+    private final long _timeoutMillis;
+    private final String _worker;
+    private final Set<Path> _owned = new HashSet<Path>();
+    private final Timer _heartbeat;
+
+    /**
+     * @param dir shared directory of the claims, created when missing
+     * @param timeoutMillis claims without heartbeat for this long are taken over
+     */
+    public WorkClaims(Path dir, long timeoutMillis) throws IOException
+    {
+        _dir = dir;
+        _timeoutMillis = timeoutMillis;
+        // pid@host, plus the start time for a pid that is reused
+        _worker = ManagementFactory.getRuntimeMXBean().getName() + "-" + System.currentTimeMillis();
+        Files.createDirectories(dir);
+        long period = Math.max(1, timeoutMillis / 6);
+        _heartbeat = new Timer("pdf2txtpos-heartbeat", true);
+        _heartbeat.schedule(new TimerTask() {
+            public void run() {
+                heartbeat();
+            }
+        }, period, period);
+        LOG.info("Worker " + _worker + " claims from " + dir);
+    }
+
+    public String getWorker()
+    {
+        return _worker;
+    }
+
+    /**
+     * true when this worker now owns the PDF, false when it is done or claimed by a live worker.
+     */
+    public boolean claim(File pdf) throws IOException
+    {
+        String name = name(pdf);
+        Path claim = _dir.resolve(name + ".claim");
+        Path done = _dir.resolve(name + ".done");
+        if (Files.exists(done)) {
+            return false;
+        }
+        if (link(claim, pdf) == false) {
+            if (reclaim(claim) == false || link(claim, pdf) == false) {
+                return false;
+            }
+            LOG.warn("Took over the claim of " + pdf + " from a dead worker");
+        }
+        // finished between the check and the claim, the done file is created before the claim is removed
+        if (Files.exists(done)) {
+            Files.deleteIfExists(claim);
+            return false;
+        }
+        synchronized (_owned) {
+            _owned.add(claim);
+        }
+        return true;
+    }
+
+    /**
+     * true while the claim of the PDF still belongs to this worker.
+     */
+    public boolean owns(File pdf) throws IOException
+    {
+        Path claim = _dir.resolve(name(pdf) + ".claim");
+        try {
+            return new String(Files.readAllBytes(claim), UTF8).startsWith(_worker + "\n");
+        }
+        catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Give up the claim of the PDF.
+     * @param done the PDF is finished and no worker takes it again, otherwise another worker may retry it
+     */
+    public void release(File pdf, boolean done) throws IOException
+    {
+        String name = name(pdf);
+        Path claim = _dir.resolve(name + ".claim");
+        synchronized (_owned) {
+            _owned.remove(claim);
+        }
+        if (owns(pdf) == false) {
+            LOG.warn("Lost the claim of " + pdf + " to another worker");
+            return;
+        }
+        if (done) {
+            Files.write(_dir.resolve(name + ".done"), (_worker + "\n" + pdf + "\n").getBytes(UTF8));
+        }
+        Files.deleteIfExists(claim);
+    }
+
+    public void close()
+    {
+        _heartbeat.cancel();
+    }
+
+    private boolean link(Path claim, File pdf) throws IOException
+    {
+        Path mine = _dir.resolve(claim.getFileName() + "." + _worker + ".tmp");
+        Files.write(mine, (_worker + "\n" + pdf + "\n").getBytes(UTF8));
+        try {
+            Files.createLink(claim, mine);
+            return true;
+        }
+        catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        finally {
+            Files.deleteIfExists(mine);
+        }
+    }
+
+    /**
+     * Move a claim without heartbeat out of the way. false when the claim is alive or another worker was faster.
+     */
+    private boolean reclaim(Path claim) throws IOException
+    {
+        try {
+            if (isStale(claim) == false) {
+                return false;
+            }
+            Path stale = _dir.resolve(claim.getFileName() + "." + _worker + ".stale");
+            Files.move(claim, stale, StandardCopyOption.ATOMIC_MOVE);
+            if (isStale(stale)) {
+                Files.delete(stale);
+                return true;
+            }
+            // another worker reclaimed it between the check and the move, put its fresh claim back
+            try {
+                Files.createLink(claim, stale);
+            }
+            catch (FileAlreadyExistsException e) {
+                // the owner will find out with owns()
+            }
+            Files.delete(stale);
+            return false;
+        }
+        catch (NoSuchFileException e) {
+            // released or moved by another worker in the meantime, try again next time
+            return false;
+        }
+    }
+
+    private boolean isStale(Path claim) throws IOException
+    {
+        return System.currentTimeMillis() - Files.getLastModifiedTime(claim).toMillis() > _timeoutMillis;
+    }
+
+    private void heartbeat()
+    {
+        Path[] owned;
+        synchronized (_owned) {
+            owned = _owned.toArray(new Path[_owned.size()]);
+        }
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Path claim : owned) {
+            try {
+                Files.setLastModifiedTime(claim, now);
+            }
+            catch (IOException e) {
+                LOG.warn("Cannot renew the claim " + claim + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Claims are per file name, so that workers that mount the input directory elsewhere agree.
+     */
+    private static String name(File pdf)
+    {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return Manifest.hex(md.digest(pdf.getName().getBytes(UTF8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
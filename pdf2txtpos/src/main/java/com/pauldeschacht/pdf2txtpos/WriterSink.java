@@ -0,0 +1,73 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the pages to the .info and .csv writers, the format of the output files.
+ * The writers are flushed by their owner when it closes them, or after each page for a streamed output.
+ */
+public class WriterSink implements ExtractionSink
+{
+    private final Writer _txtposWriter;
+    private final Writer _gridWriter;
+    private final List<WordIndex> _indexes;
+    private final boolean _flush;
+
+    /**
+     * @param txtposWriter null drops the info lines
+     * @param gridWriter null drops the grids
+     * @param indexes when not null, the spatial index of each page with words is added to this list
+     */
+    public WriterSink(Writer txtposWriter, Writer gridWriter, List<WordIndex> indexes)
+    {
+        this(txtposWriter, gridWriter, indexes, false);
+    }
+
+    /**
+     * @param flush flush the writers after each page, so that a reader of stdout or of a response sees
+     *              the pages as they are extracted
+     */
+    public WriterSink(Writer txtposWriter, Writer gridWriter, List<WordIndex> indexes, boolean flush)
+    {
+        _txtposWriter = txtposWriter;
+        _gridWriter = gridWriter;
+        _indexes = indexes;
+        _flush = flush;
+    }
+
+    /**
+     * The info lines are kept without the page number, so that the same page can be cached for any position.
+     */
+    public void page(int pageNb, String info, String grid, WordIndex index) throws IOException
+    {
+        if (_txtposWriter != null) {
+            info(pageNb, info);
+        }
+        if (_indexes != null && index != null && index.getWords().isEmpty() == false) {
+            _indexes.add(index);
+        }
+        if (_gridWriter != null && grid.length() > 0) {
+            _gridWriter.write(grid);
+            if (_flush) {
+                _gridWriter.flush();
+            }
+        }
+    }
+
+    private void info(int pageNb, String info) throws IOException
+    {
+        String prefix = Integer.toString(pageNb) + ";";
+        int start = 0;
+        int end;
+        while ((end = info.indexOf('\n', start)) != -1) {
+            _txtposWriter.write(prefix);
+            _txtposWriter.write(info, start, end + 1 - start);
+            start = end + 1;
+        }
+        if (_flush) {
+            _txtposWriter.flush();
+        }
+    }
+}
@@ -121,7 +121,7 @@ public class Invoke extends OperatorProcessor
         }
         else if(xobject instanceof PDXObjectForm)
         {
-	    System.out.println("Invoke::PDXObjectForm");
+	    LOG.debug("Invoke::PDXObjectForm");
             // save the graphics state
             context.getGraphicsStack().push( (PDGraphicsState)context.getGraphicsState().clone() );
             
@@ -136,10 +136,16 @@ public class Invoke extends OperatorProcessor
                 Matrix xobjectCTM = matrix.multiply( context.getGraphicsState().getCurrentTransformationMatrix());
                 context.getGraphicsState().setCurrentTransformationMatrix(xobjectCTM);
             }
-            context.processSubStream( page, pdResources, formContentstream );
-            
-            // restore the graphics state
-            context.setGraphicsState( (PDGraphicsState)context.getGraphicsStack().pop() );
+            // the drawer skips forms that draw themselves or nest too deep (see Watchdog)
+            try
+            {
+                context.processSubStream( page, pdResources, formContentstream );
+            }
+            finally
+            {
+                // restore the graphics state, also when the page was aborted inside the form
+                context.setGraphicsState( (PDGraphicsState)context.getGraphicsStack().pop() );
+            }
         }
     }
 }
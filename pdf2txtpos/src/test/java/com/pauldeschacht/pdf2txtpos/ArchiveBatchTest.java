@@ -0,0 +1,105 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveBatchTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * A ZIP archive of a good, a damaged and a crashing PDF.
+     */
+    private File archive() throws IOException
+    {
+        File archive = new File(tmp.getRoot(), "batch.zip");
+        ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive.toPath()));
+        try {
+            put(zip, "a/good.pdf", Files.readAllBytes(TestPdfs.save(tmp.newFile(), TestPdfs.TABLE).toPath()));
+            put(zip, "damaged.pdf", "not a PDF".getBytes(UTF8));
+            put(zip, "crash.pdf", Files.readAllBytes(TestPdfs.crashing(tmp.newFile()).toPath()));
+            put(zip, "readme.txt", "not extracted".getBytes(UTF8));
+        }
+        finally {
+            zip.close();
+        }
+        return archive;
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] content) throws IOException
+    {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    @Test
+    public void quarantinesTheEntriesThatCrash() throws Exception
+    {
+        File archive = archive();
+        File output = new File(tmp.getRoot(), "out");
+        Quarantine quarantine = new Quarantine(new File(tmp.getRoot(), "quarantine").toPath());
+        ExtractionOptions options = ExtractionOptions.builder().quarantine(quarantine).build();
+        MemoryGovernor governor = new MemoryGovernor(0.5);
+        try {
+            ArchiveBatch batch = new ArchiveBatch(archive, output, 2, options);
+            batch.setGovernor(governor);
+            batch.run();
+            assertEquals(1, batch.getDocuments());
+            assertEquals(2, batch.getFailed());
+            // every entry gave its heap back
+            assertEquals(0, governor.getReserved());
+            assertEquals(0, governor.getRunning());
+        }
+        finally {
+            governor.stop();
+        }
+        assertTrue(new File(output, "a/good.info").exists());
+        assertFalse(new File(output, "crash.info").exists());
+        List<String> quarantined = Files.readAllLines(new File(tmp.getRoot(), "quarantine").toPath(), UTF8);
+        assertEquals(1, quarantined.size());
+        assertTrue(quarantined.get(0).contains("batch.zip!crash.pdf"));
+
+        // the next run skips the entry
+        ArchiveBatch batch = new ArchiveBatch(archive, output, 2, options);
+        batch.run();
+        assertEquals(1, batch.getDocuments());
+        assertEquals(1, batch.getFailed());
+    }
+
+    @Test
+    public void writesTheOutputIntoAZip() throws Exception
+    {
+        File archive = archive();
+        File output = ArchiveBatch.defaultOutput(archive);
+        assertEquals(new File(tmp.getRoot(), "batch.txtpos.zip"), output);
+        ArchiveBatch batch = new ArchiveBatch(archive, output, 1, ExtractionOptions.builder().verticalLines(true).build());
+        batch.run();
+        assertEquals(1, batch.getDocuments());
+        ZipFile zip = new ZipFile(output);
+        try {
+            assertTrue(zip.getEntry("a/good.info") != null);
+            assertTrue(zip.getEntry("a/good.csv") != null);
+            assertEquals(2, zip.size());
+        }
+        finally {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchJournalTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String OPTIONS = ExtractionOptions.DEFAULTS.cacheKey(null);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _file;
+    private Path _pdf;
+    private Map<String, Path> _outputs;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _file = tmp.getRoot().toPath().resolve(BatchJournal.JOURNAL_NAME);
+        _pdf = write("a.pdf", "%PDF-1.4 a");
+        _outputs = new LinkedHashMap<String, Path>();
+        _outputs.put("info", write("a.info", "1\t72\t700\tTotal\n"));
+        _outputs.put("csv", write("a.csv", "Total;42\n"));
+    }
+
+    private Path write(String name, String content) throws IOException
+    {
+        Path path = tmp.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(UTF8));
+        return path;
+    }
+
+    private Map<String, String> digests() throws IOException
+    {
+        Map<String, String> digests = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Path> kv : _outputs.entrySet()) {
+            digests.put(kv.getKey(), Manifest.digest(kv.getValue()));
+        }
+        return digests;
+    }
+
+    /**
+     * Whether a new run finds the document complete.
+     */
+    private boolean isComplete() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        try {
+            return journal.isComplete(_pdf, OPTIONS, _outputs);
+        }
+        finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void resumesACompletedDocument() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        assertFalse(journal.isComplete(_pdf, OPTIONS, _outputs));
+        journal.completed(_pdf, OPTIONS, digests());
+        assertTrue(journal.isComplete(_pdf, OPTIONS, _outputs));
+        journal.close();
+        assertTrue(isComplete());
+    }
+
+    @Test
+    public void redoesAChangedDocumentOrOutput() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        journal.close();
+
+        write("a.csv", "Total;43\n");
+        assertFalse(isComplete());
+        write("a.csv", "Total;42\n");
+        assertTrue(isComplete());
+
+        Files.delete(_outputs.get("csv"));
+        assertFalse(isComplete());
+    }
+
+    @Test
+    public void redoesADocumentWithOtherOutputs() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        // with -i the same document also has an index
+        _outputs.put("idx", write("a.idx", "index"));
+        assertFalse(journal.isComplete(_pdf, OPTIONS, _outputs));
+        journal.close();
+    }
+
+    @Test
+    public void redoesAModifiedPdf() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        write("a.pdf", "%PDF-1.4 modified");
+        assertFalse(journal.isComplete(_pdf, OPTIONS, _outputs));
+        journal.close();
+    }
+
+    @Test
+    public void redoesADocumentExtractedWithOtherOptions() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        String separator = ExtractionOptions.builder().separator("|").build().cacheKey(null);
+        assertFalse(journal.isComplete(_pdf, separator, _outputs));
+        assertTrue(journal.isComplete(_pdf, OPTIONS, _outputs));
+        journal.close();
+    }
+
+    @Test
+    public void ignoresALineCutByACrash() throws IOException
+    {
+        Files.write(_file, "12;34;info=ab".getBytes(UTF8));
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        journal.close();
+
+        assertEquals(2, Files.readAllLines(_file, UTF8).size());
+        assertTrue(isComplete());
+    }
+
+    @Test
+    public void keepsTheLastLineOfADocument() throws IOException
+    {
+        BatchJournal journal = new BatchJournal(_file);
+        journal.completed(_pdf, OPTIONS, digests());
+        write("a.info", "1\t72\t700\tSubtotal\n");
+        journal.completed(_pdf, OPTIONS, digests());
+        journal.close();
+
+        assertTrue(isComplete());
+        Files.write(_file, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        assertFalse(isComplete());
+    }
+}
@@ -0,0 +1,128 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExtractionPipelineTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PAGE = "BT /F1 10 Tf 72 700 Td (Total) Tj 100 0 Td (42) Tj ET";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * A document of the given number of pages.
+     */
+    private File pdf(String name, int pages) throws IOException
+    {
+        String[] contents = new String[pages];
+        for (int i = 0; i < pages; i++) {
+            contents[i] = PAGE;
+        }
+        return TestPdfs.save(new File(tmp.getRoot(), name), contents);
+    }
+
+    private static File output(File pdf, String extension)
+    {
+        String path = pdf.getPath();
+        return new File(path.substring(0, path.lastIndexOf('.')) + "." + extension);
+    }
+
+    private static List<String> lines(File file) throws IOException
+    {
+        return Files.readAllLines(file.toPath(), UTF8);
+    }
+
+    @Test(timeout = 60000)
+    public void extractsEveryDocument() throws Exception
+    {
+        List<File> pdfs = new ArrayList<File>();
+        for (int i = 1; i <= 6; i++) {
+            pdfs.add(pdf("doc" + i + ".pdf", i));
+        }
+        ExtractionPipeline pipeline = new ExtractionPipeline(new int[] { 2, 3, 2, 2 }, 1,
+                                                             ExtractionOptions.builder().verticalLines(true).build());
+        pipeline.run(pdfs);
+
+        for (int i = 1; i <= 6; i++) {
+            List<String> info = lines(output(pdfs.get(i - 1), "info"));
+            assertEquals(2 * i, info.size());
+            assertTrue(info.get(info.size() - 1).startsWith(i + ";"));
+            assertTrue(output(pdfs.get(i - 1), "csv").exists());
+        }
+        assertEquals(21, pipeline.getStats().getPagesScanned());
+        assertEquals("load=0 extract=0 grid=0 write=0", pipeline.queueDepths());
+    }
+
+    @Test(timeout = 60000)
+    public void processesTheSmallestDocumentsFirst() throws Exception
+    {
+        List<File> pdfs = new ArrayList<File>();
+        for (int i = 1; i <= 4; i++) {
+            pdfs.add(pdf("doc" + i + ".pdf", i));
+        }
+        Collections.reverse(pdfs);
+        File journalFile = new File(tmp.getRoot(), BatchJournal.JOURNAL_NAME);
+        BatchJournal journal = new BatchJournal(journalFile.toPath());
+        ExtractionPipeline pipeline = new ExtractionPipeline(new int[] { 1, 1, 1, 1 }, 1, ExtractionOptions.DEFAULTS);
+        pipeline.setJournal(journal, false);
+        try {
+            pipeline.run(pdfs);
+        }
+        finally {
+            journal.close();
+        }
+
+        // one thread per stage, the documents are written in the order they are loaded
+        List<String> completed = lines(journalFile);
+        assertEquals(4, completed.size());
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(completed.get(i - 1).endsWith("doc" + i + ".pdf"));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void isolatesTheDocumentsThatFail() throws Exception
+    {
+        File quarantineFile = new File(tmp.getRoot(), "quarantine");
+        Quarantine quarantine = new Quarantine(quarantineFile.toPath());
+        File damaged = new File(tmp.getRoot(), "damaged.pdf");
+        Files.write(damaged.toPath(), "not a PDF".getBytes(UTF8));
+        File crashing = TestPdfs.crashing(new File(tmp.getRoot(), "crashing.pdf"));
+        File good = pdf("good.pdf", 2);
+        List<File> pdfs = new ArrayList<File>();
+        pdfs.add(damaged);
+        pdfs.add(crashing);
+        pdfs.add(good);
+
+        new ExtractionPipeline(new int[] { 1, 2, 1, 1 }, 1, ExtractionOptions.builder().quarantine(quarantine).build()).run(pdfs);
+
+        assertEquals(4, lines(output(good, "info")).size());
+        assertFalse(output(damaged, "info").exists());
+        assertFalse(output(crashing, "info").exists());
+        // a document that cannot be read is not quarantined, a document that crashes the extraction is
+        assertFalse(quarantine.contains(damaged.toPath()));
+        assertTrue(quarantine.contains(crashing.toPath()));
+    }
+
+    @Test(timeout = 60000)
+    public void stopsWithoutDocuments() throws Exception
+    {
+        ExtractionPipeline pipeline = new ExtractionPipeline(new int[] { 3, 2, 2, 1 }, 1, ExtractionOptions.DEFAULTS);
+        pipeline.run(new ArrayList<File>());
+        assertEquals(0, pipeline.getStats().getPagesScanned());
+    }
+}
@@ -0,0 +1,161 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExtractionServerTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private ExtractionServer _server;
+    // status and body of the last request
+    private int _status;
+    private String _body;
+
+    private void start(ExtractionOptions options) throws IOException
+    {
+        _server = new ExtractionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, 2, options);
+        _server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (_server != null) {
+            _server.stop();
+        }
+    }
+
+    private void request(String method, String query, byte[] body) throws IOException
+    {
+        URL url = new URL("http://127.0.0.1:" + _server.getAddress().getPort() + query);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                OutputStream out = connection.getOutputStream();
+                out.write(body);
+                out.close();
+            }
+            _status = connection.getResponseCode();
+            InputStream in = _status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                content.write(buffer, 0, n);
+            }
+            in.close();
+            _body = new String(content.toByteArray(), UTF8);
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private File pdf(String name, String content) throws IOException
+    {
+        return TestPdfs.save(new File(tmp.getRoot(), name), content);
+    }
+
+    @Test
+    public void extractsAnUploadedPdf() throws IOException
+    {
+        start(ExtractionOptions.DEFAULTS);
+        request("POST", "/extract", Files.readAllBytes(pdf("a.pdf", TestPdfs.TABLE).toPath()));
+        assertEquals(200, _status);
+        assertTrue(_body.startsWith("1;"));
+        assertTrue(_body.contains(";Amount"));
+
+        request("POST", "/extract?output=csv&sep=%7C", Files.readAllBytes(pdf("a.pdf", TestPdfs.TABLE).toPath()));
+        assertEquals(200, _status);
+        assertTrue(_body.startsWith("Date |"));
+
+        request("GET", "/status", null);
+        assertTrue(_body.contains("served=2\n"));
+    }
+
+    @Test
+    public void answersAnErrorForADamagedPdf() throws IOException
+    {
+        start(ExtractionOptions.DEFAULTS);
+        request("POST", "/extract", "not a PDF".getBytes(UTF8));
+        assertEquals(400, _status);
+
+        // PDFBox fails with a runtime exception before the first page
+        request("POST", "/extract", Files.readAllBytes(TestPdfs.crashing(tmp.newFile()).toPath()));
+        assertEquals(500, _status);
+        assertTrue(_body.contains("ClassCastException"));
+
+        request("GET", "/status", null);
+        assertTrue(_body.contains("failed=2\n"));
+        // the server still extracts
+        request("POST", "/extract", Files.readAllBytes(pdf("a.pdf", TestPdfs.TABLE).toPath()));
+        assertEquals(200, _status);
+    }
+
+    @Test
+    public void quarantinesAFileThatCrashes() throws IOException
+    {
+        File quarantine = new File(tmp.getRoot(), "quarantine");
+        start(ExtractionOptions.builder().quarantine(new Quarantine(quarantine.toPath())).build());
+        _server.setRoot(tmp.getRoot().toPath());
+        TestPdfs.crashing(new File(tmp.getRoot(), "crash.pdf"));
+        request("GET", "/extract?path=crash.pdf", null);
+        assertEquals(500, _status);
+        assertTrue(new String(Files.readAllBytes(quarantine.toPath()), UTF8).contains("crash.pdf"));
+        request("GET", "/extract?path=crash.pdf", null);
+        assertEquals(422, _status);
+    }
+
+    @Test
+    public void confinesThePathsToTheRoot() throws IOException
+    {
+        start(ExtractionOptions.DEFAULTS);
+        File root = tmp.newFolder("root");
+        pdf("outside.pdf", TestPdfs.TABLE);
+        TestPdfs.save(new File(root, "inside.pdf"), TestPdfs.TABLE);
+
+        request("GET", "/extract?path=inside.pdf", null);
+        assertEquals(403, _status);
+
+        _server.setRoot(root.toPath());
+        request("GET", "/extract?path=inside.pdf", null);
+        assertEquals(200, _status);
+        assertTrue(_body.contains(";Total"));
+        request("GET", "/extract?path=" + URLEncoder.encode("../outside.pdf", "UTF-8"), null);
+        assertEquals(403, _status);
+        request("GET", "/extract?path=missing.pdf", null);
+        assertEquals(404, _status);
+    }
+
+    @Test
+    public void refusesALargeUpload() throws IOException
+    {
+        start(ExtractionOptions.DEFAULTS);
+        _server.setMaxBody(100);
+        request("POST", "/extract", Files.readAllBytes(pdf("a.pdf", TestPdfs.TABLE).toPath()));
+        assertEquals(413, _status);
+    }
+}
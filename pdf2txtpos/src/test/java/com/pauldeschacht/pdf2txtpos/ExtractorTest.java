@@ -0,0 +1,120 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExtractorTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _pdf;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _pdf = TestPdfs.save(tmp.newFile(), TestPdfs.TABLE, "BT /F1 10 Tf 72 700 Td (Page two) Tj ET", TestPdfs.TABLE).toPath();
+    }
+
+    /**
+     * The pages of a document, as the sink receives them.
+     */
+    private static class TextSink implements ExtractionSink
+    {
+        final StringBuilder text = new StringBuilder();
+        final List<Integer> pages = new ArrayList<Integer>();
+
+        public void page(int pageNb, String info, String grid, WordIndex index)
+        {
+            pages.add(pageNb);
+            text.append(pageNb).append('\n').append(info).append(grid);
+        }
+    }
+
+    private static String extract(Extractor extractor, Path pdf) throws IOException
+    {
+        TextSink sink = new TextSink();
+        extractor.extract(pdf, sink);
+        return sink.text.toString();
+    }
+
+    @Test
+    public void buildsOptionsThatDoNotChange()
+    {
+        ExtractionOptions options = ExtractionOptions.builder().separator("|").collapse(2, 3).build();
+        ExtractionOptions other = options.toBuilder().separator(",").build();
+        assertEquals("|", options.getSeparator());
+        assertEquals(2, options.getCollapseX(), 0);
+        assertEquals(",", other.getSeparator());
+        assertEquals(3, other.getCollapseY(), 0);
+        assertFalse(options.cacheKey(null).equals(other.cacheKey(null)));
+        // the statics are only the defaults
+        assertEquals(Grid.COLLAPSE_X, ExtractionOptions.DEFAULTS.getCollapseX(), 0);
+        assertEquals(";", ExtractionOptions.DEFAULTS.getSeparator());
+    }
+
+    @Test
+    public void extractsThePageRange() throws IOException
+    {
+        Extractor extractor = new Extractor(ExtractionOptions.builder().pages(2, 3).build());
+        TextSink sink = new TextSink();
+        ExtractionStats stats = extractor.extract(_pdf, sink);
+        assertEquals(2, stats.getPagesScanned());
+        assertEquals(2, sink.pages.size());
+        assertEquals(Integer.valueOf(2), sink.pages.get(0));
+        assertEquals(Integer.valueOf(3), sink.pages.get(1));
+        assertTrue(sink.text.toString().contains("two"));
+        assertEquals(2, extractor.getStats().getPagesScanned());
+    }
+
+    @Test
+    public void extractsFromManyThreadsWithTheirOwnOptions() throws Exception
+    {
+        final Extractor semicolon = new Extractor(ExtractionOptions.builder().verticalLines(true).build());
+        final Extractor pipe = new Extractor(ExtractionOptions.builder().verticalLines(true).separator("|")
+                                             .collapse(Grid.COLLAPSE_X / 2, Grid.COLLAPSE_Y / 2).build());
+        final String expectedSemicolon = extract(semicolon, _pdf);
+        final String expectedPipe = extract(pipe, _pdf);
+        assertTrue(expectedSemicolon.contains("Date ;"));
+        assertTrue(expectedPipe.contains("Date |"));
+
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final boolean even = t % 2 == 0;
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10; i++) {
+                            String text = extract(even ? semicolon : pipe, _pdf);
+                            if (text.equals(even ? expectedSemicolon : expectedPipe) == false) {
+                                errors.add(text);
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        errors.add(e.toString());
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.<String>emptyList(), errors);
+        assertEquals(3 * 41, semicolon.getStats().getPagesScanned());
+    }
+}
@@ -0,0 +1,62 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FixedPrecisionTest
+{
+    private static String format(float value, int precision)
+    {
+        return FixedPrecision.append(new StringBuilder(), value, precision).toString();
+    }
+
+    @Test
+    public void padsTheDecimals()
+    {
+        assertEquals("1.50", format(1.5f, 2));
+        assertEquals("0.007", format(0.007f, 3));
+        assertEquals("12.000", format(12f, 3));
+        assertEquals("3", format(3f, 0));
+    }
+
+    @Test
+    public void roundsHalfAwayFromZero()
+    {
+        assertEquals("0.1", format(0.05f, 1));
+        assertEquals("-2.35", format(-2.346f, 2));
+        assertEquals("-3", format(-2.5f, 0));
+        assertEquals("100.00", format(99.999f, 2));
+    }
+
+    @Test
+    public void writesNoNegativeZero()
+    {
+        assertEquals("0.00", format(-0.001f, 2));
+        assertEquals("0", format(-0.4f, 0));
+    }
+
+    @Test
+    public void clampsThePrecision()
+    {
+        assertEquals("1.500000000", format(1.5f, 20));
+    }
+
+    @Test
+    public void fallsBackToFloatToString()
+    {
+        assertEquals("12.25", format(12.25f, -1));
+        assertEquals("NaN", format(Float.NaN, 2));
+        assertEquals("-Infinity", format(Float.NEGATIVE_INFINITY, 2));
+        // too large for the scaled long
+        assertEquals(Float.toString(1e10f), format(1e10f, 9));
+    }
+
+    @Test
+    public void appendsToTheBuilder()
+    {
+        StringBuilder sb = new StringBuilder("x=");
+        FixedPrecision.append(sb, 1.25f, 1).append(';');
+        assertEquals("x=1.3;", sb.toString());
+    }
+}
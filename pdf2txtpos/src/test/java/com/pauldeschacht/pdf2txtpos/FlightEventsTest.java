@@ -0,0 +1,113 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightEventsTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _pdf;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        assertTrue(FlightEvents.AVAILABLE);
+        _pdf = TestPdfs.save(tmp.newFile(), TestPdfs.TABLE, TestPdfs.TABLE).toPath();
+    }
+
+    private static final ExtractionSink NO_OUTPUT = new ExtractionSink() {
+        public void page(int pageNb, String info, String grid, WordIndex index) {
+        }
+    };
+
+    /**
+     * The pdf2txtpos events recorded while the extractor extracts the PDF.
+     */
+    private List<RecordedEvent> record(ExtractionOptions options) throws IOException
+    {
+        Path file = tmp.newFile().toPath();
+        Recording recording = new Recording();
+        try {
+            recording.enable(FlightEvents.Document.class);
+            recording.enable(FlightEvents.Page.class);
+            recording.enable(FlightEvents.SlowPage.class);
+            recording.start();
+            new Extractor(options).extract(_pdf, NO_OUTPUT);
+            recording.stop();
+            recording.dump(file);
+        }
+        finally {
+            recording.close();
+        }
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().startsWith("pdf2txtpos.")) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name)
+    {
+        List<RecordedEvent> named = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+
+    @Test
+    public void recordsTheDocumentAndItsPages() throws IOException
+    {
+        List<RecordedEvent> events = record(ExtractionOptions.builder().verticalLines(true).slowPage(0, 0).build());
+        List<RecordedEvent> pages = events(events, "pdf2txtpos.Page");
+        assertEquals(2, pages.size());
+        int words = 0;
+        for (RecordedEvent page : pages) {
+            assertEquals(_pdf.toString(), page.getString("file"));
+            assertEquals(4, page.getInt("words"));
+            assertEquals(1, page.getInt("grids"));
+            assertTrue(page.getInt("segments") > 0);
+            assertNull(page.getString("overBudget"));
+            words += page.getInt("words");
+        }
+        assertEquals(1, pages.get(0).getInt("page"));
+        assertEquals(2, pages.get(1).getInt("page"));
+
+        List<RecordedEvent> documents = events(events, "pdf2txtpos.Document");
+        assertEquals(1, documents.size());
+        assertEquals(2, documents.get(0).getInt("pages"));
+        assertEquals(words, documents.get(0).getInt("words"));
+        assertEquals(2, documents.get(0).getInt("grids"));
+        assertTrue(events(events, "pdf2txtpos.SlowPage").isEmpty());
+    }
+
+    @Test
+    public void recordsThePagesOverBudgetAsSlow() throws IOException
+    {
+        List<RecordedEvent> events = record(ExtractionOptions.builder().slowPage(0, 0).budget(0, 0, 5).build());
+        List<RecordedEvent> slow = events(events, "pdf2txtpos.SlowPage");
+        assertEquals(2, slow.size());
+        for (RecordedEvent page : slow) {
+            assertTrue(page.getString("overBudget") != null);
+        }
+    }
+}
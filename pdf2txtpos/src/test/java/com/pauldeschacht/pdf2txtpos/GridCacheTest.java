@@ -0,0 +1,175 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class GridCacheTest
+{
+    private static final double CX = Grid.COLLAPSE_X;
+    private static final double CY = Grid.COLLAPSE_Y;
+    private static final double MARGIN = Line.LINE_MARGIN;
+
+    /**
+     * The rulings of a table of 3 x 3 cells of 100 points, moved by dx.
+     */
+    private static List<Line> table(double dx)
+    {
+        List<Line> lines = new ArrayList<Line>();
+        for (int i = 0; i < 4; i++) {
+            double x = 100 + i * 100 + dx;
+            lines.add(new Line(x, 100, x, 400));
+        }
+        for (int i = 0; i < 4; i++) {
+            double y = 100 + i * 100;
+            lines.add(new Line(100 + dx, y, 400 + dx, y));
+        }
+        return lines;
+    }
+
+    /**
+     * As PageGridDrawer signs the lines.
+     */
+    private static GridCache.Signature signature(List<Line> lines)
+    {
+        return GridCache.signature(GridCache.sorted(lines, MARGIN), CX, CY, MARGIN);
+    }
+
+    /**
+     * As PageGridDrawer builds the grids of the lines.
+     */
+    private static List<Grid> grids(List<Line> lines)
+    {
+        Grid grid = new Grid(CX, CY, MARGIN);
+        assertTrue(grid.overlapping(GridCache.sorted(lines, MARGIN)).isEmpty());
+        return Collections.singletonList(grid);
+    }
+
+    @Test
+    public void signsTheSameLinesAlike()
+    {
+        GridCache.Signature signature = signature(table(0));
+        assertEquals(signature, signature(table(0)));
+        assertEquals(signature.hashCode(), signature(table(0)).hashCode());
+        // far below the precision of the words
+        assertEquals(signature, signature(table(GridCache.QUANTUM / 4)));
+    }
+
+    @Test
+    public void signsTheLinesInAnyDrawingOrder()
+    {
+        GridCache.Signature signature = signature(table(0));
+        List<Line> reversed = table(0);
+        Collections.reverse(reversed);
+        assertEquals(signature, signature(reversed));
+        List<Line> shuffled = table(0);
+        Collections.shuffle(shuffled, new Random(42));
+        assertEquals(signature, signature(shuffled));
+
+        // the grids of the lines drawn in another order are the cached ones
+        GridCache cache = new GridCache(10);
+        cache.put(signature, grids(table(0)));
+        Grid cached = cache.get(signature(reversed), CX, CY, MARGIN).get(0);
+        Grid built = grids(reversed).get(0);
+        assertArrayEquals(built.xs(), cached.xs());
+        assertArrayEquals(built.ys(), cached.ys());
+    }
+
+    @Test
+    public void signsOtherLinesApart()
+    {
+        GridCache.Signature signature = signature(table(0));
+        assertFalse(signature.equals(signature(table(2 * GridCache.QUANTUM))));
+        assertFalse(signature.equals(signature(table(0).subList(0, 7))));
+
+        assertFalse(signature.equals(GridCache.signature(table(0), CX + 1, CY, MARGIN)));
+        assertFalse(signature.equals(GridCache.signature(table(0), CX, CY + 1, MARGIN)));
+        assertFalse(signature.equals(GridCache.signature(table(0), CX, CY, MARGIN + 1)));
+        assertFalse(signature.equals(null));
+    }
+
+    @Test
+    public void returnsTheGridsOfTheSignature()
+    {
+        GridCache cache = new GridCache(10);
+        List<Grid> built = grids(table(0));
+        assertNull(cache.get(signature(table(0)), CX, CY, MARGIN));
+        cache.put(signature(table(0)), built);
+
+        List<Grid> cached = cache.get(signature(table(GridCache.QUANTUM / 4)), CX, CY, MARGIN);
+        assertNotNull(cached);
+        assertEquals(1, cached.size());
+        assertArrayEquals(built.get(0).xs(), cached.get(0).xs());
+        assertArrayEquals(built.get(0).ys(), cached.get(0).ys());
+        assertTrue(cached.get(0).xs().length > 1);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void placesTheWordsLikeTheBuiltGrid()
+    {
+        GridCache cache = new GridCache(10);
+        List<Grid> built = grids(table(0));
+        cache.put(signature(table(0)), built);
+        Grid cached = cache.get(signature(table(0)), CX, CY, MARGIN).get(0);
+
+        List<WordPosition> words = new ArrayList<WordPosition>();
+        WordPosition total = new WordPosition();
+        total.setWord("Total");
+        total.setRectangle(210, 310, 250, 320);
+        words.add(total);
+        WordPosition amount = new WordPosition();
+        amount.setWord("42");
+        amount.setRectangle(320, 310, 340, 320);
+        words.add(amount);
+
+        String[][] expected = built.get(0).csv(words);
+        String[][] actual = cached.csv(words);
+        assertTrue(expected.length > 0);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed()
+    {
+        GridCache cache = new GridCache(2);
+        GridCache.Signature a = signature(table(0));
+        GridCache.Signature b = signature(table(10));
+        GridCache.Signature c = signature(table(20));
+        cache.put(a, grids(table(0)));
+        cache.put(b, grids(table(10)));
+        assertNotNull(cache.get(a, CX, CY, MARGIN));
+        cache.put(c, grids(table(20)));
+
+        assertNull(cache.get(b, CX, CY, MARGIN));
+        assertNotNull(cache.get(a, CX, CY, MARGIN));
+        List<Grid> grids = cache.get(c, CX, CY, MARGIN);
+        assertArrayEquals(grids(table(20)).get(0).xs(), grids.get(0).xs());
+        assertFalse(grids.get(0).xs()[0].equals(grids(table(0)).get(0).xs()[0]));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void cachesAPageWithoutGrids()
+    {
+        GridCache cache = new GridCache(10);
+        cache.put(signature(table(0)), Collections.<Grid>emptyList());
+        List<Grid> grids = cache.get(signature(table(0)), CX, CY, MARGIN);
+        assertNotNull(grids);
+        assertTrue(grids.isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ManifestTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _file;
+    private Path _pdf;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _file = tmp.getRoot().toPath().resolve(".manifest");
+        _pdf = write("a.pdf", "%PDF-1.4 a");
+    }
+
+    private Path write(String name, String content) throws IOException
+    {
+        Path path = tmp.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(UTF8));
+        return path;
+    }
+
+    private List<String> lines() throws IOException
+    {
+        return Files.readAllLines(_file, UTF8);
+    }
+
+    @Test
+    public void recognizesARecordedFile() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        assertFalse(manifest.isUnchanged(_pdf));
+        manifest.record(_pdf);
+        assertTrue(manifest.isUnchanged(_pdf));
+        assertEquals(Manifest.digest(_pdf), manifest.get(_pdf).digest);
+        // after a restart too
+        assertTrue(new Manifest(_file).isUnchanged(_pdf));
+    }
+
+    @Test
+    public void seesTheChangedContent() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        manifest.record(_pdf);
+        write("a.pdf", "%PDF-1.4 changed");
+        assertFalse(manifest.isUnchanged(_pdf));
+    }
+
+    @Test
+    public void acceptsATouchedFile() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        manifest.record(_pdf);
+        long mtime = manifest.get(_pdf).mtime + 5000;
+        Files.setLastModifiedTime(_pdf, FileTime.fromMillis(mtime));
+        assertTrue(manifest.isUnchanged(_pdf));
+        assertEquals(mtime, manifest.get(_pdf).mtime);
+        assertEquals(mtime, new Manifest(_file).get(_pdf).mtime);
+    }
+
+    @Test
+    public void appendsARecordPerFile() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        Path b = write("b.pdf", "%PDF-1.4 b");
+        manifest.record(_pdf);
+        manifest.record(b);
+        assertEquals(2, lines().size());
+        write("a.pdf", "%PDF-1.4 changed");
+        manifest.record(_pdf);
+        assertEquals(3, lines().size());
+        // the last line of a path wins
+        Manifest reloaded = new Manifest(_file);
+        assertEquals(Manifest.digest(_pdf), reloaded.get(_pdf).digest);
+        assertTrue(reloaded.isUnchanged(b));
+    }
+
+    @Test
+    public void compactsTheRepeatedRecords() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        for (int i = 0; i < 1500; i++) {
+            manifest.record(_pdf);
+        }
+        assertTrue(lines().size() < 1000);
+        assertTrue(new Manifest(_file).isUnchanged(_pdf));
+    }
+
+    @Test
+    public void dropsALineCutByACrash() throws IOException
+    {
+        Manifest manifest = new Manifest(_file);
+        manifest.record(_pdf);
+        Files.write(_file, "0123;12".getBytes(UTF8), StandardOpenOption.APPEND);
+        Path b = write("b.pdf", "%PDF-1.4 b");
+        new Manifest(_file).record(b);
+
+        Manifest reloaded = new Manifest(_file);
+        assertNotNull(reloaded.get(_pdf));
+        assertNotNull(reloaded.get(b));
+        assertEquals(2, lines().size());
+        assertNull(reloaded.get(tmp.getRoot().toPath().resolve("c.pdf")));
+    }
+}
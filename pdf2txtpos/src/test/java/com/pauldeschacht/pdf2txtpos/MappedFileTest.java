@@ -0,0 +1,101 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void readsAFile() throws IOException
+    {
+        File file = tmp.newFile();
+        Files.write(file.toPath(), "%PDF-1.4 mapped".getBytes(UTF8));
+        MappedFile mapped = MappedFile.open(file);
+        assertEquals(15, mapped.length());
+        mapped.seek(9);
+        assertEquals('m', mapped.read());
+        InputStream in = mapped.asInputStream();
+        byte[] rest = new byte[10];
+        assertEquals(5, in.read(rest));
+        assertEquals("apped", new String(rest, 0, 5, UTF8));
+        assertEquals(-1, in.read());
+        in.close();
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void keepsTheScratchDataInTheDirectoryOfTheProcess() throws IOException
+    {
+        MappedFile scratch = MappedFile.scratch();
+        byte[] data = "stream data".getBytes(UTF8);
+        scratch.write(data, 0, data.length);
+        scratch.seek(0);
+        byte[] read = new byte[data.length];
+        assertEquals(data.length, scratch.read(read, 0, read.length));
+        assertArrayEquals(data, read);
+
+        MappedFile other = MappedFile.scratch();
+        try {
+            File dir = new File(System.getProperty("java.io.tmpdir"));
+            File[] dirs = dir.listFiles();
+            int scratchFiles = 0;
+            for (File file : dirs) {
+                if (file.isDirectory() && file.getName().startsWith("pdf2txtpos-") &&
+                    new File(dir, file.getName() + ".lock").exists()) {
+                    scratchFiles += file.list().length;
+                }
+            }
+            assertTrue(scratchFiles >= 2);
+            // another process does not remove them
+            MappedFile.deleteStaleScratch(dir);
+            scratch.seek(0);
+            assertEquals('s', scratch.read());
+        }
+        finally {
+            scratch.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void removesTheScratchFilesOfAKilledProcess() throws IOException
+    {
+        File dir = tmp.getRoot();
+        File killed = new File(dir, "pdf2txtpos-1");
+        assertTrue(killed.mkdir());
+        Files.write(new File(killed, "pdf2txtpos-2.scratch").toPath(), new byte[100]);
+        assertTrue(new File(dir, "pdf2txtpos-1.lock").createNewFile());
+
+        File running = new File(dir, "pdf2txtpos-3");
+        assertTrue(running.mkdir());
+        Files.write(new File(running, "pdf2txtpos-4.scratch").toPath(), new byte[100]);
+        RandomAccessFile lock = new RandomAccessFile(new File(dir, "pdf2txtpos-3.lock"), "rw");
+        try {
+            lock.getChannel().lock();
+            MappedFile.deleteStaleScratch(dir);
+        }
+        finally {
+            lock.close();
+        }
+        assertFalse(killed.exists());
+        assertFalse(new File(dir, "pdf2txtpos-1.lock").exists());
+        assertTrue(new File(running, "pdf2txtpos-4.scratch").exists());
+    }
+}
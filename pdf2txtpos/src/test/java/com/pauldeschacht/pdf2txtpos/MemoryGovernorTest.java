@@ -0,0 +1,88 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MemoryGovernorTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void readsThePageCountFromThePageTree() throws IOException
+    {
+        File pdf = TestPdfs.save(tmp.newFile(), TestPdfs.TABLE, "", TestPdfs.TABLE);
+        assertEquals(3, MemoryGovernor.pageCount(pdf));
+
+        File damaged = tmp.newFile();
+        Files.write(damaged.toPath(), "not a PDF".getBytes(UTF8));
+        assertEquals(-1, MemoryGovernor.pageCount(damaged));
+    }
+
+    @Test
+    public void estimatesTheCostFromTheSizeAndThePages()
+    {
+        long small = MemoryGovernor.estimate(100000, 1, false);
+        assertTrue(MemoryGovernor.estimate(100000, 100, false) > small);
+        assertTrue(MemoryGovernor.estimate(10000000, 1, false) > small);
+        // the streams of a mapped file are outside the heap
+        assertTrue(MemoryGovernor.estimate(100000, 1, true) < small);
+        // a file whose pages cannot be counted still costs its size
+        assertEquals(MemoryGovernor.estimate(100000, 1, false), MemoryGovernor.estimate(100000, -1, false));
+    }
+
+    @Test
+    public void admitsTheDocumentsWithinTheBudget() throws Exception
+    {
+        final MemoryGovernor governor = new MemoryGovernor(0.5);
+        try {
+            final long budget = governor.getBudget();
+            // a document larger than the budget runs alone
+            governor.acquire(2 * budget);
+            assertEquals(1, governor.getRunning());
+
+            final boolean[] admitted = new boolean[1];
+            Thread waiting = new Thread() {
+                public void run() {
+                    try {
+                        governor.acquire(budget / 2);
+                        synchronized (admitted) {
+                            admitted[0] = true;
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        // end of the test
+                    }
+                }
+            };
+            waiting.start();
+            waiting.join(200);
+            synchronized (admitted) {
+                assertFalse(admitted[0]);
+            }
+
+            governor.release(2 * budget);
+            waiting.join(5000);
+            synchronized (admitted) {
+                assertTrue(admitted[0]);
+            }
+            assertEquals(budget / 2, governor.getReserved());
+            governor.release(budget / 2);
+            assertEquals(0, governor.getRunning());
+        }
+        finally {
+            governor.stop();
+        }
+    }
+}
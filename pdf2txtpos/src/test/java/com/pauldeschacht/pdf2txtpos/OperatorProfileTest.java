@@ -0,0 +1,93 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Test;
+
+public class OperatorProfileTest
+{
+    /**
+     * The columns of the row of the operator in the report: pass, operator, calls, self ms, total ms.
+     * null when the operator is not in the top.
+     */
+    private static String[] row(OperatorProfile profile, String pass, String operator)
+    {
+        String[] lines = profile.top(100).split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            String[] columns = lines[i].trim().split(" +");
+            if (columns[0].equals(pass) && columns[1].equals(operator)) {
+                return columns;
+            }
+        }
+        return null;
+    }
+
+    private static long calls(OperatorProfile profile, String pass, String operator)
+    {
+        String[] row = row(profile, pass, operator);
+        return row == null ? 0 : Long.parseLong(row[2]);
+    }
+
+    @Test
+    public void separatesTheSelfTimeOfTheNestedOperators() throws Exception
+    {
+        OperatorProfile profile = new OperatorProfile();
+        assertTrue(profile.isEmpty());
+        profile.enter();
+        profile.enter();
+        Thread.sleep(50);
+        profile.exit(OperatorProfile.GRID, "re");
+        profile.exit(OperatorProfile.GRID, "Do");
+        assertFalse(profile.isEmpty());
+
+        String[] re = row(profile, "grid", "re");
+        String[] invoke = row(profile, "grid", "Do");
+        assertTrue(Double.parseDouble(re[3]) >= 50);
+        assertTrue(Double.parseDouble(invoke[3]) < 50);
+        assertTrue(Double.parseDouble(invoke[4]) >= 50);
+        // the most self time first
+        String[] top = profile.top(1).split("\n");
+        assertEquals(2, top.length);
+        assertTrue(top[1].startsWith("grid  re "));
+    }
+
+    @Test
+    public void countsTheOperatorsOfThePagesAndTheirForms() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try {
+            PDPage page = TestPdfs.page(document, "BT /F1 10 Tf 72 700 Td (Total) Tj ET /Fm1 Do /Fm1 Do");
+            TestPdfs.form(document, page, "Fm1", "BT /F1 10 Tf 72 600 Td (42) Tj ET");
+            Watchdog watchdog = ExtractionOptions.builder().profileOperators(true).build().newWatchdog();
+            WordPositionStreamEngine engine = new WordPositionStreamEngine();
+            engine.setWatchdog(watchdog);
+            engine.processPage(page);
+
+            OperatorProfile profile = watchdog.getProfile();
+            assertEquals(2, calls(profile, "text", "Do"));
+            assertEquals(3, calls(profile, "text", "Tj"));
+            assertEquals(3, calls(profile, "text", "BT"));
+            assertNull(row(profile, "grid", "Tj"));
+
+            OperatorProfile run = new OperatorProfile();
+            run.add(profile);
+            run.add(profile);
+            assertEquals(6, calls(run, "text", "Tj"));
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    @Test
+    public void profilesNothingByDefault()
+    {
+        assertNull(ExtractionOptions.DEFAULTS.newWatchdog().getProfile());
+    }
+}
@@ -0,0 +1,98 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.util.PDFStreamEngine;
+import org.apache.pdfbox.util.ResourceLoader;
+import org.apache.pdfbox.util.operator.OperatorProcessor;
+import org.junit.Test;
+
+public class OperatorRegistryTest
+{
+    private static final String OPERATORS = "com/pauldeschacht/pdf2txtpos/GridDrawer.properties";
+
+    /**
+     * Keeps the processors registered with the engine.
+     */
+    private static class RecordingEngine extends PDFStreamEngine
+    {
+        final Map<String, OperatorProcessor> processors = new HashMap<String, OperatorProcessor>();
+
+        @Override
+        public void registerOperatorProcessor(String operator, OperatorProcessor op)
+        {
+            super.registerOperatorProcessor(operator, op);
+            processors.put(operator, op);
+        }
+    }
+
+    @Test
+    public void resolvesTheOperatorsOnce() throws IOException
+    {
+        OperatorRegistry registry = OperatorRegistry.get(OPERATORS);
+        assertSame(registry, OperatorRegistry.get(OPERATORS));
+        Properties properties = ResourceLoader.loadProperties(OPERATORS, true);
+        assertEquals(properties.size(), registry.size());
+    }
+
+    @Test
+    public void givesEachEngineItsOwnProcessors() throws IOException
+    {
+        OperatorRegistry registry = OperatorRegistry.get(OPERATORS);
+        RecordingEngine first = new RecordingEngine();
+        RecordingEngine second = new RecordingEngine();
+        registry.register(first);
+        registry.register(second);
+        assertEquals(registry.size(), first.processors.size());
+        assertEquals(first.processors.keySet(), second.processors.keySet());
+        for (String operator : first.processors.keySet()) {
+            OperatorProcessor processor = first.processors.get(operator);
+            assertFalse(processor == second.processors.get(operator));
+            assertSame(processor.getClass(), second.processors.get(operator).getClass());
+        }
+        assertTrue(first.processors.containsKey("re"));
+    }
+
+    @Test
+    public void reusesTheDrawerForTheNextPage() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try {
+            PDPage table = TestPdfs.page(document, TestPdfs.TABLE);
+            PDPage text = TestPdfs.page(document, "BT /F1 10 Tf 72 700 Td (Total) Tj ET");
+            PageGridDrawer drawer = new PageGridDrawer();
+            drawer.drawPage(table);
+            List<Grid> grids = drawer.getGrids();
+            assertEquals(1, grids.size());
+            int segments = drawer.getSegmentCount();
+            assertTrue(segments > 0);
+
+            // the lines of the table are not left over on a page without rulings
+            drawer.reset();
+            drawer.drawPage(text);
+            assertTrue(drawer.getGrids().isEmpty());
+            assertEquals(0, drawer.getSegmentCount());
+
+            drawer.reset();
+            drawer.drawPage(table);
+            assertEquals(segments, drawer.getSegmentCount());
+            assertEquals(1, drawer.getGrids().size());
+            assertArrayEquals(grids.get(0).xs(), drawer.getGrids().get(0).xs());
+            assertArrayEquals(grids.get(0).ys(), drawer.getGrids().get(0).ys());
+        }
+        finally {
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageCacheTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private PDDocument _document;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _document = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _document.close();
+    }
+
+    private PDPage page(String text, PDRectangle mediaBox) throws IOException
+    {
+        PDPage page = new PDPage(mediaBox);
+        _document.addPage(page);
+        PDPageContentStream content = new PDPageContentStream(_document, page);
+        try {
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 12);
+            content.moveTextPositionByAmount(72, 700);
+            content.drawString(text);
+            content.endText();
+        }
+        finally {
+            content.close();
+        }
+        return page;
+    }
+
+    private static PageCache.Entry entry(String info)
+    {
+        List<WordPosition> words = new ArrayList<WordPosition>();
+        WordPosition word = new WordPosition();
+        word.setWord("Total");
+        word.setRectangle(72, 700, 100, 712);
+        words.add(word);
+        return new PageCache.Entry(info, "Total;42\n", WordIndex.build(1, words));
+    }
+
+    @Test
+    public void keysIdenticalPagesAlike() throws IOException
+    {
+        PageCache.PageDigest digest = new PageCache.PageDigest();
+        String options = ExtractionOptions.DEFAULTS.cacheKey(null);
+        String key = digest.digest(page("Terms and conditions", PDPage.PAGE_SIZE_A4), options);
+        assertEquals(64, key.length());
+        assertEquals(key, digest.digest(page("Terms and conditions", PDPage.PAGE_SIZE_A4), options));
+        // a new digest of another document gives the same key
+        assertEquals(key, new PageCache.PageDigest().digest(page("Terms and conditions", PDPage.PAGE_SIZE_A4), options));
+    }
+
+    @Test
+    public void keysDifferentPagesApart() throws IOException
+    {
+        PageCache.PageDigest digest = new PageCache.PageDigest();
+        String options = ExtractionOptions.DEFAULTS.cacheKey(null);
+        String key = digest.digest(page("Terms and conditions", PDPage.PAGE_SIZE_A4), options);
+        assertFalse(key.equals(digest.digest(page("Terms and conditions.", PDPage.PAGE_SIZE_A4), options)));
+        assertFalse(key.equals(digest.digest(page("Terms and conditions", PDPage.PAGE_SIZE_LETTER), options)));
+        String vlines = ExtractionOptions.builder().verticalLines(true).build().cacheKey(null);
+        assertFalse(key.equals(digest.digest(page("Terms and conditions", PDPage.PAGE_SIZE_A4), vlines)));
+    }
+
+    @Test
+    public void readsBackAnEntry() throws IOException
+    {
+        PageCache cache = new PageCache(tmp.getRoot(), 1024 * 1024);
+        cache.put("k1", entry("1\tTotal\n"));
+        PageCache.Entry entry = cache.get("k1", 5);
+        assertNotNull(entry);
+        assertEquals("1\tTotal\n", entry.info);
+        assertEquals("Total;42\n", entry.grid);
+        // the words get the page number of the page that hit
+        assertEquals(5, entry.index.getPageNb());
+        assertEquals("Total", entry.index.find("Total").get(0).word());
+        assertNull(cache.get("k2", 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws IOException
+    {
+        PageCache sizing = new PageCache(tmp.newFolder("sizing"), Long.MAX_VALUE);
+        sizing.put("k", entry("info"));
+        long size = new File(tmp.getRoot(), "sizing/k.page").length();
+        assertTrue(size > 0);
+
+        File dir = tmp.newFolder("cache");
+        PageCache cache = new PageCache(dir, 2 * size + size / 2);
+        cache.put("a", entry("info"));
+        cache.put("b", entry("info"));
+        assertNotNull(cache.get("a", 1));
+        cache.put("c", entry("info"));
+        assertEquals(1, cache.getEvictions());
+        assertFalse(new File(dir, "b.page").exists());
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("a", 1));
+        assertNotNull(cache.get("c", 1));
+    }
+
+    @Test
+    public void keepsTheOrderAcrossRestarts() throws IOException
+    {
+        File dir = tmp.getRoot();
+        PageCache cache = new PageCache(dir, Long.MAX_VALUE);
+        cache.put("old", entry("info"));
+        cache.put("new", entry("info"));
+        long size = new File(dir, "old.page").length();
+        // the modification time is the last use
+        assertTrue(new File(dir, "old.page").setLastModified(System.currentTimeMillis() - 60000));
+
+        PageCache reopened = new PageCache(dir, size + size / 2);
+        assertEquals(1, reopened.getEvictions());
+        assertFalse(new File(dir, "old.page").exists());
+        assertNotNull(reopened.get("new", 1));
+    }
+}
@@ -0,0 +1,105 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationSquareCircle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PagePrescanTest
+{
+    private PDDocument _document;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _document = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _document.close();
+    }
+
+    private PDPage page(String content) throws IOException
+    {
+        return TestPdfs.page(_document, content);
+    }
+
+    @Test
+    public void seesTheTextAndThePaths() throws IOException
+    {
+        PagePrescan text = PagePrescan.scan(page("BT /F1 10 Tf 72 700 Td (Total) Tj ET"));
+        assertTrue(text.hasText());
+        assertFalse(text.hasPaths());
+
+        PagePrescan paths = PagePrescan.scan(page("100 100 m 200 100 l S 10 10 50 50 re f"));
+        assertFalse(paths.hasText());
+        assertTrue(paths.hasPaths());
+
+        PagePrescan table = PagePrescan.scan(page(TestPdfs.TABLE));
+        assertTrue(table.hasText());
+        assertTrue(table.hasPaths());
+    }
+
+    @Test
+    public void skipsAnEmptyPage() throws IOException
+    {
+        // a rectangle that is only clipped paints nothing, and an empty text object shows nothing
+        PagePrescan prescan = PagePrescan.scan(page("q 10 10 50 50 re W n BT /F1 10 Tf ET Q"));
+        assertFalse(prescan.hasText());
+        assertFalse(prescan.hasPaths());
+        assertFalse(PagePrescan.scan(new PDPage()).hasText());
+    }
+
+    @Test
+    public void looksInsideTheForms() throws IOException
+    {
+        PDPage page = page("q /Fm1 Do Q");
+        TestPdfs.form(_document, page, "Fm1", "/Fm2 Do");
+        TestPdfs.form(_document, page, "Fm2", "BT /F1 10 Tf 72 700 Td [(To) 20 (tal)] TJ ET");
+        PagePrescan prescan = PagePrescan.scan(page);
+        assertTrue(prescan.hasText());
+        assertFalse(prescan.hasPaths());
+    }
+
+    @Test
+    public void stopsAtAFormThatDrawsItself() throws IOException
+    {
+        PDPage page = page("/Fm1 Do");
+        TestPdfs.form(_document, page, "Fm1", "/Fm1 Do 0 0 m 10 10 l S");
+        PagePrescan prescan = PagePrescan.scan(page);
+        assertFalse(prescan.hasText());
+        assertTrue(prescan.hasPaths());
+    }
+
+    @Test
+    public void looksInsideTheAppearanceOfTheAnnotations() throws IOException
+    {
+        PDPage page = page("BT /F1 10 Tf 72 700 Td (Total) Tj ET");
+        COSStream appearance = TestPdfs.stream(_document, "0 0 m 100 0 l S").getStream();
+        PDAppearanceDictionary appearances = new PDAppearanceDictionary();
+        appearances.setNormalAppearance(new PDAppearanceStream(appearance));
+        PDAnnotation annotation = new PDAnnotationSquareCircle(PDAnnotationSquareCircle.SUB_TYPE_SQUARE);
+        annotation.setAppearance(appearances);
+        List<PDAnnotation> annotations = new ArrayList<PDAnnotation>();
+        annotations.add(annotation);
+        page.setAnnotations(annotations);
+
+        PagePrescan prescan = PagePrescan.scan(page);
+        assertTrue(prescan.hasText());
+        assertTrue(prescan.hasPaths());
+    }
+}
@@ -0,0 +1,88 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProgressReporterTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static PageStats page(long millis)
+    {
+        PageStats stats = new PageStats();
+        stats.textNanos = millis * 1000000L;
+        return stats;
+    }
+
+    @Test
+    public void bucketsTheLatenciesWithinAnEighth()
+    {
+        for (long micros = 0; micros < 10000000; micros = micros * 2 + 7) {
+            long value = ProgressReporter.LatencyHistogram.value(ProgressReporter.LatencyHistogram.bucket(micros)) / 1000;
+            assertTrue(micros + " in " + value, Math.abs(value - micros) <= micros / 8 + 1);
+        }
+        // the buckets grow with the latency
+        int previous = -1;
+        for (long micros = 0; micros < 100000; micros++) {
+            int bucket = ProgressReporter.LatencyHistogram.bucket(micros);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void computesThePercentiles()
+    {
+        ProgressReporter.LatencyHistogram histogram = new ProgressReporter.LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+        assertEquals(50, histogram.percentile(0.50) / 1000000.0, 50 / 8.0);
+        assertEquals(95, histogram.percentile(0.95) / 1000000.0, 95 / 8.0);
+        assertEquals(99, histogram.percentile(0.99) / 1000000.0, 99 / 8.0);
+    }
+
+    @Test
+    public void writesTheReportIntoTheStatusFile() throws IOException
+    {
+        File first = TestPdfs.save(new File(tmp.getRoot(), "first.pdf"), TestPdfs.TABLE, TestPdfs.TABLE);
+        File second = TestPdfs.save(new File(tmp.getRoot(), "second.pdf"), TestPdfs.TABLE);
+        Path status = tmp.getRoot().toPath().resolve("status");
+        ProgressReporter progress = new ProgressReporter(3600 * 1000L, status);
+        progress.start(Arrays.asList(first, second));
+
+        progress.beginDocument(first.getPath());
+        progress.page(page(10), false);
+        progress.page(page(10), false);
+        progress.endDocument(first.getPath(), first.length());
+        progress.beginDocument(second.getPath());
+        // a cached page has no latency
+        progress.page(page(1000), true);
+        progress.stop();
+
+        List<String> lines = Files.readAllLines(status, UTF8);
+        assertEquals(1, lines.size());
+        String report = lines.get(0);
+        assertTrue(report, report.matches("Done: 1/2 documents, 3/~?\\d pages, .*"));
+        assertTrue(report, report.contains(", page p50 10 ms p95 10 ms p99 10 ms"));
+        assertTrue(report, report.contains(", ETA "));
+        assertTrue(report, report.endsWith(", running 1: second.pdf 0s"));
+        assertFalse(Files.exists(status.resolveSibling("status.tmp")));
+    }
+}
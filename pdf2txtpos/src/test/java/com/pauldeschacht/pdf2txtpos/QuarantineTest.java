@@ -0,0 +1,77 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuarantineTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _file;
+
+    @Before
+    public void setUp()
+    {
+        _file = tmp.getRoot().toPath().resolve("quarantine");
+    }
+
+    private Path write(String name, String content) throws IOException
+    {
+        Path path = tmp.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(UTF8));
+        return path;
+    }
+
+    @Test
+    public void keepsTheDocumentsThatExceedTheirBudgetOrCrash() throws IOException
+    {
+        Path slow = write("slow.pdf", "%PDF-1.4 slow");
+        Path crash = write("crash.pdf", "%PDF-1.4 crash");
+        Path damaged = write("damaged.pdf", "%PDF-1.4 damaged");
+        Quarantine quarantine = new Quarantine(_file);
+        quarantine.failed(slow, new BudgetExceededException("Document time budget exceeded", true));
+        quarantine.failed(crash, new ClassCastException());
+        quarantine.failed(crash, new StackOverflowError());
+        // fails fast, it does not slow the batch down
+        quarantine.failed(damaged, new IOException("Error: End-of-File, expected line"));
+
+        assertTrue(quarantine.contains(slow));
+        assertTrue(quarantine.contains(crash));
+        assertFalse(quarantine.contains(damaged));
+        assertEquals(2, Files.readAllLines(_file, UTF8).size());
+
+        // the next run skips them
+        Quarantine next = new Quarantine(_file);
+        assertTrue(next.contains(slow));
+        assertTrue(next.contains(crash));
+        assertFalse(next.contains(damaged));
+    }
+
+    @Test
+    public void recognizesTheDocumentsByTheirContent() throws IOException
+    {
+        Path pdf = write("a.pdf", "%PDF-1.4 crash");
+        Quarantine quarantine = new Quarantine(_file);
+        quarantine.add(pdf, "java.lang.ClassCastException\nat line 1");
+        assertTrue(Files.readAllLines(_file, UTF8).get(0).endsWith(";java.lang.ClassCastException at line 1"));
+
+        // a copy is still quarantined, a corrected file is processed again
+        assertTrue(quarantine.contains(write("copy.pdf", "%PDF-1.4 crash")));
+        write("a.pdf", "%PDF-1.4 corrected");
+        assertFalse(quarantine.contains(pdf));
+        assertFalse(new Quarantine(tmp.getRoot().toPath().resolve("missing")).contains(pdf));
+    }
+}
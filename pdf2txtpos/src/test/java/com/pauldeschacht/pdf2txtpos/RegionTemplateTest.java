@@ -0,0 +1,110 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RegionTemplateTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String write(String content) throws IOException
+    {
+        File file = tmp.newFile();
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file.getPath();
+    }
+
+    private static List<String> names(List<Region> regions)
+    {
+        List<String> names = new ArrayList<String>();
+        for (Region region : regions) {
+            names.add(region.name());
+        }
+        return names;
+    }
+
+    private void assertInvalid(String template, String message) throws IOException
+    {
+        String filename = write(template);
+        try {
+            RegionTemplate.load(filename);
+            fail(template);
+        }
+        catch (IOException e) {
+            assertEquals(filename + ":" + message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void selectsTheRegionsOfAPage() throws IOException
+    {
+        RegionTemplate template = RegionTemplate.load(write(
+            "# statement\n" +
+            "header;1;0;0;600;100\n" +
+            "\n" +
+            "lines;2-4, 7;0;100;600;700\n" +
+            "footer;*;0;700;600;842\n" +
+            "annex;9-;0;0;600;842\n"));
+        assertEquals(2, names(template.regions(1)).size());
+        assertEquals("header", template.regions(1).get(0).name());
+        assertEquals(names(template.regions(3)), names(template.regions(7)));
+        assertTrue(names(template.regions(3)).contains("lines"));
+        assertFalse(names(template.regions(5)).contains("lines"));
+        assertEquals(1, template.regions(8).size());
+        assertTrue(names(template.regions(1000)).contains("annex"));
+    }
+
+    @Test
+    public void rejectsAnInvalidPagePatternOnLoad() throws IOException
+    {
+        assertInvalid("a;1;0;0;1;1\nb;1.3;0;0;1;1\n", "2: invalid pages \"1.3\"");
+        assertInvalid("b;a-b;0;0;1;1\n", "1: invalid pages \"a-b\"");
+        assertInvalid("b;5-2;0;0;1;1\n", "1: invalid pages \"5-2\"");
+        assertInvalid("b;1,,3;0;0;1;1\n", "1: invalid pages \"1,,3\"");
+        assertInvalid("b;0;0;0;1;1\n", "1: invalid pages \"0\"");
+        assertInvalid("b;1;0;0;1\n", "1: expected name;pages;x1;y1;x2;y2");
+    }
+
+    @Test
+    public void parsesThePageRanges()
+    {
+        int[] ranges = RegionTemplate.pageRanges(" 3 , 5-6,8- ");
+        assertEquals(6, ranges.length);
+        assertEquals(3, ranges[0]);
+        assertEquals(3, ranges[1]);
+        assertEquals(6, ranges[3]);
+        assertEquals(Integer.MAX_VALUE, ranges[5]);
+    }
+
+    @Test
+    public void findsTheRegionOfAWord()
+    {
+        List<Region> regions = new ArrayList<Region>();
+        Region header = new Region("header", RegionTemplate.pageRanges("*"), 600, 100, 0, 0);
+        regions.add(header);
+        regions.add(new Region("lines", RegionTemplate.pageRanges("*"), 0, 100, 600, 700));
+        WordPosition word = new WordPosition();
+        word.setWord("Statement");
+        word.setRectangle(50, 40, 200, 60);
+        assertSame(header, RegionTemplate.find(regions, word));
+        word.setRectangle(50, 800, 200, 820);
+        assertNull(RegionTemplate.find(regions, word));
+    }
+}
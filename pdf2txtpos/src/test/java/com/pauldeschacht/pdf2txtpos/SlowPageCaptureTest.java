@@ -0,0 +1,74 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SlowPageCaptureTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final ExtractionSink NO_OUTPUT = new ExtractionSink() {
+        public void page(int pageNb, String info, String grid, WordIndex index) {
+        }
+    };
+
+    @Test
+    public void capturesThePagesOverBudget() throws IOException
+    {
+        File pdf = TestPdfs.save(new File(tmp.getRoot(), "statement.pdf"),
+                                 TestPdfs.TABLE, "BT /F1 10 Tf 72 700 Td (Total) Tj ET");
+        File dir = new File(tmp.getRoot(), "slow");
+        // the table has more operators than the budget, the second page has exactly the budget
+        ExtractionOptions options = ExtractionOptions.builder().slowPage(0, 0).budget(0, 0, 5).capture(dir).build();
+        ExtractionStats stats = new Extractor(options).extract(pdf.toPath(), NO_OUTPUT);
+        assertEquals(1, stats.getPagesCaptured());
+        assertFalse(new File(dir, "statement-page2.pdf").exists());
+
+        PDDocument captured = PDDocument.load(new File(dir, "statement-page1.pdf"));
+        try {
+            assertEquals(1, captured.getNumberOfPages());
+            PDPage page = (PDPage)captured.getDocumentCatalog().getAllPages().get(0);
+            assertTrue(page.findResources().getFonts().containsKey("F1"));
+            // the captured page draws the words of the original
+            WordPositionStreamEngine engine = new WordPositionStreamEngine();
+            engine.setWatchdog(new Watchdog(0, 0, 0));
+            engine.processPage(page);
+            assertEquals(4, engine.getWordPositions().size());
+        }
+        finally {
+            captured.close();
+        }
+
+        String json = new String(Files.readAllBytes(new File(dir, "statement-page1.json").toPath()), UTF8);
+        assertTrue(json.startsWith("{\n"));
+        assertTrue(json.endsWith("\n}\n"));
+        assertTrue(json.contains("\"file\": \"" + pdf.getPath().replace("\\", "\\\\") + "\",\n"));
+        assertTrue(json.contains("\"page\": 1,\n"));
+        assertTrue(json.contains("\"overBudget\": \"More than 5 operators on the page\",\n"));
+        assertTrue(json.contains("\"slowPageBytes\": 0\n"));
+    }
+
+    @Test
+    public void capturesNothingWithoutDirectory() throws IOException
+    {
+        File pdf = TestPdfs.save(new File(tmp.getRoot(), "statement.pdf"), TestPdfs.TABLE);
+        ExtractionOptions options = ExtractionOptions.builder().slowPage(0, 0).budget(0, 0, 5).build();
+        ExtractionStats stats = new Extractor(options).extract(pdf.toPath(), NO_OUTPUT);
+        assertEquals(0, stats.getPagesCaptured());
+        assertEquals(1, stats.getPagesOverBudget());
+    }
+}
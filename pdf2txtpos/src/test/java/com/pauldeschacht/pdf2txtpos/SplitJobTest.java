@@ -0,0 +1,122 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SplitJobTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File _pdf;
+    private File _dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _pdf = TestPdfs.save(new File(tmp.getRoot(), "big.pdf"), "", "", "", "", "");
+        _dir = new File(tmp.getRoot(), "big.split");
+    }
+
+    /**
+     * Run the job as its process would: an .info line per page of the range, then done.
+     */
+    private static SplitJob run(File jobFile) throws IOException
+    {
+        SplitJob job = SplitJob.read(jobFile);
+        StringBuilder sb = new StringBuilder();
+        for (int pageNb = job.start; pageNb <= job.end; pageNb++) {
+            sb.append(pageNb).append(";72;700;page").append(pageNb).append("\r\n");
+        }
+        Files.write(new File(job.output + ".info").toPath(), sb.toString().getBytes(UTF8));
+        job.done();
+        return job;
+    }
+
+    private static String read(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), UTF8);
+    }
+
+    @Test
+    public void plansTheRangesOfThePageTree() throws IOException
+    {
+        List<File> jobs = SplitJob.plan(_pdf, 2);
+        assertEquals(2, jobs.size());
+        SplitJob first = SplitJob.read(jobs.get(0));
+        SplitJob second = SplitJob.read(jobs.get(1));
+        assertEquals(1, first.start);
+        assertEquals(3, first.end);
+        assertEquals(4, second.start);
+        assertEquals(5, second.end);
+        assertEquals(new File(_dir, "part-0001").getPath(), first.output);
+
+        // no more parts than pages
+        assertEquals(5, SplitJob.plan(_pdf, 10).size());
+    }
+
+    @Test
+    public void mergesThePartsInPageOrder() throws IOException
+    {
+        List<File> jobs = SplitJob.plan(_pdf, 3);
+        // the parts end in any order
+        for (int i = jobs.size() - 1; i >= 0; i--) {
+            run(jobs.get(i));
+        }
+        SplitJob.merge(_dir);
+        String info = read(new File(tmp.getRoot(), "big.info"));
+        StringBuilder expected = new StringBuilder();
+        for (int pageNb = 1; pageNb <= 5; pageNb++) {
+            expected.append(pageNb).append(";72;700;page").append(pageNb).append("\r\n");
+        }
+        assertEquals(expected.toString(), info);
+        assertFalse(new File(tmp.getRoot(), "big.csv").exists());
+    }
+
+    @Test
+    public void refusesAPartThatIsNotDone() throws IOException
+    {
+        List<File> jobs = SplitJob.plan(_pdf, 2);
+        run(jobs.get(0));
+        try {
+            SplitJob.merge(_dir);
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("Pages 4 to 5 are not done"));
+        }
+        assertFalse(new File(tmp.getRoot(), "big.info").exists());
+    }
+
+    @Test
+    public void refusesAPageOutOfItsRange() throws IOException
+    {
+        List<File> jobs = SplitJob.plan(_pdf, 2);
+        run(jobs.get(0));
+        SplitJob second = run(jobs.get(1));
+        Files.write(new File(second.output + ".info").toPath(), "5;72;700;last\n4;72;700;first\n".getBytes(UTF8));
+        try {
+            SplitJob.merge(_dir);
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("Page 4 out of order"));
+        }
+        assertFalse(new File(tmp.getRoot(), "big.info").exists());
+        assertFalse(new File(tmp.getRoot(), "big.info.part").exists());
+    }
+}
@@ -0,0 +1,107 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StdioTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private InputStream _in;
+    private PrintStream _out;
+    private ByteArrayOutputStream _stdout;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _in = System.in;
+        _out = System.out;
+        File pdf = TestPdfs.save(tmp.newFile(), TestPdfs.TABLE, "BT /F1 10 Tf 72 700 Td (Total) Tj ET");
+        System.setIn(new ByteArrayInputStream(Files.readAllBytes(pdf.toPath())));
+        _stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(_stdout, true, "UTF-8"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.setIn(_in);
+        System.setOut(_out);
+    }
+
+    /**
+     * Counts the flushes of the output.
+     */
+    private static class FlushCounter extends StringWriter
+    {
+        int flushes = 0;
+
+        @Override
+        public void flush()
+        {
+            flushes++;
+        }
+    }
+
+    @Test
+    public void streamsTheInfoOfStdinToStdout() throws Exception
+    {
+        assertTrue(PDF2TxtPos.parseFile(PDF2TxtPos.STDIO, PDF2TxtPos.STDIO, ExtractionOptions.DEFAULTS));
+        String[] lines = new String(_stdout.toByteArray(), UTF8).split("\n");
+        assertEquals(5, lines.length);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(lines[i], lines[i].startsWith("1;"));
+        }
+        assertTrue(lines[4], lines[4].startsWith("2;"));
+        assertTrue(lines[4], lines[4].endsWith(";Total"));
+        // no output file next to the input
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void streamsTheGridsWithVerticalLines() throws Exception
+    {
+        ExtractionOptions options = ExtractionOptions.builder().verticalLines(true).build();
+        assertTrue(PDF2TxtPos.parseFile(PDF2TxtPos.STDIO, PDF2TxtPos.STDIO, options));
+        String csv = new String(_stdout.toByteArray(), UTF8);
+        assertTrue(csv, csv.startsWith("Date ;"));
+    }
+
+    @Test
+    public void flushesEveryPageOnlyWhenStreaming() throws Exception
+    {
+        FlushCounter streamed = new FlushCounter();
+        WriterSink sink = new WriterSink(streamed, null, null, true);
+        sink.page(1, "a\nb\n", "", null);
+        sink.page(2, "c\n", "", null);
+        assertEquals("1;a\n1;b\n2;c\n", streamed.toString());
+        assertEquals(2, streamed.flushes);
+
+        FlushCounter file = new FlushCounter();
+        sink = new WriterSink(file, null, null);
+        sink.page(1, "a\n", "", null);
+        assertEquals(0, file.flushes);
+
+        // without info writer the grids are still written
+        StringWriter grid = new StringWriter();
+        new WriterSink(null, grid, null).page(1, "a\n", "x;y\n", null);
+        assertEquals("x;y\n", grid.toString());
+    }
+}
@@ -0,0 +1,250 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TarInputStreamTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteArrayOutputStream _tar;
+
+    @Before
+    public void setUp()
+    {
+        _tar = new ByteArrayOutputStream();
+    }
+
+    /**
+     * A ustar header, with the checksum, and the data padded to the block.
+     */
+    private byte[] header(String name, char type, long size, String prefix)
+    {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 124, String.format("%011o", size));
+        put(header, 136, String.format("%011o", 0));
+        header[156] = (byte)type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        if (prefix != null) {
+            put(header, 345, prefix);
+        }
+        Arrays.fill(header, 148, 156, (byte)' ');
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", sum));
+        return header;
+    }
+
+    private static void put(byte[] header, int offset, String value)
+    {
+        byte[] bytes = value.getBytes(UTF8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private void add(byte[] header, byte[] data) throws IOException
+    {
+        _tar.write(header);
+        _tar.write(data);
+        _tar.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private void add(String name, char type, String prefix, String content) throws IOException
+    {
+        byte[] data = content.getBytes(UTF8);
+        add(header(name, type, data.length, prefix), data);
+    }
+
+    private void file(String name, String content) throws IOException
+    {
+        add(name, '0', null, content);
+    }
+
+    private void end() throws IOException
+    {
+        _tar.write(new byte[1024]);
+    }
+
+    private static String content(TarInputStream tar) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int n;
+        while ((n = tar.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    private TarInputStream open()
+    {
+        return new TarInputStream(new ByteArrayInputStream(_tar.toByteArray()));
+    }
+
+    private static String repeat(char c, int n)
+    {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void readsTheFilesInOrder() throws IOException
+    {
+        String block = repeat('b', 512);
+        file("a.pdf", "%PDF-1.4 a");
+        file("b.pdf", block);
+        file("empty.pdf", "");
+        end();
+
+        TarInputStream tar = open();
+        assertEquals("a.pdf", tar.getNextEntry());
+        assertEquals(10, tar.getSize());
+        assertEquals("%PDF-1.4 a", content(tar));
+        assertEquals(-1, tar.read());
+        assertEquals("b.pdf", tar.getNextEntry());
+        assertEquals(block, content(tar));
+        assertEquals("empty.pdf", tar.getNextEntry());
+        assertEquals("", content(tar));
+        assertNull(tar.getNextEntry());
+        assertNull(tar.getNextEntry());
+    }
+
+    @Test
+    public void skipsTheRestOfAFile() throws IOException
+    {
+        file("a.pdf", repeat('a', 700));
+        file("b.pdf", "%PDF-1.4 b");
+        end();
+
+        TarInputStream tar = open();
+        tar.getNextEntry();
+        assertEquals('a', tar.read());
+        assertEquals(100, tar.skip(100));
+        assertEquals("b.pdf", tar.getNextEntry());
+        assertEquals("%PDF-1.4 b", content(tar));
+    }
+
+    @Test
+    public void skipsWhatIsNotARegularFile() throws IOException
+    {
+        add("docs/", '5', null, "");
+        add("link.pdf", '2', null, "");
+        add("fifo", '6', null, "");
+        file("docs/a.pdf", "%PDF-1.4 a");
+        end();
+
+        TarInputStream tar = open();
+        assertEquals("docs/a.pdf", tar.getNextEntry());
+        assertNull(tar.getNextEntry());
+    }
+
+    @Test
+    public void readsTheLongNames() throws IOException
+    {
+        String gnu = repeat('g', 150) + ".pdf";
+        String pax = repeat('p', 300) + ".pdf";
+        add("././@LongLink", 'L', null, gnu + "\0");
+        file(gnu.substring(0, 99), "gnu");
+        String record = "path=" + pax + "\n";
+        int length = record.length() + 4;
+        add("PaxHeaders/x", 'x', null, length + " " + record + "15 mtime=1.5e9\n");
+        file(pax.substring(0, 99), "pax");
+        add("a.pdf", '0', repeat('d', 120), "prefix");
+        end();
+
+        TarInputStream tar = open();
+        assertEquals(gnu, tar.getNextEntry());
+        assertEquals("gnu", content(tar));
+        assertEquals(pax, tar.getNextEntry());
+        assertEquals("pax", content(tar));
+        assertEquals(repeat('d', 120) + "/a.pdf", tar.getNextEntry());
+        assertEquals("prefix", content(tar));
+        assertNull(tar.getNextEntry());
+    }
+
+    @Test
+    public void readsABase256Size() throws IOException
+    {
+        byte[] data = "%PDF-1.4 large".getBytes(UTF8);
+        byte[] header = header("large.pdf", '0', 0, null);
+        Arrays.fill(header, 124, 136, (byte)0);
+        header[124] = (byte)0x80;
+        header[135] = (byte)data.length;
+        add(header, data);
+        end();
+
+        TarInputStream tar = open();
+        assertEquals("large.pdf", tar.getNextEntry());
+        assertEquals(data.length, tar.getSize());
+        assertEquals("%PDF-1.4 large", content(tar));
+    }
+
+    @Test
+    public void endsWithoutTheEndBlocks() throws IOException
+    {
+        file("a.pdf", "%PDF-1.4 a");
+
+        TarInputStream tar = open();
+        assertEquals("a.pdf", tar.getNextEntry());
+        assertNull(tar.getNextEntry());
+    }
+
+    @Test
+    public void reportsATruncatedArchive() throws IOException
+    {
+        file("a.pdf", repeat('a', 1000));
+        byte[] truncated = Arrays.copyOf(_tar.toByteArray(), 512 + 600);
+
+        TarInputStream tar = new TarInputStream(new ByteArrayInputStream(truncated));
+        tar.getNextEntry();
+        try {
+            content(tar);
+            fail("truncated");
+        }
+        catch (EOFException e) {
+            assertEquals("Truncated TAR archive", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readsAGzippedArchive() throws IOException
+    {
+        file("a.pdf", "%PDF-1.4 a");
+        file("b.pdf", "%PDF-1.4 b");
+        end();
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(gz);
+        out.write(_tar.toByteArray());
+        out.close();
+
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz.toByteArray()));
+        TarInputStream tar = new TarInputStream(in);
+        try {
+            assertEquals("a.pdf", tar.getNextEntry());
+            assertEquals("b.pdf", tar.getNextEntry());
+            assertEquals("%PDF-1.4 b", content(tar));
+            assertNull(tar.getNextEntry());
+        }
+        finally {
+            tar.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Pages with a raw content stream for the tests. Every page has the font /F1 (Helvetica) and the forms added
+ * with form(), which share the resources of the page, so a form can draw itself.
+ */
+class TestPdfs
+{
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** a table of 2 x 2 ruled cells with a word in each cell */
+    static final String TABLE =
+        "0.5 w 100 500 100 50 re S 200 500 100 50 re S 100 550 100 50 re S 200 550 100 50 re S\n" +
+        "BT /F1 10 Tf 110 580 Td (Date) Tj 100 0 Td (Amount) Tj -100 -50 Td (Total) Tj 100 0 Td (42) Tj ET\n";
+
+    private TestPdfs()
+    {
+    }
+
+    static PDPage page(PDDocument document, String content) throws IOException
+    {
+        PDPage page = new PDPage(PDPage.PAGE_SIZE_A4);
+        COSDictionary fonts = new COSDictionary();
+        fonts.setItem(COSName.getPDFName("F1"), PDType1Font.HELVETICA);
+        PDResources resources = new PDResources();
+        resources.getCOSDictionary().setItem(COSName.FONT, fonts);
+        resources.getCOSDictionary().setItem(COSName.XOBJECT, new COSDictionary());
+        page.setResources(resources);
+        page.setContents(stream(document, content));
+        document.addPage(page);
+        return page;
+    }
+
+    /**
+     * Add a form XObject to the resources of the page, drawn with "/name Do".
+     */
+    static COSStream form(PDDocument document, PDPage page, String name, String content) throws IOException
+    {
+        COSStream form = stream(document, content).getStream();
+        form.setItem(COSName.TYPE, COSName.XOBJECT);
+        form.setItem(COSName.SUBTYPE, COSName.FORM);
+        form.setItem(COSName.BBOX, page.getMediaBox().getCOSArray());
+        COSDictionary resources = page.getResources().getCOSDictionary();
+        form.setItem(COSName.RESOURCES, resources);
+        ((COSDictionary)resources.getDictionaryObject(COSName.XOBJECT)).setItem(COSName.getPDFName(name), form);
+        return form;
+    }
+
+    static PDStream stream(PDDocument document, String content) throws IOException
+    {
+        PDStream stream = new PDStream(document);
+        OutputStream out = stream.createOutputStream();
+        try {
+            out.write(content.getBytes(ASCII));
+        }
+        finally {
+            out.close();
+        }
+        return stream;
+    }
+
+    /**
+     * A document that PDFBox fails on with a ClassCastException once the text of its page is extracted:
+     * the media box is made of names.
+     */
+    static File crashing(File file) throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try {
+            PDPage page = page(document, "BT /F1 12 Tf 72 700 Td (Total) Tj ET");
+            COSArray box = new COSArray();
+            for (String name : new String[] { "a", "b", "c", "d" }) {
+                box.add(COSName.getPDFName(name));
+            }
+            page.getCOSDictionary().setItem(COSName.MEDIA_BOX, box);
+            document.save(file);
+        }
+        catch (COSVisitorException e) {
+            throw new IOException(e);
+        }
+        finally {
+            document.close();
+        }
+        return file;
+    }
+
+    /**
+     * A document of one page per content stream, saved to the file.
+     */
+    static File save(File file, String... contents) throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try {
+            for (String content : contents) {
+                page(document, content);
+            }
+            document.save(file);
+        }
+        catch (COSVisitorException e) {
+            throw new IOException(e);
+        }
+        finally {
+            document.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,198 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchdogTest
+{
+    private PDDocument _document;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _document = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _document.close();
+    }
+
+    /**
+     * A content stream of n path operators.
+     */
+    private static String operators(int n)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(i % 2 == 0 ? "0 0 m\n" : "10 10 l\n");
+        }
+        return sb.toString();
+    }
+
+    private static BudgetExceededException exceeded(Watchdog watchdog)
+    {
+        try {
+            watchdog.checkOperator();
+        }
+        catch (BudgetExceededException e) {
+            return e;
+        }
+        fail();
+        return null;
+    }
+
+    @Test
+    public void stopsAtTheOperatorBudgetOfAPage() throws Exception
+    {
+        Watchdog watchdog = new Watchdog(0, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            watchdog.checkOperator();
+        }
+        BudgetExceededException e = exceeded(watchdog);
+        assertFalse(e.isDocument());
+        // sticky until the next page
+        assertSame(e, exceeded(watchdog));
+        watchdog.startPage();
+        watchdog.checkOperator();
+        assertEquals(1, watchdog.getOperators());
+    }
+
+    @Test
+    public void stopsAtTheTimeBudgets() throws Exception
+    {
+        Watchdog watchdog = new Watchdog(0, 50, 0);
+        Thread.sleep(100);
+        try {
+            watchdog.endPage();
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertFalse(e.isDocument());
+        }
+        watchdog.startPage();
+        watchdog.endPage();
+
+        watchdog = new Watchdog(50, 0, 0);
+        Thread.sleep(100);
+        try {
+            watchdog.checkTime();
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertTrue(e.isDocument());
+        }
+        // the document stays over its budget
+        watchdog.startPage();
+        assertTrue(exceeded(watchdog).isDocument());
+    }
+
+    @Test
+    public void doesNotCountTheTimeWhilePaused() throws Exception
+    {
+        Watchdog watchdog = new Watchdog(100, 0, 0);
+        watchdog.pause();
+        Thread.sleep(200);
+        watchdog.resume();
+        watchdog.checkTime();
+
+        Thread.sleep(200);
+        try {
+            watchdog.checkTime();
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertTrue(e.isDocument());
+        }
+    }
+
+    @Test
+    public void guardsTheRecursionOfTheForms() throws Exception
+    {
+        Watchdog watchdog = new Watchdog(0, 0, 0);
+        COSStream[] streams = new COSStream[Watchdog.MAX_FORM_DEPTH + 1];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = TestPdfs.stream(_document, "").getStream();
+        }
+        assertTrue(watchdog.enterStream(streams[0]));
+        assertFalse(watchdog.enterStream(streams[0]));
+        for (int i = 1; i < Watchdog.MAX_FORM_DEPTH; i++) {
+            assertTrue(watchdog.enterStream(streams[i]));
+        }
+        assertFalse(watchdog.enterStream(streams[Watchdog.MAX_FORM_DEPTH]));
+        watchdog.exitStream(streams[0]);
+        assertTrue(watchdog.enterStream(streams[Watchdog.MAX_FORM_DEPTH]));
+    }
+
+    @Test
+    public void skipsAFormThatDrawsItself() throws Exception
+    {
+        PDPage page = TestPdfs.page(_document, "/Fm1 Do");
+        TestPdfs.form(_document, page, "Fm1", "/Fm1 Do BT /F1 10 Tf 72 700 Td (Total) Tj ET");
+        WordPositionStreamEngine engine = new WordPositionStreamEngine();
+        engine.setWatchdog(new Watchdog(0, 0, 0));
+        engine.processPage(page);
+        assertEquals(1, engine.getWordPositions().size());
+        assertEquals("Total", engine.getWordPositions().get(0).word());
+    }
+
+    @Test
+    public void stopsAFormOverTheOperatorBudget() throws Exception
+    {
+        // PDFBox swallows the exception thrown in the form, the last operator of the page
+        PDPage page = TestPdfs.page(_document, "BT /F1 10 Tf 72 700 Td (Total) Tj ET /Fm1 Do");
+        TestPdfs.form(_document, page, "Fm1", operators(100));
+        Watchdog watchdog = new Watchdog(0, 0, 50);
+
+        WordPositionStreamEngine engine = new WordPositionStreamEngine();
+        engine.setWatchdog(watchdog);
+        try {
+            engine.processPage(page);
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertFalse(e.isDocument());
+        }
+
+        watchdog.startPage();
+        PageGridDrawer drawer = new PageGridDrawer();
+        drawer.setOptions(ExtractionOptions.DEFAULTS);
+        drawer.setWatchdog(watchdog);
+        try {
+            drawer.drawPage(page);
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertFalse(e.isDocument());
+        }
+    }
+
+    @Test
+    public void limitsThePrescan() throws Exception
+    {
+        PDPage page = TestPdfs.page(_document, operators(1000));
+        Watchdog watchdog = new Watchdog(0, 1, 0);
+        Thread.sleep(10);
+        try {
+            PagePrescan.scan(page, watchdog);
+            fail();
+        }
+        catch (BudgetExceededException e) {
+            assertFalse(e.isDocument());
+        }
+        // without budget the prescan sees the paths that are never painted
+        assertFalse(PagePrescan.scan(page).hasPaths());
+    }
+}
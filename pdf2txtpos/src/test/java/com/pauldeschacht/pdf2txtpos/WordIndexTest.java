@@ -0,0 +1,187 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WordIndexTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static WordPosition word(String text, float x1, float y1, float x2, float y2)
+    {
+        WordPosition word = new WordPosition();
+        word.setWord(text);
+        word.setRectangle(x1, y1, x2, y2);
+        return word;
+    }
+
+    /**
+     * 20 lines of 8 words, 40 x 10 points each, and a wide title.
+     */
+    private static List<WordPosition> page()
+    {
+        List<WordPosition> words = new ArrayList<WordPosition>();
+        words.add(word("Statement", 50, 40, 400, 60));
+        for (int r = 0; r < 20; r++) {
+            for (int c = 0; c < 8; c++) {
+                float x = 50 + c * 60;
+                float y = 100 + r * 20;
+                WordPosition word = word("w" + r + "_" + c, x, y, x + 40, y + 10);
+                word.setLineNb(r);
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static Set<String> texts(List<WordPosition> words)
+    {
+        Set<String> texts = new HashSet<String>();
+        for (WordPosition word : words) {
+            texts.add(word.word());
+        }
+        return texts;
+    }
+
+    private static double distance(WordPosition word, float x, float y)
+    {
+        double dx = Math.max(0, Math.max(word.x1() - x, x - word.x2()));
+        double dy = Math.max(0, Math.max(word.y1() - y, y - word.y2()));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Test
+    public void findsTheIntersectingAndTheEnclosedWords()
+    {
+        WordIndex index = WordIndex.build(3, page());
+        assertEquals(new HashSet<String>(Arrays.asList("w0_0", "w0_1", "w1_0", "w1_1")), texts(index.intersecting(60, 105, 120, 125)));
+        assertEquals(new HashSet<String>(Arrays.asList("w0_0")), texts(index.within(120, 125, 40, 95)));
+        assertTrue(index.intersecting(600, 600, 700, 700).isEmpty());
+        assertEquals(new HashSet<String>(Arrays.asList("Statement")), texts(index.intersecting(300, 50, 301, 51)));
+    }
+
+    @Test
+    public void queriesMatchAScanOfAllTheWords()
+    {
+        List<WordPosition> words = page();
+        WordIndex index = WordIndex.build(1, words);
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            float x1 = random.nextFloat() * 600;
+            float y1 = random.nextFloat() * 600;
+            float x2 = x1 + random.nextFloat() * 200;
+            float y2 = y1 + random.nextFloat() * 200;
+            Set<String> intersecting = new HashSet<String>();
+            Set<String> within = new HashSet<String>();
+            for (WordPosition word : words) {
+                if (word.x1() <= x2 && word.x2() >= x1 && word.y1() <= y2 && word.y2() >= y1) {
+                    intersecting.add(word.word());
+                }
+                if (word.x1() >= x1 && word.x2() <= x2 && word.y1() >= y1 && word.y2() <= y2) {
+                    within.add(word.word());
+                }
+            }
+            assertEquals(intersecting, texts(index.intersecting(x1, y1, x2, y2)));
+            assertEquals(within, texts(index.within(x1, y1, x2, y2)));
+
+            double best = Double.MAX_VALUE;
+            for (WordPosition word : words) {
+                best = Math.min(best, distance(word, x1, y1));
+            }
+            assertEquals(best, distance(index.nearest(x1, y1), x1, y1), 1e-6);
+        }
+    }
+
+    @Test
+    public void findsTheWordsOfALine()
+    {
+        WordIndex index = WordIndex.build(1, page());
+        WordPosition label = index.find("w5_2").get(0);
+        List<WordPosition> line = index.sameLine(label);
+        assertEquals(8, line.size());
+        assertEquals("w5_0", line.get(0).word());
+        assertEquals("w5_7", line.get(7).word());
+        List<WordPosition> right = index.rightOf(label);
+        assertEquals(5, right.size());
+        assertEquals("w5_3", right.get(0).word());
+        assertTrue(index.find("Total").isEmpty());
+    }
+
+    @Test
+    public void answersNothingWithoutWords()
+    {
+        WordIndex index = WordIndex.build(7, Collections.<WordPosition>emptyList());
+        assertNull(index.nearest(10, 10));
+        assertTrue(index.intersecting(0, 0, 1000, 1000).isEmpty());
+        assertEquals(7, index.getPageNb());
+    }
+
+    @Test
+    public void readsBackWhatItWrites() throws IOException
+    {
+        List<WordPosition> words = page();
+        words.get(1).setRegion("header");
+        List<WordIndex> indexes = new ArrayList<WordIndex>();
+        indexes.add(WordIndex.build(1, words));
+        indexes.add(WordIndex.build(4, words.subList(0, 10)));
+        File file = new File(tmp.getRoot(), "doc.idx");
+        WordIndex.writeAll(file, indexes);
+        assertTrue(new File(file.getPath() + ".part").exists() == false);
+
+        Map<Integer, WordIndex> read = WordIndex.readAll(file);
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 4)), read.keySet());
+        WordIndex page = read.get(1);
+        List<WordPosition> copies = page.getWords();
+        assertEquals(words.size(), copies.size());
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i).word(), copies.get(i).word());
+            assertEquals(words.get(i).x1(), copies.get(i).x1(), 0);
+            assertEquals(words.get(i).y2(), copies.get(i).y2(), 0);
+            assertEquals(words.get(i).getLineNb(), copies.get(i).getLineNb());
+            assertEquals(words.get(i).getRegion(), copies.get(i).getRegion());
+        }
+        // the cells are read back, not rebuilt
+        assertEquals(texts(indexes.get(0).intersecting(60, 105, 300, 250)), texts(page.intersecting(60, 105, 300, 250)));
+        assertSame(page.find("w3_3").get(0), page.nearest(250, 165));
+        assertEquals(10, read.get(4).getWords().size());
+    }
+
+    @Test
+    public void rejectsAnotherFile() throws IOException
+    {
+        File file = tmp.newFile("other.idx");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        }
+        finally {
+            out.close();
+        }
+        try {
+            WordIndex.readAll(file);
+            fail("not a word index");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("not a word index"));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WordPositionStreamEngineTest
+{
+    private PDDocument _document;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _document = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _document.close();
+    }
+
+    private PDPageContentStream page() throws IOException
+    {
+        PDPage page = new PDPage(PDPage.PAGE_SIZE_A4);
+        _document.addPage(page);
+        return new PDPageContentStream(_document, page);
+    }
+
+    private static void text(PDPageContentStream content, PDFont font, float size, float x, float y, String text) throws IOException
+    {
+        content.beginText();
+        content.setFont(font, size);
+        content.moveTextPositionByAmount(x, y);
+        content.drawString(text);
+        content.endText();
+    }
+
+    /**
+     * A statement: a title, lines of labels and amounts in two fonts, and kerned text.
+     */
+    private void statement() throws IOException
+    {
+        PDPageContentStream content = page();
+        try {
+            text(content, PDType1Font.HELVETICA_BOLD, 16, 72, 780, "Monthly statement");
+            String[][] rows = {
+                { "Opening balance", "1 234,56" },
+                { "Card payment SHOP 42", "-17,20" },
+                { "Transfer to savings", "-500,00" },
+                { "Closing balance", "717,36" },
+            };
+            for (int i = 0; i < rows.length; i++) {
+                float y = 700 - i * 18;
+                text(content, PDType1Font.TIMES_ROMAN, 11, 72, y, rows[i][0]);
+                text(content, PDType1Font.HELVETICA, 11, 400, y, rows[i][1]);
+            }
+            // kerning inside a word and a gap wider than a space between two words
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 10);
+            content.moveTextPositionByAmount(72, 600);
+            content.appendRawCommands("[(Ker) 20 (ned) -2000 (gap)] TJ\n");
+            content.endText();
+        }
+        finally {
+            content.close();
+        }
+    }
+
+    private List<WordPosition> lean(int pageNb) throws IOException
+    {
+        WordPositionStreamEngine engine = new WordPositionStreamEngine();
+        engine.processPage((PDPage)_document.getDocumentCatalog().getAllPages().get(pageNb - 1));
+        return engine.getWordPositions();
+    }
+
+    private List<WordPosition> stripper(int pageNb) throws IOException
+    {
+        PDFWordPositionStripper stripper = new PDFWordPositionStripper();
+        stripper.setStartPage(pageNb);
+        stripper.setEndPage(pageNb);
+        stripper.getText(_document);
+        return stripper.getWordPositions();
+    }
+
+    private static List<String> texts(List<WordPosition> words)
+    {
+        List<String> texts = new ArrayList<String>();
+        for (WordPosition word : words) {
+            texts.add(word.word());
+        }
+        return texts;
+    }
+
+    @Test
+    public void findsTheWordsOfTheStripper() throws IOException
+    {
+        statement();
+        List<WordPosition> expected = stripper(1);
+        List<WordPosition> actual = lean(1);
+        assertEquals(20, expected.size());
+        assertEquals(0, EngineCrossCheck.compare(1, expected, actual, 1));
+        assertTrue(texts(actual).contains("Kerned"));
+        assertTrue(texts(actual).contains("gap"));
+        assertTrue(texts(actual).contains("-500,00"));
+    }
+
+    @Test
+    public void startsEveryPageAfresh() throws IOException
+    {
+        statement();
+        PDPageContentStream content = page();
+        try {
+            text(content, PDType1Font.COURIER, 12, 100, 500, "Page two");
+        }
+        finally {
+            content.close();
+        }
+        WordPositionStreamEngine engine = new WordPositionStreamEngine();
+        List<?> pages = _document.getDocumentCatalog().getAllPages();
+        engine.processPage((PDPage)pages.get(0));
+        engine.processPage((PDPage)pages.get(1));
+        assertEquals(2, engine.getWordPositions().size());
+        assertEquals(0, EngineCrossCheck.compare(2, stripper(2), engine.getWordPositions(), 1));
+        assertEquals(8, engine.getGlyphCount());
+    }
+
+    @Test
+    public void countsTheDifferences() throws IOException
+    {
+        statement();
+        List<WordPosition> expected = stripper(1);
+        List<WordPosition> actual = lean(1);
+        actual.get(3).setWord("changed");
+        WordPosition moved = actual.get(5);
+        moved.setRectangle(moved.x1() + 1, moved.y1(), moved.x2() + 1, moved.y2());
+        assertEquals(2, EngineCrossCheck.compare(1, expected, actual, 1));
+    }
+}
@@ -0,0 +1,155 @@
+package com.pauldeschacht.pdf2txtpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkClaimsTest
+{
+    // long enough that no heartbeat runs during a test
+    private static final long TIMEOUT = 60000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path _dir;
+    private File _pdf;
+    private List<WorkClaims> _workers;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _dir = tmp.getRoot().toPath().resolve("claims");
+        _pdf = new File(tmp.getRoot(), "a.pdf");
+        _workers = new ArrayList<WorkClaims>();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (WorkClaims worker : _workers) {
+            worker.close();
+        }
+    }
+
+    /**
+     * A new worker, with another name than the previous ones.
+     */
+    private WorkClaims worker() throws IOException, InterruptedException
+    {
+        Thread.sleep(2);
+        WorkClaims worker = new WorkClaims(_dir, TIMEOUT);
+        _workers.add(worker);
+        return worker;
+    }
+
+    private List<Path> files(String glob) throws IOException
+    {
+        List<Path> files = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(_dir, glob);
+        try {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        finally {
+            stream.close();
+        }
+        return files;
+    }
+
+    /**
+     * Age the claims as if their worker stopped its heartbeat.
+     */
+    private void age(long millis) throws IOException
+    {
+        for (Path claim : files("*.claim")) {
+            Files.setLastModifiedTime(claim, FileTime.fromMillis(System.currentTimeMillis() - millis));
+        }
+    }
+
+    @Test
+    public void claimsAPdfOnce() throws Exception
+    {
+        WorkClaims a = worker();
+        WorkClaims b = worker();
+        assertFalse(a.getWorker().equals(b.getWorker()));
+        assertTrue(a.claim(_pdf));
+        assertTrue(a.owns(_pdf));
+        assertFalse(b.claim(_pdf));
+        assertFalse(b.owns(_pdf));
+        assertEquals(1, files("*.claim").size());
+        // the private files of the links are gone
+        assertTrue(files("*.tmp").isEmpty());
+    }
+
+    @Test
+    public void agreesOnTheFileNameOnly() throws Exception
+    {
+        WorkClaims a = worker();
+        WorkClaims b = worker();
+        assertTrue(a.claim(_pdf));
+        assertFalse(b.claim(new File(tmp.newFolder("mnt"), "a.pdf")));
+        assertTrue(b.claim(new File(tmp.getRoot(), "b.pdf")));
+    }
+
+    @Test
+    public void neverClaimsADonePdfAgain() throws Exception
+    {
+        WorkClaims a = worker();
+        assertTrue(a.claim(_pdf));
+        a.release(_pdf, true);
+        assertTrue(files("*.claim").isEmpty());
+        assertEquals(1, files("*.done").size());
+        assertFalse(a.claim(_pdf));
+        assertFalse(worker().claim(_pdf));
+    }
+
+    @Test
+    public void letsAnotherWorkerRetryAFailedPdf() throws Exception
+    {
+        WorkClaims a = worker();
+        assertTrue(a.claim(_pdf));
+        a.release(_pdf, false);
+        assertTrue(files("*.done").isEmpty());
+        assertTrue(worker().claim(_pdf));
+    }
+
+    @Test
+    public void takesOverTheClaimOfADeadWorker() throws Exception
+    {
+        WorkClaims dead = worker();
+        WorkClaims live = worker();
+        assertTrue(dead.claim(_pdf));
+        dead.close();
+
+        age(TIMEOUT / 2);
+        assertFalse(live.claim(_pdf));
+        age(2 * TIMEOUT);
+        assertTrue(live.claim(_pdf));
+        assertTrue(live.owns(_pdf));
+        assertTrue(files("*.stale").isEmpty());
+
+        // the paused worker finds out before it writes, and leaves the claim alone
+        assertFalse(dead.owns(_pdf));
+        dead.release(_pdf, true);
+        assertTrue(files("*.done").isEmpty());
+        assertTrue(live.owns(_pdf));
+        live.release(_pdf, true);
+        assertEquals(1, files("*.done").size());
+    }
+}